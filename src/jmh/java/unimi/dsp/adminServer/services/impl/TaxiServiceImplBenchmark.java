@@ -0,0 +1,66 @@
+package unimi.dsp.adminServer.services.impl;
+
+import org.openjdk.jmh.annotations.*;
+import unimi.dsp.adminServer.exceptions.IdNotFoundException;
+import unimi.dsp.adminServer.exceptions.ReportTypeNotFoundException;
+import unimi.dsp.dto.TaxiInfoDto;
+import unimi.dsp.dto.TaxiStatisticsDto;
+import unimi.dsp.dto.types.SerializableOffsetDateTime;
+import unimi.dsp.model.types.SmartCityPosition;
+import unimi.dsp.model.types.TaxiStatisticsReportType;
+import unimi.dsp.util.DateTimeUtil;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the reports over taxis with a long history of statistics, one statistic per second each.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TaxiServiceImplBenchmark {
+    private static final int TAXIS_NUM = 10;
+    private static final int LAST_N = 100;
+
+    @Param({"1000", "10000"})
+    public int statisticsPerTaxi;
+
+    private TaxiServiceImpl taxiService;
+    private OffsetDateTime historyStart;
+
+    @Setup
+    public void setup() throws Exception {
+        this.taxiService = new TaxiServiceImpl(() -> new SmartCityPosition(0, 0));
+        this.historyStart = OffsetDateTime.of(2022, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+        for (int id = 0; id < TAXIS_NUM; id++) {
+            this.taxiService.registerTaxi(new TaxiInfoDto(id, "localhost", 10000 + id));
+            for (int i = 0; i < this.statisticsPerTaxi; i++) {
+                SerializableOffsetDateTime ts = new SerializableOffsetDateTime(
+                        DateTimeUtil.getStringFromOffsetDateTime(this.historyStart.plusSeconds(i)));
+                this.taxiService.loadTaxiStatistics(id, new TaxiStatisticsDto(ts, 100 - i % 70,
+                        new TaxiStatisticsDto.TaxiStatisticsValues(i % 20, i % 5,
+                                Collections.singletonList(40.0 + i % 10))));
+            }
+        }
+    }
+
+    @Benchmark
+    public Object lastNAverageReport() throws IdNotFoundException, ReportTypeNotFoundException {
+        return this.taxiService.getTaxiStatisticsReport(0, LAST_N, TaxiStatisticsReportType.AVERAGE);
+    }
+
+    // the range covers the middle tenth of the history
+    @Benchmark
+    public Object timeRangeAverageReport() throws ReportTypeNotFoundException {
+        return this.taxiService.getTaxisStatisticsReport(
+                this.historyStart.plusSeconds(this.statisticsPerTaxi * 45L / 100),
+                this.historyStart.plusSeconds(this.statisticsPerTaxi * 55L / 100),
+                TaxiStatisticsReportType.AVERAGE);
+    }
+}
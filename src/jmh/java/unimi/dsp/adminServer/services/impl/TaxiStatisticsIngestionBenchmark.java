@@ -0,0 +1,88 @@
+package unimi.dsp.adminServer.services.impl;
+
+import org.openjdk.jmh.annotations.*;
+import unimi.dsp.adminServer.exceptions.IdNotFoundException;
+import unimi.dsp.adminServer.storage.TaxiStatisticsLog;
+import unimi.dsp.dto.TaxiInfoDto;
+import unimi.dsp.dto.TaxiStatisticsDto;
+import unimi.dsp.dto.types.SerializableOffsetDateTime;
+import unimi.dsp.model.types.SmartCityPosition;
+import unimi.dsp.util.DateTimeUtil;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Measures the upload of the statistics by many taxis at once, kept only in memory or
+ * written in the statistics log, whose group commit shares each force among the concurrent uploads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class TaxiStatisticsIngestionBenchmark {
+    private static final int TAXIS_NUM = 8;
+
+    @Param({"memory", "log", "syncLog"})
+    public String storage;
+
+    private TaxiServiceImpl taxiService;
+    private TaxiStatisticsLog taxiStatisticsLog;
+    private Path logDirectory;
+    private final AtomicInteger nextTaxiId = new AtomicInteger();
+
+    @Setup
+    public void setup() throws Exception {
+        if (!this.storage.equals("memory")) {
+            this.logDirectory = Files.createTempDirectory("statistics-log");
+            this.taxiStatisticsLog = new TaxiStatisticsLog(this.logDirectory, 1 << 20,
+                    this.storage.equals("syncLog"));
+        }
+        this.taxiService = new TaxiServiceImpl(() -> new SmartCityPosition(0, 0), this.taxiStatisticsLog);
+        for (int id = 0; id < TAXIS_NUM; id++)
+            this.taxiService.registerTaxi(new TaxiInfoDto(id, "localhost", 10000 + id));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        if (this.taxiStatisticsLog == null)
+            return;
+
+        this.taxiStatisticsLog.close();
+        try (Stream<Path> paths = Files.walk(this.logDirectory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    // each benchmark thread uploads as its own taxi
+    @State(Scope.Thread)
+    public static class TaxiState {
+        private int taxiId;
+        private TaxiStatisticsDto taxiStatistics;
+
+        @Setup
+        public void setup(TaxiStatisticsIngestionBenchmark benchmark) {
+            this.taxiId = benchmark.nextTaxiId.getAndIncrement() % TAXIS_NUM;
+            SerializableOffsetDateTime ts = new SerializableOffsetDateTime(DateTimeUtil.getStringFromOffsetDateTime(
+                    OffsetDateTime.of(2022, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC)));
+            this.taxiStatistics = new TaxiStatisticsDto(ts, 80,
+                    new TaxiStatisticsDto.TaxiStatisticsValues(12, 3, Collections.singletonList(42.0)));
+        }
+    }
+
+    @Benchmark
+    public void loadTaxiStatistics(TaxiState taxiState) throws IdNotFoundException {
+        this.taxiService.loadTaxiStatistics(taxiState.taxiId, taxiState.taxiStatistics);
+    }
+}
@@ -0,0 +1,34 @@
+package unimi.dsp.model.types;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DistrictBenchmark {
+    private static final int POSITIONS_NUM = 1024;
+
+    private SmartCityPosition[] positions;
+    private int next = 0;
+
+    @Setup
+    public void setup() {
+        // positions spread all over the city, so that the lookups do not always hit the same cells
+        this.positions = new SmartCityPosition[POSITIONS_NUM];
+        Random random = new Random(42);
+        for (int i = 0; i < POSITIONS_NUM; i++)
+            this.positions[i] = new SmartCityPosition(random.nextInt(10), random.nextInt(10));
+    }
+
+    @Benchmark
+    public District fromPosition() {
+        this.next = (this.next + 1) & (POSITIONS_NUM - 1);
+        return District.fromPosition(this.positions[this.next]);
+    }
+}
@@ -0,0 +1,71 @@
+package unimi.dsp.model.types;
+
+import org.openjdk.jmh.annotations.*;
+import unimi.dsp.dto.RideRequestDto;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the distance of a taxi from the start of a ride computed on positions, as the election did,
+ * and on packed cells. run it with `-PjmhProfilers=gc` to see the allocation rate of each of them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SmartCityCellBenchmark {
+    private static final int RIDE_REQUESTS_NUM = 1024;
+
+    private RideRequestDto[] rideRequests;
+    private int taxiCell;
+    private int next = 0;
+
+    @Setup
+    public void setup() {
+        this.rideRequests = new RideRequestDto[RIDE_REQUESTS_NUM];
+        Random random = new Random(42);
+        for (int i = 0; i < RIDE_REQUESTS_NUM; i++)
+            this.rideRequests[i] = new RideRequestDto(i,
+                    new SmartCityPosition(random.nextInt(10), random.nextInt(10)),
+                    new SmartCityPosition(random.nextInt(10), random.nextInt(10)));
+        this.taxiCell = SmartCityCell.of(3, 7);
+    }
+
+    @Benchmark
+    public double distanceFromStartPosition() {
+        RideRequestDto rideRequest = this.nextRideRequest();
+        return getDistance(SmartCityCell.toPosition(this.taxiCell), rideRequest.getStart());
+    }
+
+    @Benchmark
+    public double distanceFromStartCell() {
+        return getDistance(this.taxiCell, this.nextRideRequest().getStartCell());
+    }
+
+    // in the election the distance is computed far from where the positions are created, so they escape.
+    // without DONT_INLINE escape analysis would remove the allocations of this small benchmark
+    @CompilerControl(CompilerControl.Mode.DONT_INLINE)
+    private static double getDistance(SmartCityPosition position, SmartCityPosition otherPosition) {
+        double deltaX = otherPosition.x - position.x;
+        double deltaY = otherPosition.y - position.y;
+        return Math.sqrt(deltaX * deltaX + deltaY * deltaY);
+    }
+
+    @CompilerControl(CompilerControl.Mode.DONT_INLINE)
+    private static double getDistance(int cell, int otherCell) {
+        return SmartCityCell.getDistance(cell, otherCell);
+    }
+
+    @Benchmark
+    public District districtFromStartCell() {
+        return District.fromCell(this.nextRideRequest().getStartCell());
+    }
+
+    private RideRequestDto nextRideRequest() {
+        this.next = (this.next + 1) & (RIDE_REQUESTS_NUM - 1);
+        return this.rideRequests[this.next];
+    }
+}
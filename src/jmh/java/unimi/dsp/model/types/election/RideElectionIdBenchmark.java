@@ -0,0 +1,35 @@
+package unimi.dsp.model.types.election;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RideElectionIdBenchmark {
+    private static final int IDS_NUM = 1024;
+
+    private RideElectionInfo.RideElectionId[] rideElectionIds;
+    private int next = 0;
+
+    @Setup
+    public void setup() {
+        // few distinct distances and battery levels, so that all the tie-breaks are exercised
+        this.rideElectionIds = new RideElectionInfo.RideElectionId[IDS_NUM];
+        Random random = new Random(42);
+        for (int i = 0; i < IDS_NUM; i++)
+            this.rideElectionIds[i] = new RideElectionInfo.RideElectionId(
+                    random.nextInt(100), random.nextInt(4), 90 + random.nextInt(3));
+    }
+
+    @Benchmark
+    public boolean isGreaterThan() {
+        this.next = (this.next + 1) & (IDS_NUM - 1);
+        return this.rideElectionIds[this.next].isGreaterThan(this.rideElectionIds[(this.next + 1) & (IDS_NUM - 1)]);
+    }
+}
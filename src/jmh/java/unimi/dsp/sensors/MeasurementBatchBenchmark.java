@@ -0,0 +1,71 @@
+package unimi.dsp.sensors;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the allocations of adding the measurements of many taxis to their pipelines, one `Measurement`
+ * at a time or with a reused `MeasurementBatch` for each pipeline, as its sampling task does. run it with `-prof gc` to see the allocation rate.
+ * the pipelines are not started, so the scheduler does not sample them while they are measured.
+ * the averages taken after each iteration are boxed, which is the only allocation of the batches.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@org.openjdk.jmh.annotations.Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MeasurementBatchBenchmark {
+    private static final String[] SENSOR_TYPES = { "PM10", "PM25", "NO2", "TEMPERATURE", "SPEED" };
+    private static final int TAXIS_NUM = 1000;
+
+    private final SensorPipeline[] pipelines = new SensorPipeline[TAXIS_NUM];
+    private final String[] sensorIds = new String[SENSOR_TYPES.length];
+    // the sensors are interned in the registry of each pipeline, in the same order, so they have the same indexes
+    private final int[] sensorIndexes = new int[SENSOR_TYPES.length];
+    private final MeasurementBatch[] batches = new MeasurementBatch[TAXIS_NUM];
+    private long timestamp = 0;
+
+    @Setup
+    public void setup() {
+        for (int i = 0; i < SENSOR_TYPES.length; i++)
+            this.sensorIds[i] = SENSOR_TYPES[i].toLowerCase() + "-bench";
+        for (int i = 0; i < TAXIS_NUM; i++) {
+            this.pipelines[i] = new SensorPipeline(8, 0.5f, 1024);
+            SensorRegistry sensorRegistry = this.pipelines[i].getSensorRegistry();
+            for (int j = 0; j < SENSOR_TYPES.length; j++)
+                this.sensorIndexes[j] = sensorRegistry.intern(this.sensorIds[j], SENSOR_TYPES[j]);
+            this.batches[i] = new MeasurementBatch(sensorRegistry, SENSOR_TYPES.length);
+        }
+    }
+
+    // the averages are taken as the uploads do, so they are not dropped
+    @TearDown(Level.Iteration)
+    public void takeAverages() {
+        for (SensorPipeline pipeline : this.pipelines)
+            pipeline.takeAverages();
+    }
+
+    // a sample of every sensor of every taxi
+    @Benchmark
+    public void addMeasurements() {
+        this.timestamp++;
+        for (SensorPipeline pipeline : this.pipelines) {
+            for (int i = 0; i < SENSOR_TYPES.length; i++)
+                pipeline.addMeasurement(new Measurement(this.sensorIds[i], SENSOR_TYPES[i], 42.0, this.timestamp));
+        }
+    }
+
+    @Benchmark
+    public void addMeasurementBatch() {
+        this.timestamp++;
+        for (int i = 0; i < TAXIS_NUM; i++) {
+            MeasurementBatch batch = this.batches[i];
+            batch.clear();
+            for (int j = 0; j < SENSOR_TYPES.length; j++)
+                batch.add(this.sensorIndexes[j], 42.0, this.timestamp);
+            this.pipelines[i].addMeasurements(batch);
+        }
+    }
+}
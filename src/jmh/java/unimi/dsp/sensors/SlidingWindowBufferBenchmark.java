@@ -0,0 +1,100 @@
+package unimi.dsp.sensors;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the buffer while the other side keeps running in a background thread, so that the
+ * measured thread never stays blocked when JMH ends an iteration.
+ * there is a single producer and a single consumer, a simulator and the reader of its windows:
+ * the buffer wakes up a single waiting thread, so with more producers a wake up meant for the
+ * consumer can be taken by another producer.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@org.openjdk.jmh.annotations.Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SlidingWindowBufferBenchmark {
+    private static final int BUFFER_SIZE = 8;
+    private static final float OVERLAPPING_FACTOR = 0.5f;
+
+    @State(Scope.Benchmark)
+    public static class ConsumedBuffer {
+        private final Buffer buffer = new RingWindowBuffer(BUFFER_SIZE, OVERLAPPING_FACTOR);
+        private final BackgroundThread consumer = new BackgroundThread(this.buffer::readWindow);
+
+        @Setup
+        public void setup() {
+            this.consumer.start();
+        }
+
+        @TearDown
+        public void tearDown() throws InterruptedException {
+            this.consumer.stop();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ProducedBuffer {
+        private final Buffer buffer = new RingWindowBuffer(BUFFER_SIZE, OVERLAPPING_FACTOR);
+        private final BackgroundThread producer = new BackgroundThread(() -> this.buffer.addMeasurement(
+                new Measurement("pm10", "PM10", 42.0, System.currentTimeMillis())));
+
+        @Setup
+        public void setup() {
+            this.producer.start();
+        }
+
+        @TearDown
+        public void tearDown() throws InterruptedException {
+            this.producer.stop();
+        }
+    }
+
+    @Benchmark
+    public void addMeasurement(ConsumedBuffer state) {
+        state.buffer.addMeasurement(new Measurement("pm10", "PM10", 42.0, System.currentTimeMillis()));
+    }
+
+    @Benchmark
+    public List<Measurement> readAllAndClean(ProducedBuffer state) {
+        return state.buffer.readAllAndClean();
+    }
+
+    // the window is consumed in place, because a view is valid only until the next read
+    @Benchmark
+    public double readWindow(ProducedBuffer state) {
+        MeasurementWindow window = state.buffer.readWindow();
+        double sum = 0;
+        for (int i = 0; i < window.size(); i++)
+            sum += window.getValue(i);
+        return sum;
+    }
+
+    private static class BackgroundThread {
+        private final Thread thread;
+        private volatile boolean running = true;
+
+        public BackgroundThread(Runnable action) {
+            this.thread = new Thread(() -> {
+                while (this.running)
+                    action.run();
+            });
+            this.thread.setDaemon(true);
+        }
+
+        public void start() {
+            this.thread.start();
+        }
+
+        // the buffer swallows the interruption, so the flag is what really stops the thread
+        public void stop() throws InterruptedException {
+            this.running = false;
+            this.thread.interrupt();
+            this.thread.join();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package unimi.dsp.taxi;
+
+import org.openjdk.jmh.annotations.*;
+import unimi.dsp.dto.TaxiInfoDto;
+import unimi.dsp.model.types.District;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the lookup of the next taxi of the ring, which is done for every election message.
+ * the connections are never used, so no grpc server is needed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TaxiRingBenchmark {
+    @Param({"10", "100", "1000"})
+    public int networkTaxisNum;
+
+    private Taxi taxi;
+
+    @Setup
+    public void setup() {
+        // the taxi is in the middle of the ids, so that the next id is not always the first one
+        this.taxi = new Taxi(this.networkTaxisNum, "localhost", 0, new Taxi.TaxiConfig(), null, null);
+        District[] districts = District.values();
+        for (int i = 0; i < 2 * this.networkTaxisNum; i++) {
+            if (i == this.networkTaxisNum)
+                continue;
+            NetworkTaxiConnection connection = new NetworkTaxiConnection(this.taxi,
+                    new TaxiInfoDto(i, "localhost", 10000 + i));
+            connection.setRemoteTaxiDistrict(districts[i % districts.length]);
+            this.taxi.getNetworkTaxiConnections().put(i, connection);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.taxi.getNetworkTaxiConnections().values().forEach(NetworkTaxiConnection::close);
+    }
+
+    @Benchmark
+    public Optional<NetworkTaxiConnection> getNextDistrictTaxiConnection() {
+        return this.taxi.getNextDistrictTaxiConnection();
+    }
+}
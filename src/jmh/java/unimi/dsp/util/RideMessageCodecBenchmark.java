@@ -0,0 +1,55 @@
+package unimi.dsp.util;
+
+import org.openjdk.jmh.annotations.*;
+import unimi.dsp.dto.RideRequestDto;
+import unimi.dsp.model.types.MqttPayloadFormat;
+import unimi.dsp.model.types.SmartCityPosition;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the cost of encoding and decoding the ride requests with the JSON and the protobuf payloads.
+ * the size of the payloads is printed at setup, because JMH measures only time.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RideMessageCodecBenchmark {
+    @Param({"JSON", "PROTOBUF"})
+    public MqttPayloadFormat payloadFormat;
+
+    @Param({"1", "100"})
+    public int batchSize;
+
+    private RideMessageCodec rideMessageCodec;
+    private List<RideRequestDto> rideRequests;
+    private byte[] payload;
+
+    @Setup
+    public void setup() {
+        this.rideMessageCodec = new RideMessageCodec(this.payloadFormat);
+        this.rideRequests = new ArrayList<>();
+        for (int i = 0; i < this.batchSize; i++)
+            this.rideRequests.add(new RideRequestDto(i,
+                    new SmartCityPosition(i % 10, (i / 10) % 10), new SmartCityPosition(9 - i % 10, i % 10)));
+        this.payload = this.encode();
+        System.out.printf("%n%s payload for %d rides: %d bytes%n", this.payloadFormat, this.batchSize, this.payload.length);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return this.batchSize == 1
+                ? this.rideMessageCodec.encodeRideRequest(this.rideRequests.get(0))
+                : this.rideMessageCodec.encodeRideRequestBatch(this.rideRequests);
+    }
+
+    @Benchmark
+    public List<RideRequestDto> decode() {
+        return this.rideMessageCodec.decodeRideRequests(this.payload);
+    }
+}
@@ -0,0 +1,45 @@
+package unimi.dsp.util;
+
+import org.openjdk.jmh.annotations.*;
+import unimi.dsp.dto.RideRequestDto;
+import unimi.dsp.dto.TaxiStatisticsDto;
+import unimi.dsp.dto.types.SerializableOffsetDateTime;
+import unimi.dsp.model.types.SmartCityPosition;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SerializationUtilBenchmark {
+    private RideRequestDto rideRequest;
+    private TaxiStatisticsDto taxiStatistics;
+
+    @Setup
+    public void setup() {
+        this.rideRequest = new RideRequestDto(42, new SmartCityPosition(1, 2), new SmartCityPosition(7, 8));
+        List<Double> pollutionAvgList = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+            pollutionAvgList.add(30.0 + i);
+        this.taxiStatistics = new TaxiStatisticsDto(
+                new SerializableOffsetDateTime(DateTimeUtil.getStringFromOffsetDateTime(OffsetDateTime.now())), 80,
+                new TaxiStatisticsDto.TaxiStatisticsValues(12.5, 3, pollutionAvgList));
+    }
+
+    @Benchmark
+    public RideRequestDto rideRequestRoundTrip() {
+        return SerializationUtil.deserialize(SerializationUtil.serialize(this.rideRequest), RideRequestDto.class);
+    }
+
+    @Benchmark
+    public TaxiStatisticsDto taxiStatisticsRoundTrip() {
+        return SerializationUtil.deserialize(SerializationUtil.serialize(this.taxiStatistics),
+                TaxiStatisticsDto.class);
+    }
+}
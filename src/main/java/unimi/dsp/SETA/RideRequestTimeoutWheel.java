@@ -0,0 +1,205 @@
+package unimi.dsp.SETA;
+
+import unimi.dsp.dto.RideRequestDto;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Hashed wheel timer that tracks the ride requests waiting for a confirmation.
+ * Scheduling and cancelling a timeout cost O(1), while a single worker thread advances the wheel
+ * and hands all the timeouts expired in the same tick to the expiration action as a batch.
+ */
+public class RideRequestTimeoutWheel implements Closeable {
+    private final long tickMillis;
+    private final TimeoutBucket[] wheel;
+    private final int mask;
+    // the key is the ride request id, so that a confirmation can cancel its timeout directly
+    private final Map<Integer, RideRequestTimeout> pendingTimeouts = new HashMap<>();
+    private final Consumer<List<RideRequestTimeout>> expirationAction;
+    private final Thread worker;
+    private final long startTime;
+    private long currentTick = 0;
+
+    /**
+     * Create a timeout wheel
+     * @param tickMillis the duration of a tick, which is the precision of the timeouts
+     * @param wheelSize the number of buckets, rounded up to the next power of 2
+     * @param expirationAction called by the worker thread with the timeouts expired in a tick
+     */
+    public RideRequestTimeoutWheel(long tickMillis, int wheelSize,
+                                   Consumer<List<RideRequestTimeout>> expirationAction) {
+        if (tickMillis <= 0 || wheelSize <= 0)
+            throw new IllegalArgumentException("tickMillis and wheelSize must be > 0");
+
+        this.tickMillis = tickMillis;
+        int normalizedWheelSize = Integer.highestOneBit(wheelSize);
+        if (normalizedWheelSize < wheelSize)
+            normalizedWheelSize <<= 1;
+        this.wheel = new TimeoutBucket[normalizedWheelSize];
+        for (int i = 0; i < normalizedWheelSize; i++)
+            this.wheel[i] = new TimeoutBucket();
+        this.mask = normalizedWheelSize - 1;
+        this.expirationAction = expirationAction;
+        this.startTime = System.currentTimeMillis();
+        this.worker = new Thread(this::advanceWheel);
+    }
+
+    public void start() {
+        this.worker.start();
+    }
+
+    /**
+     * schedule the timeout of a published ride request. if the ride request is already
+     * scheduled, the previous timeout is replaced.
+     */
+    public synchronized void schedule(int district, RideRequestDto rideRequest, long delayMillis) {
+        this.cancel(rideRequest.getId());
+
+        // the bucket of tick t is expired at startTime + (t + 1) * tickMillis, so I choose the first tick
+        // whose expiration is not before the deadline
+        long elapsedAtDeadline = System.currentTimeMillis() + delayMillis - this.startTime;
+        long deadlineTick = Math.max((elapsedAtDeadline + this.tickMillis - 1) / this.tickMillis - 1,
+                this.currentTick);
+
+        RideRequestTimeout timeout = new RideRequestTimeout(district, rideRequest,
+                (deadlineTick - this.currentTick) / this.wheel.length);
+        this.wheel[(int) (deadlineTick & this.mask)].add(timeout);
+        this.pendingTimeouts.put(rideRequest.getId(), timeout);
+    }
+
+    /**
+     * @return true if the ride request was pending and its timeout has been cancelled
+     */
+    public synchronized boolean cancel(int rideRequestId) {
+        RideRequestTimeout timeout = this.pendingTimeouts.remove(rideRequestId);
+        if (timeout == null)
+            return false;
+
+        timeout.bucket.remove(timeout);
+        return true;
+    }
+
+    public synchronized int getPendingTimeoutsCount() {
+        return this.pendingTimeouts.size();
+    }
+
+    @Override
+    public void close() {
+        this.worker.interrupt();
+        synchronized (this) {
+            this.pendingTimeouts.clear();
+            for (TimeoutBucket bucket : this.wheel)
+                bucket.clear();
+        }
+    }
+
+    private void advanceWheel() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                long tickDeadline;
+                synchronized (this) {
+                    tickDeadline = this.startTime + (this.currentTick + 1) * this.tickMillis;
+                }
+
+                long sleepMillis = tickDeadline - System.currentTimeMillis();
+                if (sleepMillis > 0)
+                    Thread.sleep(sleepMillis);
+
+                List<RideRequestTimeout> expiredTimeouts;
+                synchronized (this) {
+                    expiredTimeouts = this.wheel[(int) (this.currentTick & this.mask)].expire();
+                    for (RideRequestTimeout expiredTimeout : expiredTimeouts)
+                        this.pendingTimeouts.remove(expiredTimeout.getRideRequest().getId());
+                    this.currentTick++;
+                }
+
+                // the action is called outside the lock, so that it can schedule again the expired rides
+                if (!expiredTimeouts.isEmpty())
+                    this.expirationAction.accept(expiredTimeouts);
+            }
+        } catch (InterruptedException e) {
+            // the wheel has been closed
+        }
+    }
+
+    public static class RideRequestTimeout {
+        private final int district;
+        private final RideRequestDto rideRequest;
+        // number of complete wheel rotations before this timeout expires
+        private long remainingRounds;
+        private TimeoutBucket bucket;
+        private RideRequestTimeout prev;
+        private RideRequestTimeout next;
+
+        private RideRequestTimeout(int district, RideRequestDto rideRequest, long remainingRounds) {
+            this.district = district;
+            this.rideRequest = rideRequest;
+            this.remainingRounds = remainingRounds;
+        }
+
+        public int getDistrict() {
+            return district;
+        }
+
+        public RideRequestDto getRideRequest() {
+            return rideRequest;
+        }
+    }
+
+    // doubly linked list, so that a timeout can be removed in O(1) given its node
+    private static class TimeoutBucket {
+        private RideRequestTimeout head;
+        private RideRequestTimeout tail;
+
+        public void add(RideRequestTimeout timeout) {
+            timeout.bucket = this;
+            if (this.head == null) {
+                this.head = this.tail = timeout;
+            } else {
+                this.tail.next = timeout;
+                timeout.prev = this.tail;
+                this.tail = timeout;
+            }
+        }
+
+        public void remove(RideRequestTimeout timeout) {
+            if (timeout.prev != null)
+                timeout.prev.next = timeout.next;
+            else
+                this.head = timeout.next;
+
+            if (timeout.next != null)
+                timeout.next.prev = timeout.prev;
+            else
+                this.tail = timeout.prev;
+
+            timeout.prev = timeout.next = null;
+            timeout.bucket = null;
+        }
+
+        public List<RideRequestTimeout> expire() {
+            List<RideRequestTimeout> expiredTimeouts = new ArrayList<>();
+            RideRequestTimeout timeout = this.head;
+            while (timeout != null) {
+                RideRequestTimeout next = timeout.next;
+                if (timeout.remainingRounds <= 0) {
+                    this.remove(timeout);
+                    expiredTimeouts.add(timeout);
+                } else
+                    timeout.remainingRounds--;
+                timeout = next;
+            }
+
+            return expiredTimeouts;
+        }
+
+        public void clear() {
+            this.head = this.tail = null;
+        }
+    }
+}
@@ -3,11 +3,24 @@ package unimi.dsp.SETA;
 import unimi.dsp.dto.RideConfirmDto;
 import unimi.dsp.dto.RideRequestDto;
 
+import java.util.List;
 import java.util.function.Consumer;
 
 public interface SETAServerPubSubBase {
     void publishRideRequest(RideRequestDto rideRequest);
 
+    /**
+     * publish many ride requests in a single message. all the ride requests must start in the same district
+     */
+    void publishRideRequestBatch(List<RideRequestDto> rideRequests);
+
+    void subscribeToRideRequestPublishFailures(Consumer<RideRequestDto> failureAction);
+
+    /**
+     * the action is called for each ride request whose publish has been acknowledged
+     */
+    void subscribeToRideRequestPublishSuccesses(Consumer<RideRequestDto> successAction);
+
     void subscribeToRideConfirmationTopic(Consumer<RideConfirmDto> confirmAction);
 
     void unsubscribeFromRideConfirmationTopic();
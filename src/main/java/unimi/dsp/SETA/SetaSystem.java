@@ -13,17 +13,27 @@ import unimi.dsp.util.MQTTClientFactory;
 
 import java.io.Closeable;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class SetaSystem implements Closeable {
     private static final ConfigurationManager configurationManager = ConfigurationManager.getInstance();
     private static final Logger logger = LogManager.getLogger(SetaSystem.class.getName());
+    private static final int TIMEOUT_WHEEL_SIZE = 512;
+    // bounds the payload size when many rides of the same district are pending
+    private static final int MAX_RIDE_REQUESTS_PER_BATCH = 100;
 
     private final RideGenerator rideGenerator;
     private final SETAConfig setaConfig;
     private final SETAServerPubSubBase setaServerPubSub;
-    private final Map<Integer, Set<RideRequestDto>> districtNewRequestsMap;
-    private final Set<Integer> pendingRideConfirmations;
-    private final List<Thread> workingThreads = new ArrayList<>();
+    private final Map<Integer, DistrictRideRequests> districtNewRequestsMap;
+    // keeps the published ride requests until they are confirmed or their timeout expires
+    private final RideRequestTimeoutWheel rideRequestTimeoutWheel;
+    // the districts are published by a fixed number of threads, whatever the number of districts
+    private final ScheduledExecutorService publisherExecutor;
 
     /**
      * Create a SETA system
@@ -39,28 +49,41 @@ public class SetaSystem implements Closeable {
         this.setaServerPubSub = setaServerPubSub;
 
         this.districtNewRequestsMap = new HashMap<>();
-        this.pendingRideConfirmations = new HashSet<>();
-        for (int i = 1; i <= configurationManager.getNumDistricts(); i++) {
-            this.districtNewRequestsMap.put(i, new HashSet<>());
+        this.rideRequestTimeoutWheel = new RideRequestTimeoutWheel(
+                this.setaConfig.timeoutWheelTickMillis, TIMEOUT_WHEEL_SIZE,
+                this::republishExpiredRideRequests);
+        for (District district : District.values()) {
+            this.districtNewRequestsMap.put(district.getId(), new DistrictRideRequests());
         }
+        AtomicInteger publisherThreadsNum = new AtomicInteger();
+        this.publisherExecutor = Executors.newScheduledThreadPool(this.setaConfig.publisherThreads, r -> {
+            Thread thread = new Thread(r, "seta-publisher-" + publisherThreadsNum.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     public void run() throws MqttException {
         this.subscribeToRideConfirmations();
-        this.startThreadsToPublishRideRequests();
+        this.subscribeToRideRequestPublishFailures();
+        this.subscribeToRideRequestPublishSuccesses();
+        this.rideRequestTimeoutWheel.start();
         int curId = 0;
 
         try {
             while (!Thread.currentThread().isInterrupted() &&
                     (this.setaConfig.requestLimit == 0 || curId < this.setaConfig.requestLimit)) {
-                for (int i = 0; i < this.setaConfig.numGeneratedRequest; i++) {
-                    RideRequestDto rideRequest = this.rideGenerator.generateRide();
-                    addToNewRideRequests(rideRequest);
+                List<RideRequestDto> generatedRideRequests = new ArrayList<>();
+                for (int i = 0; i < this.setaConfig.numGeneratedRequest &&
+                        (this.setaConfig.requestLimit == 0 || curId < this.setaConfig.requestLimit); i++) {
+                    generatedRideRequests.add(this.rideGenerator.generateRide());
                     curId++;
-
-                    if (curId == this.setaConfig.requestLimit)
-                        return;
                 }
+                // the rides of a tick are added together, so that they can be published in the same batch
+                addToNewRideRequests(generatedRideRequests);
+
+                if (curId == this.setaConfig.requestLimit)
+                    return;
 
                 Thread.sleep(this.setaConfig.genFrequencyMillis);
             }
@@ -71,121 +94,157 @@ public class SetaSystem implements Closeable {
 
     @Override
     public void close() {
-        for (Thread workingThread : this.workingThreads)
-            workingThread.interrupt();
+        this.publisherExecutor.shutdownNow();
+        this.rideRequestTimeoutWheel.close();
 
         this.setaServerPubSub.unsubscribeFromRideConfirmationTopic();
     }
 
-    private class RideRequestPublisher extends Thread {
-        private final int district;
-        private final RideRequestDto rideRequest;
+    /**
+     * the ride requests of a district waiting to be published. at most one publish task per district
+     * is scheduled or running, so the rides of a district are published in order.
+     */
+    private static class DistrictRideRequests {
+        private final Set<RideRequestDto> newRideRequestsSet = new HashSet<>();
+        private boolean isPublishScheduled = false;
+        // a publish has failed since the last publish task was scheduled
+        private boolean hasPublishFailed = false;
+        // the delay of the publish tasks while the publishes fail, e.g. while the broker is disconnected.
+        // it doubles at each task scheduled after a failure and it is reset by the next PUBACK
+        private long publishRetryDelayMillis = 0;
+    }
 
-        public RideRequestPublisher(int district, RideRequestDto rideRequest) {
-            super();
-            this.district = district;
-            this.rideRequest = rideRequest;
+    private void schedulePublish(int districtId) {
+        // with the linger window, the rides that arrive in the meantime end up in the same batch
+        long delayMillis = this.setaConfig.rideRequestBatching ? this.setaConfig.rideRequestBatchLingerMillis : 0;
+        DistrictRideRequests districtRideRequests = this.districtNewRequestsMap.get(districtId);
+        synchronized (districtRideRequests) {
+            if (districtRideRequests.hasPublishFailed) {
+                districtRideRequests.hasPublishFailed = false;
+                districtRideRequests.publishRetryDelayMillis = districtRideRequests.publishRetryDelayMillis == 0
+                        ? this.setaConfig.publishRetryInitialBackoffMillis
+                        : Math.min(2 * districtRideRequests.publishRetryDelayMillis,
+                                this.setaConfig.publishRetryMaxBackoffMillis);
+            }
+            delayMillis = Math.max(delayMillis, districtRideRequests.publishRetryDelayMillis);
         }
+        try {
+            this.publisherExecutor.schedule(() -> this.publishDistrictRideRequests(districtId),
+                    delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // SETA is closing
+        }
+    }
 
-        @Override
-        public void run() {
-            try {
-                synchronized (SetaSystem.this.pendingRideConfirmations) {
-                    SetaSystem.this.pendingRideConfirmations.add(this.rideRequest.getId());
-                }
+    private void publishDistrictRideRequests(int districtId) {
+        DistrictRideRequests districtRideRequests = this.districtNewRequestsMap.get(districtId);
+        List<RideRequestDto> rideRequestsToPublish;
+        synchronized (districtRideRequests) {
+            rideRequestsToPublish = new ArrayList<>(districtRideRequests.newRideRequestsSet);
+            districtRideRequests.newRideRequestsSet.clear();
+        }
 
-                Thread.sleep(setaConfig.rideRequestTimeout);
-
-                synchronized (SetaSystem.this.pendingRideConfirmations) {
-                    if (SetaSystem.this.pendingRideConfirmations.contains(this.rideRequest.getId())) {
-                        logger.info("Ride request with Id {} will be sent again (cause: idleness)",
-                                this.rideRequest.getId());
-                        this.rideRequest.resetTimestamp();
-                        Set<RideRequestDto> newRideRequestsSet = districtNewRequestsMap.get(this.district);
-                        synchronized (newRideRequestsSet) {
-                            newRideRequestsSet.add(this.rideRequest);
-                            newRideRequestsSet.notify();
-                        }
-                    }
-                }
+        // the timeouts are scheduled before publishing, otherwise a fast confirmation
+        // could arrive before the timeout exists and the ride would be sent again
+        for (RideRequestDto rideRequest : rideRequestsToPublish)
+            this.rideRequestTimeoutWheel.schedule(districtId, rideRequest, this.setaConfig.rideRequestTimeout);
+
+        // I publish outside the lock, so that a full publish window does not block
+        // the generation of new ride requests
+        if (this.setaConfig.rideRequestBatching) {
+            for (int i = 0; i < rideRequestsToPublish.size(); i += MAX_RIDE_REQUESTS_PER_BATCH)
+                this.setaServerPubSub.publishRideRequestBatch(rideRequestsToPublish.subList(
+                        i, Math.min(i + MAX_RIDE_REQUESTS_PER_BATCH, rideRequestsToPublish.size())));
+        } else {
+            for (RideRequestDto rideRequest : rideRequestsToPublish)
+                this.setaServerPubSub.publishRideRequest(rideRequest);
+        }
 
-                synchronized (workingThreads) {
-                    workingThreads.remove(this);
-                }
-            } catch (InterruptedException e) {
+        // the rides added while I was publishing are published by a new task
+        synchronized (districtRideRequests) {
+            if (districtRideRequests.newRideRequestsSet.isEmpty()) {
+                districtRideRequests.isPublishScheduled = false;
+                return;
             }
         }
+        this.schedulePublish(districtId);
+    }
+
+    void addToNewRideRequests(List<RideRequestDto> rideRequests) {
+        Map<Integer, List<RideRequestDto>> districtRideRequestsMap = new HashMap<>();
+        for (RideRequestDto rideRequest : rideRequests) {
+            logger.info("Ride request with Id {} has been generated", rideRequest.getId());
+            districtRideRequestsMap.computeIfAbsent(getDistrictId(rideRequest), d -> new ArrayList<>())
+                    .add(rideRequest);
+        }
+
+        districtRideRequestsMap.forEach(this::addToDistrictRideRequests);
     }
 
-    private class DistrictPublisherThread extends Thread {
-        private final int districtId;
+    private static int getDistrictId(RideRequestDto rideRequest) {
+        return District.fromCell(rideRequest.getStartCell()).getId();
+    }
 
-        public DistrictPublisherThread(int districtId) {
-            super();
-            this.districtId = districtId;
+    private void republishExpiredRideRequests(List<RideRequestTimeoutWheel.RideRequestTimeout> expiredTimeouts) {
+        Map<Integer, List<RideRequestDto>> expiredRideRequestsMap = new HashMap<>();
+        for (RideRequestTimeoutWheel.RideRequestTimeout expiredTimeout : expiredTimeouts) {
+            expiredRideRequestsMap.computeIfAbsent(expiredTimeout.getDistrict(), d -> new ArrayList<>())
+                    .add(expiredTimeout.getRideRequest());
         }
 
-        @Override
-        public void run() {
-            Set<RideRequestDto> newRideRequestsSet = districtNewRequestsMap.get(this.districtId);
-            try {
-                synchronized (newRideRequestsSet) {
-                    while (!this.isInterrupted()) {
-                        while (newRideRequestsSet.size() == 0) {
-                            newRideRequestsSet.wait();
-                        }
-
-                        List<RideRequestDto> publishedRequests = new ArrayList<>();
-                        for (RideRequestDto rideRequest : newRideRequestsSet) {
-                            RideRequestPublisher rideRequestPublisher = new RideRequestPublisher(
-                                    this.districtId, rideRequest);
-
-                            SetaSystem.this.setaServerPubSub.publishRideRequest(rideRequest);
-                            rideRequestPublisher.start();
-                            publishedRequests.add(rideRequest);
-                            synchronized (workingThreads) {
-                                workingThreads.add(rideRequestPublisher);
-                            }
-                        }
-                        publishedRequests.forEach(newRideRequestsSet::remove);
-                    }
-                }
-            }
-            catch (InterruptedException e) {
+        // the expired rides of the same district are added together, so that the publisher wakes up once
+        for (Map.Entry<Integer, List<RideRequestDto>> entry : expiredRideRequestsMap.entrySet()) {
+            for (RideRequestDto rideRequest : entry.getValue()) {
+                logger.info("Ride request with Id {} will be sent again (cause: idleness)", rideRequest.getId());
+                rideRequest.resetTimestamp();
             }
+            this.addToDistrictRideRequests(entry.getKey(), entry.getValue());
         }
     }
 
-    private void startThreadsToPublishRideRequests() {
-        for (int i = 1; i <= configurationManager.getNumDistricts(); i++) {
-            Thread districtPublisherThread = new DistrictPublisherThread(i);
-            synchronized (this.workingThreads) {
-                this.workingThreads.add(districtPublisherThread);
-            }
-
-            districtPublisherThread.start();
+    private void addToDistrictRideRequests(int district, Collection<RideRequestDto> rideRequests) {
+        DistrictRideRequests districtRideRequests = this.districtNewRequestsMap.get(district);
+        synchronized (districtRideRequests) {
+            districtRideRequests.newRideRequestsSet.addAll(rideRequests);
+            if (districtRideRequests.isPublishScheduled)
+                return;
+            districtRideRequests.isPublishScheduled = true;
         }
+        this.schedulePublish(district);
     }
 
-    void addToNewRideRequests(RideRequestDto rideRequest) {
-        District district = District.fromPosition(rideRequest.getStart());
-        Set<RideRequestDto> newRideRequestsSet = districtNewRequestsMap
-                .get(Integer.parseInt(district.toString()));
-        logger.info("Ride request with Id {} has been generated", rideRequest.getId());
-        synchronized (newRideRequestsSet) {
-            newRideRequestsSet.add(rideRequest);
-            newRideRequestsSet.notify();
-        }
+    private void subscribeToRideRequestPublishFailures() {
+        // a failed publish goes back to the district queue, so that it is retried by the district publisher
+        this.setaServerPubSub.subscribeToRideRequestPublishFailures(rideRequest -> {
+            if (!this.rideRequestTimeoutWheel.cancel(rideRequest.getId()))
+                return;
+
+            logger.info("Ride request with Id {} will be sent again (cause: publish failure)",
+                    rideRequest.getId());
+            rideRequest.resetTimestamp();
+            int districtId = getDistrictId(rideRequest);
+            DistrictRideRequests districtRideRequests = this.districtNewRequestsMap.get(districtId);
+            synchronized (districtRideRequests) {
+                districtRideRequests.hasPublishFailed = true;
+            }
+            this.addToDistrictRideRequests(districtId, Collections.singletonList(rideRequest));
+        });
     }
 
-    private void subscribeToRideConfirmations() {
-        this.setaServerPubSub.subscribeToRideConfirmationTopic(rideConfirm -> {
-            synchronized (pendingRideConfirmations) {
-                pendingRideConfirmations.remove(rideConfirm.getRideId());
+    private void subscribeToRideRequestPublishSuccesses() {
+        this.setaServerPubSub.subscribeToRideRequestPublishSuccesses(rideRequest -> {
+            DistrictRideRequests districtRideRequests = this.districtNewRequestsMap.get(getDistrictId(rideRequest));
+            synchronized (districtRideRequests) {
+                districtRideRequests.publishRetryDelayMillis = 0;
             }
         });
     }
 
+    private void subscribeToRideConfirmations() {
+        this.setaServerPubSub.subscribeToRideConfirmationTopic(rideConfirm ->
+                this.rideRequestTimeoutWheel.cancel(rideConfirm.getRideId()));
+    }
+
     public interface RideGenerator {
         RideRequestDto generateRide();
     }
@@ -195,6 +254,12 @@ public class SetaSystem implements Closeable {
         private int genFrequencyMillis = configurationManager.getSETAGenerationFrequencyMillis();
         private int numGeneratedRequest = configurationManager.getSETANumGeneratedRequest();
         private int rideRequestTimeout = configurationManager.getRideRequestTimeout();
+        private int timeoutWheelTickMillis = 100;
+        private boolean rideRequestBatching = configurationManager.getSETARideRequestBatching();
+        private int rideRequestBatchLingerMillis = configurationManager.getSETARideRequestBatchLingerMillis();
+        private int publisherThreads = configurationManager.getSETAPublisherThreads();
+        private int publishRetryInitialBackoffMillis = configurationManager.getSETAPublishRetryInitialBackoffMillis();
+        private int publishRetryMaxBackoffMillis = configurationManager.getSETAPublishRetryMaxBackoffMillis();
 
         public SETAConfig withRequestLimit(int requestLimit) {
             this.requestLimit = requestLimit;
@@ -215,6 +280,36 @@ public class SetaSystem implements Closeable {
             this.rideRequestTimeout = rideRequestTimeout;
             return this;
         }
+
+        public SETAConfig withTimeoutWheelTickMillis(int timeoutWheelTickMillis) {
+            this.timeoutWheelTickMillis = timeoutWheelTickMillis;
+            return this;
+        }
+
+        public SETAConfig withRideRequestBatching(boolean rideRequestBatching) {
+            this.rideRequestBatching = rideRequestBatching;
+            return this;
+        }
+
+        public SETAConfig withRideRequestBatchLingerMillis(int rideRequestBatchLingerMillis) {
+            this.rideRequestBatchLingerMillis = rideRequestBatchLingerMillis;
+            return this;
+        }
+
+        public SETAConfig withPublisherThreads(int publisherThreads) {
+            this.publisherThreads = publisherThreads;
+            return this;
+        }
+
+        public SETAConfig withPublishRetryInitialBackoffMillis(int publishRetryInitialBackoffMillis) {
+            this.publishRetryInitialBackoffMillis = publishRetryInitialBackoffMillis;
+            return this;
+        }
+
+        public SETAConfig withPublishRetryMaxBackoffMillis(int publishRetryMaxBackoffMillis) {
+            this.publishRetryMaxBackoffMillis = publishRetryMaxBackoffMillis;
+            return this;
+        }
     }
 
     public static void main(String[] args) throws MqttException {
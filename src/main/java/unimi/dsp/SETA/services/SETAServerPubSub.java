@@ -8,8 +8,11 @@ import unimi.dsp.dto.RideConfirmDto;
 import unimi.dsp.dto.RideRequestDto;
 import unimi.dsp.model.types.District;
 import unimi.dsp.util.ConfigurationManager;
-import unimi.dsp.util.SerializationUtil;
+import unimi.dsp.util.RideMessageCodec;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 public class SETAServerPubSub implements SETAServerPubSubBase {
@@ -17,11 +20,38 @@ public class SETAServerPubSub implements SETAServerPubSubBase {
     private static final String RIDE_REQUEST_TOPIC_PREFIX = configurationManager.getRideRequestTopicPrefix();
     private static final String RIDE_CONFIRM_TOPIC = configurationManager.getRideConfirmationTopic();
     private static final Logger logger = LogManager.getLogger(SETAServerPubSub.class.getName());
+    // number of PUBACKs after which the publish statistics are logged
+    private static final int PUBLISH_STATS_LOG_PERIOD = 100;
 
     private final MqttAsyncClient mqttClient;
+    private final RideMessageCodec rideMessageCodec;
+    // districtTopics[id - 1] and districtPublishWindows[id - 1] belong to the district with that id,
+    // each district has its own window of in-flight publishes
+    private final String[] districtTopics;
+    private final PublishWindow[] districtPublishWindows;
+    private final PublishStatistics publishStatistics = new PublishStatistics();
+    private volatile Consumer<RideRequestDto> publishFailureAction = rideRequest -> {};
+    private volatile Consumer<RideRequestDto> publishSuccessAction = rideRequest -> {};
 
     public SETAServerPubSub(MqttAsyncClient mqttClient) {
+        this(mqttClient, configurationManager.getSETAMaxInFlightPublishesPerDistrict(), new RideMessageCodec());
+    }
+
+    public SETAServerPubSub(MqttAsyncClient mqttClient, int maxInFlightPublishesPerDistrict) {
+        this(mqttClient, maxInFlightPublishesPerDistrict, new RideMessageCodec());
+    }
+
+    public SETAServerPubSub(MqttAsyncClient mqttClient, int maxInFlightPublishesPerDistrict,
+                            RideMessageCodec rideMessageCodec) {
         this.mqttClient = mqttClient;
+        this.rideMessageCodec = rideMessageCodec;
+
+        this.districtTopics = new String[District.getDistrictsNum()];
+        this.districtPublishWindows = new PublishWindow[District.getDistrictsNum()];
+        for (District district : District.values()) {
+            this.districtTopics[district.getId() - 1] = RIDE_REQUEST_TOPIC_PREFIX + "/district" + district;
+            this.districtPublishWindows[district.getId() - 1] = new PublishWindow(maxInFlightPublishesPerDistrict);
+        }
     }
 
     public void subscribeToRideConfirmationTopic(Consumer<RideConfirmDto> confirmAction) {
@@ -35,8 +65,7 @@ public class SETAServerPubSub implements SETAServerPubSubBase {
                 if (!topic.equals(RIDE_CONFIRM_TOPIC))
                     return;
 
-                RideConfirmDto rideConfirm = SerializationUtil.deserialize(
-                        message.getPayload(), RideConfirmDto.class);
+                RideConfirmDto rideConfirm = rideMessageCodec.decodeRideConfirm(message.getPayload());
                 logger.info("Ride confirmation with id {} has arrived", rideConfirm.getRideId());
                 confirmAction.accept(rideConfirm);
             }
@@ -66,20 +95,140 @@ public class SETAServerPubSub implements SETAServerPubSubBase {
             logger.error("Cannot unsubscribe from confirmation topic", e);
             throw new RuntimeException(e);
         }
+        this.publishStatistics.log();
     }
 
+    @Override
+    public void subscribeToRideRequestPublishFailures(Consumer<RideRequestDto> failureAction) {
+        this.publishFailureAction = failureAction;
+    }
+
+    @Override
+    public void subscribeToRideRequestPublishSuccesses(Consumer<RideRequestDto> successAction) {
+        this.publishSuccessAction = successAction;
+    }
+
+    /**
+     * publish the ride request without waiting for the PUBACK. the caller blocks only if the
+     * district has already `maxInFlightPublishesPerDistrict` unacknowledged messages.
+     * if the publish fails, the ride request is handed to the failure action.
+     */
     public void publishRideRequest(RideRequestDto rideRequest) {
+        this.publishAsync(rideRequest.getStartCell(), this.rideMessageCodec.encodeRideRequest(rideRequest),
+                Collections.singletonList(rideRequest));
+    }
+
+    /**
+     * same as `publishRideRequest`, but all the ride requests are packed in a single message and
+     * occupy a single slot of the district window
+     */
+    @Override
+    public void publishRideRequestBatch(List<RideRequestDto> rideRequests) {
+        if (rideRequests.isEmpty())
+            return;
+
+        this.publishAsync(rideRequests.get(0).getStartCell(),
+                this.rideMessageCodec.encodeRideRequestBatch(rideRequests), rideRequests);
+    }
+
+    private void publishAsync(int districtCell, byte[] payload, List<RideRequestDto> rideRequests) {
+        int districtIndex = District.fromCell(districtCell).getId() - 1;
+        String messageTopic = this.districtTopics[districtIndex];
+        PublishWindow publishWindow = this.districtPublishWindows[districtIndex];
+
         try {
-            String messageTopic = RIDE_REQUEST_TOPIC_PREFIX + "/district" +
-                    District.fromPosition(rideRequest.getStart()).toString();
-            mqttClient.publish(messageTopic,
-                    SerializationUtil.serialize(rideRequest),
-                    1, false).waitForCompletion();
-            logger.info("Ride request with Id {} has been published in {}",
-                    rideRequest.getId(), messageTopic);
+            publishWindow.acquire();
+        } catch (InterruptedException e) {
+            // the publisher is stopping, the ride requests are not lost because they go back to the failure action
+            Thread.currentThread().interrupt();
+            rideRequests.forEach(this.publishFailureAction);
+            return;
+        }
+
+        long publishStartNanos = System.nanoTime();
+        try {
+            mqttClient.publish(messageTopic, payload, 1, false,
+                    null, new IMqttActionListener() {
+                        @Override
+                        public void onSuccess(IMqttToken asyncActionToken) {
+                            publishWindow.release();
+                            publishStatistics.addAcknowledgedPublish(rideRequests.size(),
+                                    System.nanoTime() - publishStartNanos);
+                            for (RideRequestDto rideRequest : rideRequests)
+                                logger.info("Ride request with Id {} has been published in {}",
+                                        rideRequest.getId(), messageTopic);
+                            rideRequests.forEach(publishSuccessAction);
+                        }
+
+                        @Override
+                        public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
+                            publishWindow.release();
+                            logger.error("Cannot publish ride requests in " + messageTopic, exception);
+                            rideRequests.forEach(publishFailureAction);
+                        }
+                    });
         } catch (MqttException e) {
-            logger.error("Cannot publish ride request", e);
-            throw new RuntimeException(e);
+            publishWindow.release();
+            logger.error("Cannot publish ride requests in " + messageTopic, e);
+            rideRequests.forEach(this.publishFailureAction);
+        }
+    }
+
+    private static class PublishWindow {
+        private final int size;
+        private int inFlightPublishes = 0;
+
+        public PublishWindow(int size) {
+            this.size = size;
+        }
+
+        public synchronized void acquire() throws InterruptedException {
+            while (this.inFlightPublishes == this.size)
+                this.wait();
+
+            this.inFlightPublishes++;
+        }
+
+        public synchronized void release() {
+            this.inFlightPublishes--;
+            this.notify();
+        }
+    }
+
+    private static class PublishStatistics {
+        private long firstAckNanos = 0;
+        private long lastAckNanos = 0;
+        private long acknowledgedPublishes = 0;
+        private long publishedRideRequests = 0;
+        private long totalLatencyNanos = 0;
+        private long maxLatencyNanos = 0;
+
+        public synchronized void addAcknowledgedPublish(int rideRequestsNum, long latencyNanos) {
+            this.lastAckNanos = System.nanoTime();
+            if (this.acknowledgedPublishes == 0)
+                this.firstAckNanos = this.lastAckNanos - latencyNanos;
+            this.acknowledgedPublishes++;
+            this.publishedRideRequests += rideRequestsNum;
+            this.totalLatencyNanos += latencyNanos;
+            this.maxLatencyNanos = Math.max(this.maxLatencyNanos, latencyNanos);
+
+            if (this.acknowledgedPublishes % PUBLISH_STATS_LOG_PERIOD == 0)
+                this.log();
+        }
+
+        public synchronized void log() {
+            if (this.acknowledgedPublishes == 0)
+                return;
+
+            double elapsedSeconds = Math.max(this.lastAckNanos - this.firstAckNanos, 1) / 1e9;
+            logger.info("SETA published {} ride requests in {} messages: throughput {} msg/s ({} rides/s), " +
+                            "PUBACK latency avg {} ms, max {} ms",
+                    this.publishedRideRequests, this.acknowledgedPublishes,
+                    String.format("%.1f", this.acknowledgedPublishes / elapsedSeconds),
+                    String.format("%.1f", this.publishedRideRequests / elapsedSeconds),
+                    String.format("%.2f", TimeUnit.NANOSECONDS.toMicros(
+                            this.totalLatencyNanos / this.acknowledgedPublishes) / 1000.0),
+                    String.format("%.2f", TimeUnit.NANOSECONDS.toMicros(this.maxLatencyNanos) / 1000.0));
         }
     }
 }
@@ -2,6 +2,7 @@ package unimi.dsp.adminServer;
 
 import com.sun.jersey.api.container.httpserver.HttpServerFactory;
 import com.sun.net.httpserver.HttpServer;
+import unimi.dsp.adminServer.factories.TaxiServiceFactory;
 import unimi.dsp.util.ConfigurationManager;
 
 import java.io.IOException;
@@ -20,6 +21,7 @@ public class ServerStarter {
         System.in.read();
         System.out.println("Stopping server");
         server.stop(0);
+        TaxiServiceFactory.close();
         System.out.println("Server stopped");
     }
 }
@@ -5,6 +5,7 @@ import unimi.dsp.adminServer.exceptions.IdAlreadyRegisteredException;
 import unimi.dsp.adminServer.exceptions.IdNotFoundException;
 import unimi.dsp.adminServer.exceptions.ReportTypeNotFoundException;
 import unimi.dsp.dto.TaxiInfoDto;
+import unimi.dsp.dto.TaxiStatisticsBatchDto;
 import unimi.dsp.dto.TaxiStatisticsDto;
 import unimi.dsp.adminServer.factories.TaxiServiceFactory;
 import unimi.dsp.adminServer.services.TaxiService;
@@ -86,6 +87,20 @@ public class TaxiResource {
         }
     }
 
+    @POST
+    @Path("/statistics:batch")
+    @Consumes({ MediaType.APPLICATION_JSON })
+    @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML })
+    public Response loadTaxisStatistics(
+            TaxiStatisticsBatchDto taxiStatisticsBatch) {
+        if (taxiStatisticsBatch == null || taxiStatisticsBatch.getRecords() == null ||
+                taxiStatisticsBatch.getRecords().stream().anyMatch(r -> r == null || r.getStatistics() == null))
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity("batch and statistics objects cannot be null").build();
+
+        return Response.ok(service.loadTaxisStatistics(taxiStatisticsBatch.getRecords())).build();
+    }
+
     @POST
     @Consumes({ MediaType.APPLICATION_JSON })
     @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML })
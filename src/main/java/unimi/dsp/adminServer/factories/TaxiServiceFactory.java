@@ -2,15 +2,24 @@ package unimi.dsp.adminServer.factories;
 
 import unimi.dsp.adminServer.services.TaxiService;
 import unimi.dsp.adminServer.services.impl.TaxiServiceImpl;
+import unimi.dsp.adminServer.storage.TaxiStatisticsLog;
 import unimi.dsp.model.types.SmartCityPosition;
 import unimi.dsp.util.ConfigurationManager;
 
+import java.nio.file.Paths;
 import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class TaxiServiceFactory {
-    private static final TaxiService service = new TaxiServiceImpl(
+    private static final ConfigurationManager configurationManager = ConfigurationManager.getInstance();
+    private static final TaxiStatisticsLog statisticsLog = new TaxiStatisticsLog(
+            Paths.get(configurationManager.getAdminStatisticsLogDirectory()),
+            configurationManager.getAdminStatisticsLogSegmentRecords(),
+            configurationManager.getAdminStatisticsLogSyncCommit());
+    private static final TaxiServiceImpl service = new TaxiServiceImpl(
             () -> {
-                ConfigurationManager configurationManager = ConfigurationManager.getInstance();
                 Random random = new Random();
 
                 int width = configurationManager.getSmartCityWidth();
@@ -20,10 +29,39 @@ public class TaxiServiceFactory {
                 int genY = random.nextInt(2);
 
                 return new SmartCityPosition(genX == 1 ? width - 1 : 0, genY == 1 ? height - 1 : 0);
-            }
+            },
+            statisticsLog
     );
+    private static final ScheduledExecutorService compactionExecutor = startCompaction();
 
     public static TaxiService getTaxiService() {
         return service;
     }
+
+    /**
+     * stop the compaction and make the statistics log durable
+     */
+    public static void close() {
+        if (compactionExecutor != null)
+            compactionExecutor.shutdownNow();
+        statisticsLog.close();
+    }
+
+    // the statistics older than the retention are removed periodically, a retention of 0 keeps them forever
+    private static ScheduledExecutorService startCompaction() {
+        long retentionMillis = TimeUnit.HOURS.toMillis(configurationManager.getAdminStatisticsRetentionHours());
+        if (retentionMillis <= 0)
+            return null;
+
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "statistics-compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long periodMinutes = configurationManager.getAdminStatisticsCompactionPeriodMinutes();
+        executor.scheduleAtFixedRate(
+                () -> service.removeStatisticsBefore(System.currentTimeMillis() - retentionMillis),
+                0, periodMinutes, TimeUnit.MINUTES);
+        return executor;
+    }
 }
@@ -5,7 +5,9 @@ import unimi.dsp.adminServer.exceptions.IdNotFoundException;
 import unimi.dsp.adminServer.exceptions.ReportTypeNotFoundException;
 import unimi.dsp.dto.NewTaxiDto;
 import unimi.dsp.dto.TaxiInfoDto;
+import unimi.dsp.dto.TaxiStatisticsBatchResultDto;
 import unimi.dsp.dto.TaxiStatisticsDto;
+import unimi.dsp.dto.TaxiStatisticsRecordDto;
 import unimi.dsp.model.types.TaxiStatisticsReportType;
 
 import java.time.OffsetDateTime;
@@ -16,6 +18,7 @@ public interface TaxiService {
     Object getTaxiStatisticsReport(int id, int n, TaxiStatisticsReportType type) throws IdNotFoundException, ReportTypeNotFoundException;
     Object getTaxisStatisticsReport(OffsetDateTime tsStart, OffsetDateTime tsEnd, TaxiStatisticsReportType type) throws ReportTypeNotFoundException;
     void loadTaxiStatistics(int id, TaxiStatisticsDto taxiStatistics) throws IdNotFoundException;
+    TaxiStatisticsBatchResultDto loadTaxisStatistics(List<TaxiStatisticsRecordDto> taxiStatisticsRecords);
     NewTaxiDto registerTaxi(TaxiInfoDto taxiInfo) throws IdAlreadyRegisteredException;
     void removeTaxi(int id) throws IdNotFoundException;
 }
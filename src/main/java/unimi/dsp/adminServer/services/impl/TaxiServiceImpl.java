@@ -4,30 +4,66 @@ import unimi.dsp.adminServer.exceptions.IdAlreadyRegisteredException;
 import unimi.dsp.adminServer.exceptions.IdNotFoundException;
 import unimi.dsp.adminServer.exceptions.ReportTypeNotFoundException;
 import unimi.dsp.adminServer.services.TaxiPositionGenerator;
+import unimi.dsp.adminServer.storage.TaxiStatisticsLog;
 import unimi.dsp.dto.NewTaxiDto;
 import unimi.dsp.dto.TaxiInfoDto;
 import unimi.dsp.dto.TaxiStatisticsAvgReportDto;
+import unimi.dsp.dto.TaxiStatisticsBatchResultDto;
 import unimi.dsp.dto.TaxiStatisticsDto;
+import unimi.dsp.dto.TaxiStatisticsRecordDto;
 import unimi.dsp.adminServer.services.TaxiService;
 import unimi.dsp.model.types.SmartCityPosition;
 import unimi.dsp.model.types.TaxiStatisticsReportType;
 
 import java.time.OffsetDateTime;
 import java.util.*;
-import java.util.stream.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
 
 public class TaxiServiceImpl implements TaxiService {
     private final TaxiPositionGenerator taxiPositionGenerator;
-    private final HashMap<Integer, TaxiInfo> taxiInfos = new HashMap<>();
+    private final Map<Integer, TaxiInfo> taxiInfos = new ConcurrentHashMap<>();
+    // reads never lock: the statistics of each taxi are kept in its own lock-free history.
+    // a replayed history waits for its taxi to register again, while the removal of a taxi drops it,
+    // so that a reused id starts from no statistics
+    private final Map<Integer, TaxiStatisticsHistory> taxiStatisticsHistories = new ConcurrentHashMap<>();
+    // registrations and removals are serialized by the write lock, so that each new taxi receives a consistent
+    // list of peers. the loads of statistics look up their taxis and append them to the log with the read lock,
+    // so a statistic of a removed taxi is never logged after its tombstone
+    private final ReadWriteLock registrationLock = new ReentrantReadWriteLock();
+    // null when the statistics are kept only in memory
+    private final TaxiStatisticsLog taxiStatisticsLog;
 
     public TaxiServiceImpl(TaxiPositionGenerator taxiPositionGenerator) {
+        this(taxiPositionGenerator, null);
+    }
+
+    /**
+     * the statistics are written in `taxiStatisticsLog` before being acknowledged, and
+     * the ones already in the log are loaded back
+     */
+    public TaxiServiceImpl(TaxiPositionGenerator taxiPositionGenerator, TaxiStatisticsLog taxiStatisticsLog) {
         this.taxiPositionGenerator = taxiPositionGenerator;
+        this.taxiStatisticsLog = taxiStatisticsLog;
+        if (taxiStatisticsLog != null)
+            taxiStatisticsLog.replay(new TaxiStatisticsLog.RecordVisitor() {
+                @Override
+                public void visit(int taxiId, long timestamp, double kmsTraveled, int batteryLevel,
+                                  int numRides, double pollutionAvg) {
+                    getTaxiStatisticsHistory(taxiId).add(timestamp, kmsTraveled, batteryLevel, numRides, pollutionAvg);
+                }
+
+                @Override
+                public void visitTombstone(int taxiId, long timestamp) {
+                    taxiStatisticsHistories.remove(taxiId);
+                }
+            });
     }
 
-    // I have to synchronize both read and write methods because iterators
-    // are not concurrently modifiable and would throw a ConcurrentModification exception
     @Override
-    public synchronized List<TaxiInfoDto> getAllTaxis() {
+    public List<TaxiInfoDto> getAllTaxis() {
         return taxiInfos.entrySet().stream().map(e ->
                 new TaxiInfoDto(
                         e.getKey(),
@@ -39,23 +75,16 @@ public class TaxiServiceImpl implements TaxiService {
     @Override
     public Object getTaxiStatisticsReport(int id, int n, TaxiStatisticsReportType type)
             throws IdNotFoundException, ReportTypeNotFoundException {
-        checkTaxiIdExists(id);
+        TaxiInfo taxiInfo = getTaxiInfo(id);
 
         if (type == TaxiStatisticsReportType.AVERAGE) {
-            return getTaxiStatisticsAvgReport(id, n);
+            return getTaxiStatisticsAvgReport(taxiInfo, n);
         }
         throw new ReportTypeNotFoundException(type);
     }
 
-    private TaxiStatisticsAvgReportDto getTaxiStatisticsAvgReport(int id, int n) {
-        List<TaxiStatisticsDto> statsList;
-        synchronized (this) {
-            statsList = this.taxiInfos.get(id).taxiStatisticsList.stream()
-                    .limit(n)
-                    .collect(Collectors.toList());
-        }
-
-        return createAvgReportFromListOfStatistics(statsList);
+    private TaxiStatisticsAvgReportDto getTaxiStatisticsAvgReport(TaxiInfo taxiInfo, int n) {
+        return taxiInfo.getStatisticsHistory().getSnapshot().getLastSums(n).toAvgReport();
     }
 
     @Override
@@ -72,75 +101,162 @@ public class TaxiServiceImpl implements TaxiService {
     }
 
     private TaxiStatisticsAvgReportDto getTaxisStatisticsAvgReport(OffsetDateTime tsStart, OffsetDateTime tsEnd) {
-        List<TaxiStatisticsDto> statsList;
-        synchronized (this) {
-             statsList = this.taxiInfos.values().stream()
-                    .flatMap(ti -> ti.getTaxiStatisticsList().stream())
-                    .filter(tsDto -> !tsDto.getTs().isBefore(tsStart) && !tsDto.getTs().isAfter(tsEnd))
-                    .collect(Collectors.toList());
-        }
+        // the stored timestamps have millisecond precision, so the bounds are rounded inwards
+        long startMillis = tsStart.toInstant().toEpochMilli() + (tsStart.getNano() % 1_000_000 == 0 ? 0 : 1);
+        long endMillis = tsEnd.toInstant().toEpochMilli();
+        TaxiStatisticsHistory.Sums sums = new TaxiStatisticsHistory.Sums();
+        for (TaxiStatisticsHistory taxiStatisticsHistory : this.taxiStatisticsHistories.values())
+            sums.add(taxiStatisticsHistory.getSnapshot().getRangeSums(startMillis, endMillis));
 
-        return createAvgReportFromListOfStatistics(statsList);
+        return sums.toAvgReport();
     }
 
-    private TaxiStatisticsAvgReportDto createAvgReportFromListOfStatistics(List<TaxiStatisticsDto> statsList) {
-        return new TaxiStatisticsAvgReportDto(
-                statsList.stream().collect(Collectors
-                        .<TaxiStatisticsDto>averagingDouble(s -> s.getStatsValues().getKmsTraveled())),
-                statsList.stream().collect(Collectors
-                        .<TaxiStatisticsDto>averagingDouble(TaxiStatisticsDto::getBatteryLevel)),
-                statsList.stream().collect(Collectors
-                        .<TaxiStatisticsDto>averagingDouble(s -> s.getStatsValues().getPollutionAvgList()
-                                .stream().mapToDouble(m -> m).average().orElse(0.0))),
-                statsList.stream().collect(Collectors
-                        .<TaxiStatisticsDto>averagingDouble(s -> s.getStatsValues().getNumRides()))
-        );
+    @Override
+    public void loadTaxiStatistics(int id, TaxiStatisticsDto taxiStatistics) throws IdNotFoundException {
+        List<TaxiStatisticsRecordDto> taxiStatisticsRecords =
+                Collections.singletonList(new TaxiStatisticsRecordDto(id, taxiStatistics));
+        List<TaxiStatisticsHistory> taxiStatisticsHistories;
+        long lastRecordNumber;
+        this.registrationLock.readLock().lock();
+        try {
+            taxiStatisticsHistories = Collections.singletonList(getTaxiInfo(id).getStatisticsHistory());
+            lastRecordNumber = this.appendTaxiStatisticsRecords(taxiStatisticsRecords);
+        } finally {
+            this.registrationLock.readLock().unlock();
+        }
+        this.loadTaxiStatisticsRecords(taxiStatisticsRecords, taxiStatisticsHistories, lastRecordNumber);
     }
 
     @Override
-    public synchronized void loadTaxiStatistics(int id, TaxiStatisticsDto taxiStatistics) throws IdNotFoundException {
-        checkTaxiIdExists(id);
+    public TaxiStatisticsBatchResultDto loadTaxisStatistics(List<TaxiStatisticsRecordDto> taxiStatisticsRecords) {
+        List<TaxiStatisticsRecordDto> registeredTaxiRecords = new ArrayList<>(taxiStatisticsRecords.size());
+        List<TaxiStatisticsHistory> registeredTaxiHistories = new ArrayList<>(taxiStatisticsRecords.size());
+        List<Integer> notFoundTaxiIds = new ArrayList<>();
+        long lastRecordNumber;
+        this.registrationLock.readLock().lock();
+        try {
+            for (TaxiStatisticsRecordDto taxiStatisticsRecord : taxiStatisticsRecords) {
+                TaxiInfo taxiInfo = this.taxiInfos.get(taxiStatisticsRecord.getTaxiId());
+                if (taxiInfo != null) {
+                    registeredTaxiRecords.add(taxiStatisticsRecord);
+                    registeredTaxiHistories.add(taxiInfo.getStatisticsHistory());
+                } else
+                    notFoundTaxiIds.add(taxiStatisticsRecord.getTaxiId());
+            }
+            lastRecordNumber = this.appendTaxiStatisticsRecords(registeredTaxiRecords);
+        } finally {
+            this.registrationLock.readLock().unlock();
+        }
+        this.loadTaxiStatisticsRecords(registeredTaxiRecords, registeredTaxiHistories, lastRecordNumber);
 
-        TaxiInfo taxiInfo = this.taxiInfos.get(id);
-        taxiInfo.addTaxiStatistics(taxiStatistics);
+        return new TaxiStatisticsBatchResultDto(registeredTaxiRecords.size(), notFoundTaxiIds);
     }
 
-    // getAllTaxis must be synchronized because otherwise I risk to miss one taxi in the taxi info list
+    // write-ahead: the statistics are logged before they become visible in the reports.
+    // called with the read lock of the registrations, so the records of a taxi precede its tombstone
+    // @return the number of the last record, which the load waits for
+    private long appendTaxiStatisticsRecords(List<TaxiStatisticsRecordDto> taxiStatisticsRecords) {
+        long lastRecordNumber = 0;
+        if (this.taxiStatisticsLog == null)
+            return lastRecordNumber;
+
+        for (TaxiStatisticsRecordDto taxiStatisticsRecord : taxiStatisticsRecords) {
+            TaxiStatisticsDto taxiStatistics = taxiStatisticsRecord.getStatistics();
+            lastRecordNumber = this.taxiStatisticsLog.appendWithoutCommit(taxiStatisticsRecord.getTaxiId(),
+                    taxiStatistics.getTs().toInstant().toEpochMilli(),
+                    taxiStatistics.getStatsValues().getKmsTraveled(), taxiStatistics.getBatteryLevel(),
+                    taxiStatistics.getStatsValues().getNumRides(),
+                    TaxiStatisticsHistory.getPollutionAvg(taxiStatistics));
+        }
+        return lastRecordNumber;
+    }
+
+    // a batch waits for a single commit, without the lock, so the removals do not wait for it.
+    // the histories are the ones of the registrations found on arrival, so the statistics of a taxi
+    // removed meanwhile end up in its dropped history instead of the one of a new taxi with the same id
+    private void loadTaxiStatisticsRecords(List<TaxiStatisticsRecordDto> taxiStatisticsRecords,
+                                           List<TaxiStatisticsHistory> taxiStatisticsHistories,
+                                           long lastRecordNumber) {
+        if (this.taxiStatisticsLog != null)
+            this.taxiStatisticsLog.awaitCommit(lastRecordNumber);
+
+        for (int i = 0; i < taxiStatisticsRecords.size(); i++) {
+            TaxiStatisticsDto taxiStatistics = taxiStatisticsRecords.get(i).getStatistics();
+            taxiStatisticsHistories.get(i).add(taxiStatistics.getTs().toInstant().toEpochMilli(),
+                    taxiStatistics.getStatsValues().getKmsTraveled(), taxiStatistics.getBatteryLevel(),
+                    taxiStatistics.getStatsValues().getNumRides(),
+                    TaxiStatisticsHistory.getPollutionAvg(taxiStatistics));
+        }
+    }
+
+    /**
+     * drop the statistics older than `millis` from memory and the log segments that contain only them.
+     * the log has only this retention: it is never compacted, so the statistics of removed taxis
+     * stay on disk, behind their tombstones, until their segments expire
+     */
+    public void removeStatisticsBefore(long millis) {
+        if (this.taxiStatisticsLog != null)
+            this.taxiStatisticsLog.deleteBefore(millis);
+        for (TaxiStatisticsHistory taxiStatisticsHistory : this.taxiStatisticsHistories.values())
+            taxiStatisticsHistory.removeBefore(millis);
+    }
+
+    // the list of peers and the insertion are done under the registration lock, otherwise
+    // two taxis registering together could miss each other
     @Override
     public NewTaxiDto registerTaxi(TaxiInfoDto taxiInfo) throws IdAlreadyRegisteredException {
         List<TaxiInfoDto> taxiInfoDtos;
-        synchronized (this) {
+        this.registrationLock.writeLock().lock();
+        try {
             taxiInfoDtos = this.getAllTaxis();
             if (taxiInfoDtos.stream().anyMatch(tid -> tid.getId() == taxiInfo.getId()))
                 throw new IdAlreadyRegisteredException(taxiInfo.getId());
-            this.taxiInfos.put(taxiInfo.getId(),
-                    new TaxiInfo(taxiInfo.getIpAddress(), taxiInfo.getPort()));
+            this.taxiInfos.put(taxiInfo.getId(), new TaxiInfo(taxiInfo.getIpAddress(), taxiInfo.getPort(),
+                    this.getTaxiStatisticsHistory(taxiInfo.getId())));
+        } finally {
+            this.registrationLock.writeLock().unlock();
         }
         SmartCityPosition newTaxiPosition = this.taxiPositionGenerator.getStartingPosition();
 
         return new NewTaxiDto(newTaxiPosition.x, newTaxiPosition.y, taxiInfoDtos);
     }
 
+    // the statistics of a removed taxi leave the reports, and the tombstone keeps them out after a restart
     @Override
-    public synchronized void removeTaxi(int id) throws IdNotFoundException {
-        checkTaxiIdExists(id);
+    public void removeTaxi(int id) throws IdNotFoundException {
+        this.registrationLock.writeLock().lock();
+        try {
+            if (!this.taxiInfos.containsKey(id))
+                throw new IdNotFoundException(id);
+            if (this.taxiStatisticsLog != null)
+                this.taxiStatisticsLog.appendTombstone(id, System.currentTimeMillis());
+            this.taxiInfos.remove(id);
+            this.taxiStatisticsHistories.remove(id);
+        } finally {
+            this.registrationLock.writeLock().unlock();
+        }
+    }
 
-        this.taxiInfos.remove(id);
+    private TaxiStatisticsHistory getTaxiStatisticsHistory(int id) {
+        return this.taxiStatisticsHistories.computeIfAbsent(id, i -> new TaxiStatisticsHistory());
     }
 
-    private void checkTaxiIdExists(int id) throws IdNotFoundException {
-        if (!taxiInfos.containsKey(id))
+    private TaxiInfo getTaxiInfo(int id) throws IdNotFoundException {
+        TaxiInfo taxiInfo = this.taxiInfos.get(id);
+        if (taxiInfo == null)
             throw new IdNotFoundException(id);
+        return taxiInfo;
     }
 
     private static class TaxiInfo {
         private final String ipAddress;
         private final int port;
-        private final Deque<TaxiStatisticsDto> taxiStatisticsList = new ArrayDeque<>();
+        private final TaxiStatisticsHistory statisticsHistory;
 
-        public TaxiInfo(String ipAddress, int port) {
+        public TaxiInfo(String ipAddress, int port, TaxiStatisticsHistory statisticsHistory) {
             this.ipAddress = ipAddress;
             this.port = port;
+            this.statisticsHistory = statisticsHistory;
         }
 
         public String getIpAddress() {
@@ -149,12 +265,8 @@ public class TaxiServiceImpl implements TaxiService {
         public int getPort() {
             return port;
         }
-        public List<TaxiStatisticsDto> getTaxiStatisticsList() {
-            return new ArrayList<>(taxiStatisticsList);
-        }
-
-        public void addTaxiStatistics(TaxiStatisticsDto taxiStatistics) {
-            this.taxiStatisticsList.addFirst(taxiStatistics);
+        public TaxiStatisticsHistory getStatisticsHistory() {
+            return statisticsHistory;
         }
     }
 }
@@ -0,0 +1,232 @@
+package unimi.dsp.adminServer.services.impl;
+
+import unimi.dsp.dto.TaxiStatisticsAvgReportDto;
+import unimi.dsp.dto.TaxiStatisticsDto;
+
+import java.util.Arrays;
+
+/**
+ * History of the statistics of a taxi, sorted by timestamp.
+ * The timestamps are kept as epoch millis, so that a range query finds its bounds with a binary search,
+ * and each value is kept as a prefix sum, so that the sum of any range is a subtraction and
+ * an AVERAGE report costs O(log n) whatever the size of the range.
+ * Appends are serialized, while readers take an immutable snapshot without locking: the slots
+ * below the published size are never written again, so a snapshot can share the arrays with the history.
+ */
+class TaxiStatisticsHistory {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private Columns columns = new Columns(INITIAL_CAPACITY);
+    private volatile Snapshot snapshot = new Snapshot(this.columns, 0);
+
+    public void add(TaxiStatisticsDto taxiStatistics) {
+        TaxiStatisticsDto.TaxiStatisticsValues statsValues = taxiStatistics.getStatsValues();
+        this.add(taxiStatistics.getTs().toInstant().toEpochMilli(), statsValues.getKmsTraveled(),
+                taxiStatistics.getBatteryLevel(), statsValues.getNumRides(), getPollutionAvg(taxiStatistics));
+    }
+
+    public synchronized void add(long timestamp, double kmsTraveled, int batteryLevel,
+                                 int numRides, double pollutionAvg) {
+        int size = this.snapshot.size;
+        if (size > 0 && timestamp < this.columns.timestamps[size - 1]) {
+            // a late statistic must be inserted in the middle, so the columns are copied to leave
+            // untouched the ones shared with the current readers and the following sums are recomputed
+            int position = this.snapshot.upperBound(timestamp);
+            Columns newColumns = new Columns(Math.max(this.columns.capacity(), size + 1));
+            newColumns.copyPrefix(this.columns, position);
+            newColumns.set(position, timestamp, kmsTraveled, batteryLevel, numRides, pollutionAvg);
+            for (int i = position; i < size; i++)
+                newColumns.set(i + 1, this.columns.timestamps[i], this.columns.valueAt(this.columns.kmsSums, i),
+                        this.columns.valueAt(this.columns.batterySums, i),
+                        this.columns.valueAt(this.columns.ridesSums, i),
+                        this.columns.valueAt(this.columns.pollutionSums, i));
+            this.columns = newColumns;
+        } else {
+            if (size == this.columns.capacity())
+                this.columns = this.columns.grow(size * 2);
+            this.columns.set(size, timestamp, kmsTraveled, batteryLevel, numRides, pollutionAvg);
+        }
+
+        // the volatile write publishes the new slot to the readers
+        this.snapshot = new Snapshot(this.columns, size + 1);
+    }
+
+    /**
+     * drop the statistics older than `millis`, which are outside the retention
+     */
+    public synchronized void removeBefore(long millis) {
+        int size = this.snapshot.size;
+        int from = this.snapshot.lowerBound(millis);
+        if (from == 0)
+            return;
+
+        // the new columns start from the first kept statistic: the sums keep their offset,
+        // which does not matter because only their differences are used
+        Columns newColumns = new Columns(Math.max(INITIAL_CAPACITY, size - from));
+        newColumns.copyRange(this.columns, from, size);
+        this.columns = newColumns;
+        this.snapshot = new Snapshot(this.columns, size - from);
+    }
+
+    public Snapshot getSnapshot() {
+        return this.snapshot;
+    }
+
+    public static double getPollutionAvg(TaxiStatisticsDto taxiStatistics) {
+        return taxiStatistics.getStatsValues().getPollutionAvgList().stream()
+                .mapToDouble(m -> m).average().orElse(0.0);
+    }
+
+    // the sums arrays have a leading 0, so that the sum of the statistics in [from, to) is sums[to] - sums[from]
+    private static class Columns {
+        private final long[] timestamps;
+        private final double[] kmsSums;
+        private final double[] batterySums;
+        private final double[] ridesSums;
+        private final double[] pollutionSums;
+
+        public Columns(int capacity) {
+            this(new long[capacity], new double[capacity + 1], new double[capacity + 1],
+                    new double[capacity + 1], new double[capacity + 1]);
+        }
+
+        private Columns(long[] timestamps, double[] kmsSums, double[] batterySums,
+                        double[] ridesSums, double[] pollutionSums) {
+            this.timestamps = timestamps;
+            this.kmsSums = kmsSums;
+            this.batterySums = batterySums;
+            this.ridesSums = ridesSums;
+            this.pollutionSums = pollutionSums;
+        }
+
+        public int capacity() {
+            return this.timestamps.length;
+        }
+
+        public Columns grow(int capacity) {
+            return new Columns(Arrays.copyOf(this.timestamps, capacity),
+                    Arrays.copyOf(this.kmsSums, capacity + 1), Arrays.copyOf(this.batterySums, capacity + 1),
+                    Arrays.copyOf(this.ridesSums, capacity + 1), Arrays.copyOf(this.pollutionSums, capacity + 1));
+        }
+
+        public void copyPrefix(Columns columns, int size) {
+            this.copyRange(columns, 0, size);
+        }
+
+        // copy the statistics in [from, to) at the beginning of these columns
+        public void copyRange(Columns columns, int from, int to) {
+            System.arraycopy(columns.timestamps, from, this.timestamps, 0, to - from);
+            System.arraycopy(columns.kmsSums, from, this.kmsSums, 0, to - from + 1);
+            System.arraycopy(columns.batterySums, from, this.batterySums, 0, to - from + 1);
+            System.arraycopy(columns.ridesSums, from, this.ridesSums, 0, to - from + 1);
+            System.arraycopy(columns.pollutionSums, from, this.pollutionSums, 0, to - from + 1);
+        }
+
+        public void set(int index, long timestamp, double kms, double battery, double rides, double pollution) {
+            this.timestamps[index] = timestamp;
+            this.kmsSums[index + 1] = this.kmsSums[index] + kms;
+            this.batterySums[index + 1] = this.batterySums[index] + battery;
+            this.ridesSums[index + 1] = this.ridesSums[index] + rides;
+            this.pollutionSums[index + 1] = this.pollutionSums[index] + pollution;
+        }
+
+        public double valueAt(double[] sums, int index) {
+            return sums[index + 1] - sums[index];
+        }
+    }
+
+    public static class Snapshot {
+        private final Columns columns;
+        private final int size;
+
+        private Snapshot(Columns columns, int size) {
+            this.columns = columns;
+            this.size = size;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @return the sums of the n most recent statistics
+         */
+        public Sums getLastSums(int n) {
+            return this.getSums(Math.max(this.size - Math.max(n, 0), 0), this.size);
+        }
+
+        /**
+         * @return the sums of the statistics whose timestamp is in [startMillis, endMillis]
+         */
+        public Sums getRangeSums(long startMillis, long endMillis) {
+            int from = this.lowerBound(startMillis);
+            int to = this.upperBound(endMillis);
+            return this.getSums(from, Math.max(from, to));
+        }
+
+        private Sums getSums(int from, int to) {
+            Sums sums = new Sums();
+            sums.count = to - from;
+            sums.kms = this.columns.kmsSums[to] - this.columns.kmsSums[from];
+            sums.battery = this.columns.batterySums[to] - this.columns.batterySums[from];
+            sums.rides = this.columns.ridesSums[to] - this.columns.ridesSums[from];
+            sums.pollution = this.columns.pollutionSums[to] - this.columns.pollutionSums[from];
+            return sums;
+        }
+
+        // index of the first timestamp >= millis
+        private int lowerBound(long millis) {
+            int low = 0, high = this.size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (this.columns.timestamps[mid] < millis)
+                    low = mid + 1;
+                else
+                    high = mid;
+            }
+            return low;
+        }
+
+        // index of the first timestamp > millis
+        private int upperBound(long millis) {
+            int low = 0, high = this.size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (this.columns.timestamps[mid] <= millis)
+                    low = mid + 1;
+                else
+                    high = mid;
+            }
+            return low;
+        }
+    }
+
+    /**
+     * sums of the values of a group of statistics, which can be merged across taxis
+     */
+    public static class Sums {
+        private long count;
+        private double kms;
+        private double battery;
+        private double rides;
+        private double pollution;
+
+        public Sums add(Sums sums) {
+            this.count += sums.count;
+            this.kms += sums.kms;
+            this.battery += sums.battery;
+            this.rides += sums.rides;
+            this.pollution += sums.pollution;
+            return this;
+        }
+
+        // as `Collectors.averagingDouble`, the averages of no statistics are 0
+        public TaxiStatisticsAvgReportDto toAvgReport() {
+            if (this.count == 0)
+                return new TaxiStatisticsAvgReportDto(0, 0, 0, 0);
+
+            return new TaxiStatisticsAvgReportDto(this.kms / this.count, this.battery / this.count,
+                    this.pollution / this.count, this.rides / this.count);
+        }
+    }
+}
@@ -0,0 +1,399 @@
+package unimi.dsp.adminServer.storage;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead log of the statistics received by the admin server.
+ * The log is a sequence of memory-mapped segments of fixed-width records, so an append is a copy
+ * in the page cache and the startup replays the segments with sequential reads.
+ * The appends are made durable by a flusher thread with group commit: a single `force()` covers all
+ * the records appended while the previous one was running, so the concurrent uploads share its cost.
+ * Only the last segment is written, the older ones are sealed and deleted when their statistics
+ * are all outside the retention.
+ * The removal of a taxi is logged as a tombstone, so that the replay drops the statistics it had before.
+ * The log is never compacted: the statistics behind a tombstone are deleted only with their segment.
+ */
+public class TaxiStatisticsLog implements Closeable {
+    private static final Logger logger = LogManager.getLogger(TaxiStatisticsLog.class.getName());
+    private static final String SEGMENT_PREFIX = "statistics-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int SEGMENT_MAGIC = 0x53544154;
+    private static final int SEGMENT_VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    // timestamp, taxi id, battery level, number of rides, kms, pollution average and the crc of all of them
+    static final int RECORD_SIZE = 8 + 4 + 4 + 4 + 8 + 8 + 4;
+    private static final int RECORD_CRC_OFFSET = RECORD_SIZE - 4;
+    // a tombstone has the same format of a statistic, with a number of rides that no statistic has
+    private static final int TOMBSTONE_NUM_RIDES = -1;
+
+    private final Path directory;
+    private final int segmentRecords;
+    private final boolean syncCommit;
+    private final Deque<Segment> sealedSegments = new ArrayDeque<>();
+    private Segment activeSegment;
+    // buffer and crc reused by the appends, which are serialized
+    private final ByteBuffer recordBuffer = ByteBuffer.allocate(RECORD_SIZE);
+    private final CRC32 crc = new CRC32();
+    private long appendedRecords = 0;
+    private long durableRecords = 0;
+    private boolean closed = false;
+    private final LogFlusherThread flusherThread = new LogFlusherThread();
+
+    /**
+     * open the log in `directory`, creating it if it does not exist.
+     * each new segment holds `segmentRecords` records, the existing ones keep the capacity they were created with; when `syncCommit` is true an append returns
+     * only once its record is on disk, otherwise the records are flushed in background
+     */
+    public TaxiStatisticsLog(Path directory, int segmentRecords, boolean syncCommit) {
+        if (segmentRecords <= 0)
+            throw new IllegalArgumentException("segmentRecords must be positive");
+
+        this.directory = directory;
+        this.segmentRecords = segmentRecords;
+        this.syncCommit = syncCommit;
+        try {
+            Files.createDirectories(directory);
+            this.openSegments();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        this.flusherThread.start();
+    }
+
+    /**
+     * pass every valid record and tombstone to the visitor, from the oldest to the newest one
+     */
+    public synchronized void replay(RecordVisitor visitor) {
+        for (Segment segment : this.sealedSegments)
+            this.replaySegment(segment, visitor);
+        this.replaySegment(this.activeSegment, visitor);
+    }
+
+    private void replaySegment(Segment segment, RecordVisitor visitor) {
+        ByteBuffer buffer = segment.readBuffer();
+        for (int i = 0; i < segment.recordsNum; i++) {
+            int offset = HEADER_SIZE + i * RECORD_SIZE;
+            if (buffer.getInt(offset + 16) == TOMBSTONE_NUM_RIDES) {
+                visitor.visitTombstone(buffer.getInt(offset + 8), buffer.getLong(offset));
+                continue;
+            }
+            visitor.visit(buffer.getInt(offset + 8), buffer.getLong(offset),
+                    buffer.getDouble(offset + 20), buffer.getInt(offset + 12),
+                    buffer.getInt(offset + 16), buffer.getDouble(offset + 28));
+        }
+    }
+
+    public void append(int taxiId, long timestamp, double kmsTraveled, int batteryLevel,
+                       int numRides, double pollutionAvg) {
+        this.awaitCommit(this.appendWithoutCommit(taxiId, timestamp, kmsTraveled, batteryLevel,
+                numRides, pollutionAvg));
+    }
+
+    /**
+     * append the record without waiting for the commit, so that many records can be committed together
+     * by a single `awaitCommit` on the last one
+     * @return the number of the record in the log
+     */
+    public long appendWithoutCommit(int taxiId, long timestamp, double kmsTraveled, int batteryLevel,
+                                    int numRides, double pollutionAvg) {
+        if (numRides < 0)
+            throw new IllegalArgumentException("numRides cannot be negative");
+        return this.appendRecord(taxiId, timestamp, kmsTraveled, batteryLevel, numRides, pollutionAvg);
+    }
+
+    /**
+     * log that the taxi `taxiId` has been removed at `timestamp` and wait for the commit:
+     * the replay forgets the statistics the taxi had until then
+     */
+    public void appendTombstone(int taxiId, long timestamp) {
+        this.awaitCommit(this.appendRecord(taxiId, timestamp, 0, 0, TOMBSTONE_NUM_RIDES, 0));
+    }
+
+    private synchronized long appendRecord(int taxiId, long timestamp, double kmsTraveled, int batteryLevel,
+                                           int numRides, double pollutionAvg) {
+        if (this.closed)
+            throw new IllegalStateException("The statistics log is closed");
+        if (this.activeSegment.recordsNum == this.activeSegment.capacity)
+            this.rollSegment();
+
+        this.recordBuffer.clear();
+        this.recordBuffer.putLong(timestamp).putInt(taxiId).putInt(batteryLevel).putInt(numRides)
+                .putDouble(kmsTraveled).putDouble(pollutionAvg);
+        this.crc.reset();
+        this.crc.update(this.recordBuffer.array(), 0, RECORD_CRC_OFFSET);
+        this.recordBuffer.putInt((int) this.crc.getValue());
+
+        this.activeSegment.write(this.recordBuffer.array(), timestamp);
+        this.notifyAll();
+        return ++this.appendedRecords;
+    }
+
+    /**
+     * when the commit is synchronous, wait until the record `recordNumber` and the previous ones are on disk
+     */
+    public synchronized void awaitCommit(long recordNumber) {
+        if (!this.syncCommit)
+            return;
+
+        // the flusher stops only once every record is durable, even when the log is closed
+        while (this.durableRecords < recordNumber) {
+            try {
+                this.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * delete the sealed segments whose statistics are all older than `millis`.
+     * the retention has the granularity of a segment, the statistics of the active one are never deleted
+     */
+    public synchronized void deleteBefore(long millis) {
+        while (!this.sealedSegments.isEmpty() && this.sealedSegments.peekFirst().maxTimestamp < millis) {
+            Segment segment = this.sealedSegments.pollFirst();
+            try {
+                Files.deleteIfExists(segment.path);
+                logger.info("Deleted the expired statistics segment {}", segment.path.getFileName());
+            } catch (IOException e) {
+                logger.error("Cannot delete the statistics segment " + segment.path, e);
+            }
+        }
+    }
+
+    public synchronized int getSegmentsNum() {
+        return this.sealedSegments.size() + 1;
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (this.closed)
+                return;
+            this.closed = true;
+            this.notifyAll();
+        }
+        try {
+            this.flusherThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            this.activeSegment.close();
+        }
+    }
+
+    private void openSegments() throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            stream.forEach(paths::add);
+        }
+        // the sequence number is zero padded, so the names are sorted as the segments
+        paths.sort(null);
+
+        for (int i = 0; i < paths.size(); i++) {
+            Path path = paths.get(i);
+            boolean isLast = i == paths.size() - 1;
+            Segment segment = Segment.open(path, isLast);
+            if (isLast)
+                this.activeSegment = segment;
+            else
+                this.sealedSegments.addLast(segment);
+        }
+        if (this.activeSegment == null)
+            this.activeSegment = Segment.create(this.segmentPath(0), 0, this.segmentRecords);
+
+        logger.info("Opened the statistics log in {} with {} segments", this.directory, this.getSegmentsNum());
+    }
+
+    private void rollSegment() {
+        // the records of a sealed segment are made durable before moving on, so that the flusher
+        // only has to force the active segment
+        this.activeSegment.force();
+        this.activeSegment.seal();
+        this.sealedSegments.addLast(this.activeSegment);
+        long sequence = this.activeSegment.sequence + 1;
+        try {
+            this.activeSegment = Segment.create(this.segmentPath(sequence), sequence, this.segmentRecords);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private Path segmentPath(long sequence) {
+        return this.directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX));
+    }
+
+    private static boolean isValidRecord(ByteBuffer buffer, int offset, byte[] record, CRC32 crc) {
+        ByteBuffer source = buffer.duplicate();
+        source.position(offset);
+        source.get(record);
+        crc.reset();
+        crc.update(record, 0, RECORD_CRC_OFFSET);
+        return (int) crc.getValue() == buffer.getInt(offset + RECORD_CRC_OFFSET);
+    }
+
+    @FunctionalInterface
+    public interface RecordVisitor {
+        void visit(int taxiId, long timestamp, double kmsTraveled, int batteryLevel,
+                   int numRides, double pollutionAvg);
+
+        default void visitTombstone(int taxiId, long timestamp) {
+        }
+    }
+
+    private static class Segment {
+        private final Path path;
+        private final long sequence;
+        // the number of records the segment can hold, which is fixed when it is created
+        private final int capacity;
+        private FileChannel channel;
+        private MappedByteBuffer buffer;
+        private int recordsNum;
+        private long maxTimestamp = Long.MIN_VALUE;
+
+        private Segment(Path path, long sequence, int capacity, FileChannel channel, MappedByteBuffer buffer) {
+            this.path = path;
+            this.sequence = sequence;
+            this.capacity = capacity;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        public static Segment create(Path path, long sequence, int segmentRecords) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            // the whole segment is mapped at once, the file is sparse until the records are written
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    HEADER_SIZE + (long) segmentRecords * RECORD_SIZE);
+            buffer.putInt(0, SEGMENT_MAGIC);
+            buffer.putInt(4, SEGMENT_VERSION);
+            buffer.putInt(8, segmentRecords);
+            buffer.force();
+            return new Segment(path, sequence, segmentRecords, channel, buffer);
+        }
+
+        /**
+         * map an existing segment and count its records: the count stops at the first record
+         * whose crc does not match, which is an empty slot or a record torn by a crash
+         */
+        public static Segment open(Path path, boolean writable) throws IOException {
+            String fileName = path.getFileName().toString();
+            long sequence = Long.parseLong(fileName.substring(SEGMENT_PREFIX.length(),
+                    fileName.length() - SEGMENT_SUFFIX.length()));
+            FileChannel channel = writable
+                    ? FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                    : FileChannel.open(path, StandardOpenOption.READ);
+            MappedByteBuffer buffer = channel.map(
+                    writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != SEGMENT_MAGIC
+                    || buffer.getInt(4) != SEGMENT_VERSION)
+                throw new IOException("Invalid statistics segment " + path);
+
+            int segmentRecords = Math.min(buffer.getInt(8), (buffer.capacity() - HEADER_SIZE) / RECORD_SIZE);
+            Segment segment = new Segment(path, sequence, segmentRecords, channel, buffer);
+            byte[] record = new byte[RECORD_SIZE];
+            CRC32 crc = new CRC32();
+            while (segment.recordsNum < segment.capacity
+                    && isValidRecord(buffer, HEADER_SIZE + segment.recordsNum * RECORD_SIZE, record, crc)) {
+                segment.maxTimestamp = Math.max(segment.maxTimestamp,
+                        buffer.getLong(HEADER_SIZE + segment.recordsNum * RECORD_SIZE));
+                segment.recordsNum++;
+            }
+            if (!writable)
+                segment.seal();
+            return segment;
+        }
+
+        public ByteBuffer readBuffer() {
+            return this.buffer.duplicate();
+        }
+
+        public void write(byte[] record, long timestamp) {
+            ByteBuffer target = this.buffer.duplicate();
+            target.position(HEADER_SIZE + this.recordsNum * RECORD_SIZE);
+            target.put(record);
+            this.recordsNum++;
+            this.maxTimestamp = Math.max(this.maxTimestamp, timestamp);
+        }
+
+        public void force() {
+            this.buffer.force();
+        }
+
+        // a sealed segment is read only during the replay, so its channel is not needed anymore
+        public void seal() {
+            this.close();
+        }
+
+        public void close() {
+            if (this.channel == null)
+                return;
+            try {
+                this.channel.close();
+            } catch (IOException e) {
+                logger.error("Cannot close the statistics segment " + this.path, e);
+            }
+            this.channel = null;
+        }
+    }
+
+    /**
+     * forces the active segment each time new records are appended and wakes up the appenders
+     * waiting for them
+     */
+    private class LogFlusherThread extends Thread {
+        public LogFlusherThread() {
+            super("statistics-log-flusher");
+            this.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                long flushedRecords;
+                Segment segment;
+                synchronized (TaxiStatisticsLog.this) {
+                    while (appendedRecords == durableRecords) {
+                        if (closed)
+                            return;
+                        try {
+                            TaxiStatisticsLog.this.wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    flushedRecords = appendedRecords;
+                    segment = activeSegment;
+                }
+
+                // the force is outside the lock, so the appends go on meanwhile and are committed by the next one.
+                // if the segment has been rolled, the records in the old one have been forced by the roll
+                segment.force();
+
+                synchronized (TaxiStatisticsLog.this) {
+                    durableRecords = flushedRecords;
+                    TaxiStatisticsLog.this.notifyAll();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package unimi.dsp.dto;
+
+import javax.xml.bind.annotation.XmlRootElement;
+import java.util.List;
+import java.util.Objects;
+
+@XmlRootElement
+public class RideRequestBatchDto {
+    private List<RideRequestDto> rideRequests;
+
+    private RideRequestBatchDto() {}
+
+    public RideRequestBatchDto(List<RideRequestDto> rideRequests) {
+        this.rideRequests = rideRequests;
+    }
+
+    public List<RideRequestDto> getRideRequests() {
+        return rideRequests;
+    }
+    public void setRideRequests(List<RideRequestDto> rideRequests) {
+        this.rideRequests = rideRequests;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        RideRequestBatchDto that = (RideRequestBatchDto) o;
+        return Objects.equals(rideRequests, that.rideRequests);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(rideRequests);
+    }
+
+    @Override
+    public String toString() {
+        return "RideRequestBatch {\n" +
+                "    rideRequests: " + rideRequests + "\n" +
+                "}";
+    }
+}
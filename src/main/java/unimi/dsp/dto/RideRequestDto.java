@@ -1,5 +1,6 @@
 package unimi.dsp.dto;
 
+import unimi.dsp.model.types.SmartCityCell;
 import unimi.dsp.model.types.SmartCityPosition;
 
 import javax.xml.bind.annotation.XmlAccessType;
@@ -20,12 +21,16 @@ public class RideRequestDto {
     private RideRequestDto() {}
 
     public RideRequestDto(int id, SmartCityPosition start, SmartCityPosition end) {
+        this(id, System.currentTimeMillis(), start, end);
+    }
+
+    public RideRequestDto(int id, long timestamp, SmartCityPosition start, SmartCityPosition end) {
         this.id = id;
         this.xStart = start.x;
         this.yStart = start.y;
         this.xEnd = end.x;
         this.yEnd = end.y;
-        this.timestamp = System.currentTimeMillis();
+        this.timestamp = timestamp;
     }
 
     public int getId() {
@@ -40,6 +45,15 @@ public class RideRequestDto {
         return new SmartCityPosition(xEnd, yEnd);
     }
 
+    // the cells do not allocate, so they are preferred to the positions in the election
+    public int getStartCell() {
+        return SmartCityCell.of(xStart, yStart);
+    }
+
+    public int getEndCell() {
+        return SmartCityCell.of(xEnd, yEnd);
+    }
+
     public long getTimestamp() {
         return timestamp;
     }
@@ -62,9 +76,7 @@ public class RideRequestDto {
     }
 
     public double getDistanceBetweenRideStartAndEnd() {
-        double deltaX = this.getEnd().x - this.getStart().x;
-        double deltaY = this.getEnd().y - this.getStart().y;
-        return Math.sqrt(deltaX * deltaX + deltaY * deltaY);
+        return SmartCityCell.getDistance(this.getStartCell(), this.getEndCell());
     }
 
     @Override
@@ -0,0 +1,43 @@
+package unimi.dsp.dto;
+
+import javax.xml.bind.annotation.XmlRootElement;
+import java.util.List;
+import java.util.Objects;
+
+@XmlRootElement
+public class TaxiStatisticsBatchDto {
+    private List<TaxiStatisticsRecordDto> records;
+
+    private TaxiStatisticsBatchDto() {}
+
+    public TaxiStatisticsBatchDto(List<TaxiStatisticsRecordDto> records) {
+        this.records = records;
+    }
+
+    public List<TaxiStatisticsRecordDto> getRecords() {
+        return records;
+    }
+    public void setRecords(List<TaxiStatisticsRecordDto> records) {
+        this.records = records;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        TaxiStatisticsBatchDto that = (TaxiStatisticsBatchDto) o;
+        return Objects.equals(records, that.records);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(records);
+    }
+
+    @Override
+    public String toString() {
+        return "TaxiStatisticsBatch {\n" +
+                "    records: " + records + "\n" +
+                "}";
+    }
+}
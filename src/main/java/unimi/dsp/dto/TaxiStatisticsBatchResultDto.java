@@ -0,0 +1,56 @@
+package unimi.dsp.dto;
+
+import javax.xml.bind.annotation.XmlRootElement;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * outcome of a batch upload: the records of the taxis that are not registered are discarded
+ */
+@XmlRootElement
+public class TaxiStatisticsBatchResultDto {
+    private int loadedNum;
+    private List<Integer> notFoundTaxiIds;
+
+    private TaxiStatisticsBatchResultDto() {}
+
+    public TaxiStatisticsBatchResultDto(int loadedNum, List<Integer> notFoundTaxiIds) {
+        this.loadedNum = loadedNum;
+        this.notFoundTaxiIds = notFoundTaxiIds;
+    }
+
+    public int getLoadedNum() {
+        return loadedNum;
+    }
+    public void setLoadedNum(int loadedNum) {
+        this.loadedNum = loadedNum;
+    }
+
+    public List<Integer> getNotFoundTaxiIds() {
+        return notFoundTaxiIds;
+    }
+    public void setNotFoundTaxiIds(List<Integer> notFoundTaxiIds) {
+        this.notFoundTaxiIds = notFoundTaxiIds;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        TaxiStatisticsBatchResultDto that = (TaxiStatisticsBatchResultDto) o;
+        return loadedNum == that.loadedNum && Objects.equals(notFoundTaxiIds, that.notFoundTaxiIds);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(loadedNum, notFoundTaxiIds);
+    }
+
+    @Override
+    public String toString() {
+        return "TaxiStatisticsBatchResult {\n" +
+                "    loadedNum: " + loadedNum + "\n" +
+                "    notFoundTaxiIds: " + notFoundTaxiIds + "\n" +
+                "}";
+    }
+}
@@ -8,6 +8,7 @@ import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlRootElement;
 import java.time.OffsetDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 @XmlRootElement
@@ -78,6 +79,8 @@ public class TaxiStatisticsDto {
         private double kmsTraveled;
         private int numRides;
         private List<Double> pollutionAvgList = null;
+        // the window averages of every type of sensor of the taxi, including the pollution ones
+        private Map<String, List<Double>> sensorAvgLists = null;
 
         private TaxiStatisticsValues() {}
         public TaxiStatisticsValues(double kmsTraveled, int numRides, List<Double> pollutionAvgList) {
@@ -85,6 +88,11 @@ public class TaxiStatisticsDto {
             this.numRides = numRides;
             this.pollutionAvgList = pollutionAvgList;
         }
+        public TaxiStatisticsValues(double kmsTraveled, int numRides, List<Double> pollutionAvgList,
+                                    Map<String, List<Double>> sensorAvgLists) {
+            this(kmsTraveled, numRides, pollutionAvgList);
+            this.sensorAvgLists = sensorAvgLists;
+        }
 
         public double getKmsTraveled() {
             return kmsTraveled;
@@ -107,6 +115,13 @@ public class TaxiStatisticsDto {
             this.pollutionAvgList = pollutionAvgList;
         }
 
+        public Map<String, List<Double>> getSensorAvgLists() {
+            return sensorAvgLists;
+        }
+        public void setSensorAvgLists(Map<String, List<Double>> sensorAvgLists) {
+            this.sensorAvgLists = sensorAvgLists;
+        }
+
         @Override
         public boolean equals(Object o) {
             if (this == o) {
@@ -118,12 +133,13 @@ public class TaxiStatisticsDto {
             TaxiStatisticsValues taxiStatisticsValues = (TaxiStatisticsValues) o;
             return Objects.equals(this.kmsTraveled, taxiStatisticsValues.kmsTraveled) &&
                     Objects.equals(this.numRides, taxiStatisticsValues.numRides) &&
-                    Objects.equals(this.pollutionAvgList, taxiStatisticsValues.pollutionAvgList);
+                    Objects.equals(this.pollutionAvgList, taxiStatisticsValues.pollutionAvgList) &&
+                    Objects.equals(this.sensorAvgLists, taxiStatisticsValues.sensorAvgLists);
         }
 
         @Override
         public int hashCode() {
-            return Objects.hash(kmsTraveled, numRides, pollutionAvgList);
+            return Objects.hash(kmsTraveled, numRides, pollutionAvgList, sensorAvgLists);
         }
 
         @Override
@@ -132,6 +148,7 @@ public class TaxiStatisticsDto {
                     "        kmsTraveled: " + kmsTraveled + "\n" +
                     "        numRides: " + numRides + "\n" +
                     "        pollutionAvgList: " + pollutionAvgList + "\n" +
+                    "        sensorAvgLists: " + sensorAvgLists + "\n" +
                     "    }";
         }
     }
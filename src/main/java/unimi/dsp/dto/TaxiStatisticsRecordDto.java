@@ -0,0 +1,55 @@
+package unimi.dsp.dto;
+
+import javax.xml.bind.annotation.XmlRootElement;
+import java.util.Objects;
+
+/**
+ * statistics of a taxi inside a batch upload
+ */
+@XmlRootElement
+public class TaxiStatisticsRecordDto {
+    private int taxiId;
+    private TaxiStatisticsDto statistics;
+
+    private TaxiStatisticsRecordDto() {}
+
+    public TaxiStatisticsRecordDto(int taxiId, TaxiStatisticsDto statistics) {
+        this.taxiId = taxiId;
+        this.statistics = statistics;
+    }
+
+    public int getTaxiId() {
+        return taxiId;
+    }
+    public void setTaxiId(int taxiId) {
+        this.taxiId = taxiId;
+    }
+
+    public TaxiStatisticsDto getStatistics() {
+        return statistics;
+    }
+    public void setStatistics(TaxiStatisticsDto statistics) {
+        this.statistics = statistics;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        TaxiStatisticsRecordDto that = (TaxiStatisticsRecordDto) o;
+        return taxiId == that.taxiId && Objects.equals(statistics, that.statistics);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(taxiId, statistics);
+    }
+
+    @Override
+    public String toString() {
+        return "TaxiStatisticsRecord {\n" +
+                "    taxiId: " + taxiId + "\n" +
+                "    statistics: " + statistics + "\n" +
+                "}";
+    }
+}
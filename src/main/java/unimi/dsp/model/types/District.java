@@ -2,43 +2,114 @@ package unimi.dsp.model.types;
 
 import unimi.dsp.util.ConfigurationManager;
 
-public enum District {
-    TOP_LEFT(1, new SmartCityPosition(0, 0)),
-    TOP_RIGHT(2, new SmartCityPosition(9, 0)),
-    BOTTOM_LEFT(3, new SmartCityPosition(0, 9)),
-    BOTTOM_RIGHT(4, new SmartCityPosition(9, 9));
+/**
+ * a district of the smart city. the city is split in a grid of `districtGridRows` x `districtGridColumns`
+ * districts, numbered from 1 row by row. the district of every cell is precomputed, so `fromPosition` is
+ * a single array access whatever the number of districts.
+ * the districts are created once, so they can be compared by reference like the constants of an enum.
+ */
+public final class District {
+    private static final ConfigurationManager configurationManager = ConfigurationManager.getInstance();
+    private static final int smartCityMaxWidth = configurationManager.getSmartCityWidth();
+    private static final int smartCityMaxHeight = configurationManager.getSmartCityHeight();
+    private static final int gridRows = configurationManager.getDistrictGridRows();
+    private static final int gridColumns = configurationManager.getDistrictGridColumns();
+
+    // districts[id - 1] is the district with that id
+    private static final District[] districts = createDistricts();
+    // cellDistricts[y * smartCityMaxWidth + x] is the district of the cell (x, y)
+    private static final District[] cellDistricts = createCellDistricts();
+
+    // the districts at the corners of the city, with a 2 x 2 grid they are all the districts
+    public static final District TOP_LEFT = getGridDistrict(0, 0);
+    public static final District TOP_RIGHT = getGridDistrict(0, gridColumns - 1);
+    public static final District BOTTOM_LEFT = getGridDistrict(gridRows - 1, 0);
+    public static final District BOTTOM_RIGHT = getGridDistrict(gridRows - 1, gridColumns - 1);
 
     private final int districtValue;
     private final SmartCityPosition rechargeStationPosition;
-    District(int districtValue, SmartCityPosition rechargeStationPosition) {
+
+    private District(int districtValue, SmartCityPosition rechargeStationPosition) {
         this.districtValue = districtValue;
         this.rechargeStationPosition = rechargeStationPosition;
     }
 
+    public int getId() {
+        return this.districtValue;
+    }
+
     @Override
     public String toString() {
         return Integer.toString(this.districtValue);
     }
 
-    private static final ConfigurationManager configurationManager = ConfigurationManager.getInstance();
-    private static final int smartCityMaxWidth = configurationManager.getSmartCityWidth();
-    private static final int smartCityMaxHeight = configurationManager.getSmartCityHeight();
     public static District fromPosition(SmartCityPosition position) {
-        if (position.x < smartCityMaxWidth / 2) {
-            if (position.y < smartCityMaxHeight / 2)
-                return District.TOP_LEFT;
-            else
-                return District.BOTTOM_LEFT;
-        }
-        else {
-            if (position.y < smartCityMaxHeight / 2)
-                return District.TOP_RIGHT;
-            else
-                return District.BOTTOM_RIGHT;
-        }
+        return cellDistricts[position.y * smartCityMaxWidth + position.x];
+    }
+
+    public static District fromCell(int cell) {
+        return cellDistricts[SmartCityCell.getY(cell) * smartCityMaxWidth + SmartCityCell.getX(cell)];
+    }
+
+    public static District fromId(int districtId) {
+        if (districtId < 1 || districtId > districts.length)
+            throw new IllegalArgumentException(
+                    String.format("Validation rule: 1 <= districtId <= %d, districtId = %d",
+                            districts.length, districtId));
+        return districts[districtId - 1];
+    }
+
+    public static District[] values() {
+        return districts.clone();
+    }
+
+    public static int getDistrictsNum() {
+        return districts.length;
     }
 
     public SmartCityPosition getRechargeStationPosition() {
         return rechargeStationPosition;
     }
+
+    private static District getGridDistrict(int row, int column) {
+        return districts[row * gridColumns + column];
+    }
+
+    private static District[] createDistricts() {
+        if (gridRows < 1 || gridRows > smartCityMaxHeight || gridColumns < 1 || gridColumns > smartCityMaxWidth)
+            throw new IllegalArgumentException(
+                    String.format("Validation rule: 1 <= rows <= %d && 1 <= columns <= %d, rows = %d, columns = %d",
+                            smartCityMaxHeight, smartCityMaxWidth, gridRows, gridColumns));
+
+        District[] districts = new District[gridRows * gridColumns];
+        for (int row = 0; row < gridRows; row++) {
+            for (int column = 0; column < gridColumns; column++) {
+                // the recharge station is in the corner of the district nearest to the border of the city
+                int x = 2 * column + 1 <= gridColumns
+                        ? getFirstCell(column, gridColumns, smartCityMaxWidth)
+                        : getFirstCell(column + 1, gridColumns, smartCityMaxWidth) - 1;
+                int y = 2 * row + 1 <= gridRows
+                        ? getFirstCell(row, gridRows, smartCityMaxHeight)
+                        : getFirstCell(row + 1, gridRows, smartCityMaxHeight) - 1;
+                districts[row * gridColumns + column] = new District(row * gridColumns + column + 1,
+                        new SmartCityPosition(x, y));
+            }
+        }
+        return districts;
+    }
+
+    private static District[] createCellDistricts() {
+        District[] cellDistricts = new District[smartCityMaxWidth * smartCityMaxHeight];
+        for (int y = 0; y < smartCityMaxHeight; y++) {
+            int row = y * gridRows / smartCityMaxHeight;
+            for (int x = 0; x < smartCityMaxWidth; x++)
+                cellDistricts[y * smartCityMaxWidth + x] = getGridDistrict(row, x * gridColumns / smartCityMaxWidth);
+        }
+        return cellDistricts;
+    }
+
+    // the first cell c such that c * bandsNum / cellsNum == band
+    private static int getFirstCell(int band, int bandsNum, int cellsNum) {
+        return (band * cellsNum + bandsNum - 1) / bandsNum;
+    }
 }
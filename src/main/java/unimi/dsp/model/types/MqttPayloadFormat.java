@@ -0,0 +1,6 @@
+package unimi.dsp.model.types;
+
+public enum MqttPayloadFormat {
+    JSON,
+    PROTOBUF
+}
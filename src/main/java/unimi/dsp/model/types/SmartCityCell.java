@@ -0,0 +1,38 @@
+package unimi.dsp.model.types;
+
+/**
+ * a cell of the smart city packed in an int, with x in the high 16 bits and y in the low ones.
+ * the election and the distance computations use cells, so they do not allocate a `SmartCityPosition`
+ * at each call. the cells are not validated, `SmartCityPosition` is still used where a position
+ * comes from outside.
+ */
+public final class SmartCityCell {
+    private SmartCityCell() {
+    }
+
+    public static int of(int x, int y) {
+        return x << 16 | y;
+    }
+
+    public static int fromPosition(SmartCityPosition position) {
+        return of(position.x, position.y);
+    }
+
+    public static SmartCityPosition toPosition(int cell) {
+        return new SmartCityPosition(getX(cell), getY(cell));
+    }
+
+    public static int getX(int cell) {
+        return cell >>> 16;
+    }
+
+    public static int getY(int cell) {
+        return cell & 0xFFFF;
+    }
+
+    public static double getDistance(int cell, int otherCell) {
+        double deltaX = getX(otherCell) - getX(cell);
+        double deltaY = getY(otherCell) - getY(cell);
+        return Math.sqrt(deltaX * deltaX + deltaY * deltaY);
+    }
+}
@@ -1,6 +1,9 @@
 package unimi.dsp.model.types.concurrency;
 
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Queue;
 
 public class ThreadSafeQueue<T> {
@@ -12,6 +15,12 @@ public class ThreadSafeQueue<T> {
         notify();
     }
 
+    // the messages are added at once, so a consumer calling takeAll receives them together
+    public synchronized void putAll(Collection<T> messages) {
+        buffer.addAll(messages);
+        notify();
+    }
+
     public synchronized T take() throws InterruptedException {
         T message;
 
@@ -24,6 +33,17 @@ public class ThreadSafeQueue<T> {
         return message;
     }
 
+    public synchronized List<T> takeAll() throws InterruptedException {
+        while(buffer.size() == 0) {
+            this.wait();
+        }
+
+        List<T> messages = new ArrayList<>(buffer);
+        buffer.clear();
+
+        return messages;
+    }
+
     public synchronized void removeAll() {
         buffer.clear();
     }
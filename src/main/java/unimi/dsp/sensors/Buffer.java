@@ -2,10 +2,34 @@ package unimi.dsp.sensors;
 
 import java.util.List;
 
-public interface Buffer {
+public interface Buffer extends MeasurementSink {
 
     void addMeasurement(Measurement m);
 
     List<Measurement> readAllAndClean();
 
+    /**
+     * same as `readAllAndClean`, but the buffer can return a view of its own storage instead of a copy.
+     * the view is valid until the next read of the buffer.
+     */
+    default MeasurementWindow readWindow() {
+        List<Measurement> measurements = this.readAllAndClean();
+        return new MeasurementWindow() {
+            @Override
+            public int size() {
+                return measurements.size();
+            }
+
+            @Override
+            public double getValue(int i) {
+                return measurements.get(i).getValue();
+            }
+
+            @Override
+            public long getTimestamp(int i) {
+                return measurements.get(i).getTimestamp();
+            }
+        };
+    }
+
 }
@@ -48,9 +48,7 @@ public class Measurement implements Comparable<Measurement> {
 
     @Override
     public int compareTo(Measurement m) {
-        Long thisTimestamp = timestamp;
-        Long otherTimestamp = m.getTimestamp();
-        return thisTimestamp.compareTo(otherTimestamp);
+        return Long.compare(timestamp, m.getTimestamp());
     }
 
     public String toString(){
@@ -0,0 +1,93 @@
+package unimi.dsp.sensors;
+
+/**
+ * a batch of measurements stored by column: the sensor index in `sensorRegistry`, the value and the
+ * timestamp of the i-th measurement are at position i of three primitive arrays. a batch is meant to be
+ * reused with `clear`, so adding a measurement does not allocate anything.
+ * it is not thread safe, a batch is owned by the thread filling it until it is added to a `Buffer`.
+ */
+public class MeasurementBatch {
+    private final SensorRegistry sensorRegistry;
+    private final int[] sensorIndexes;
+    private final double[] values;
+    private final long[] timestamps;
+    private int size = 0;
+
+    public MeasurementBatch(SensorRegistry sensorRegistry, int capacity) {
+        this.sensorRegistry = sensorRegistry;
+        this.sensorIndexes = new int[capacity];
+        this.values = new double[capacity];
+        this.timestamps = new long[capacity];
+    }
+
+    public void add(int sensorIndex, double value, long timestamp) {
+        if (this.isFull())
+            throw new IllegalStateException("The batch is full, capacity = " + this.values.length);
+        this.sensorIndexes[this.size] = sensorIndex;
+        this.values[this.size] = value;
+        this.timestamps[this.size] = timestamp;
+        this.size++;
+    }
+
+    /**
+     * interns the sensor of the measurement at every call, so a producer of many measurements should intern
+     * its sensor once and add them by index
+     */
+    public void add(Measurement m) {
+        this.add(this.sensorRegistry.intern(m.getId(), m.getType()), m.getValue(), m.getTimestamp());
+    }
+
+    public SensorRegistry getSensorRegistry() {
+        return this.sensorRegistry;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public int getCapacity() {
+        return this.values.length;
+    }
+
+    public boolean isFull() {
+        return this.size == this.values.length;
+    }
+
+    public void clear() {
+        this.size = 0;
+    }
+
+    public int getSensorIndex(int i) {
+        return this.sensorIndexes[this.checkIndex(i)];
+    }
+
+    public String getSensorId(int i) {
+        return this.sensorRegistry.getId(this.getSensorIndex(i));
+    }
+
+    public String getType(int i) {
+        return this.sensorRegistry.getType(this.getSensorIndex(i));
+    }
+
+    public double getValue(int i) {
+        return this.values[this.checkIndex(i)];
+    }
+
+    public long getTimestamp(int i) {
+        return this.timestamps[this.checkIndex(i)];
+    }
+
+    /**
+     * @return the i-th measurement as a `Measurement`, for the code that needs the objects.
+     * it is a copy, so changing it does not change the batch
+     */
+    public Measurement getMeasurement(int i) {
+        return new Measurement(this.getSensorId(i), this.getType(i), this.getValue(i), this.getTimestamp(i));
+    }
+
+    private int checkIndex(int i) {
+        if (i < 0 || i >= this.size)
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + this.size);
+        return i;
+    }
+}
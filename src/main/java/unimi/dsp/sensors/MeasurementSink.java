@@ -0,0 +1,18 @@
+package unimi.dsp.sensors;
+
+/**
+ * the producer side of a `Buffer`, for the consumers of measurements that are never read back
+ */
+public interface MeasurementSink {
+
+    void addMeasurement(Measurement m);
+
+    /**
+     * adds the measurements of the batch in order. the batch can be reused as soon as this returns.
+     * the sinks storing primitive values should override it, so no `Measurement` is created
+     */
+    default void addMeasurements(MeasurementBatch batch) {
+        for (int i = 0; i < batch.size(); i++)
+            this.addMeasurement(batch.getMeasurement(i));
+    }
+}
@@ -0,0 +1,12 @@
+package unimi.dsp.sensors;
+
+/**
+ * a read-only view of the measurements of a window, from the oldest to the newest
+ */
+public interface MeasurementWindow {
+    int size();
+
+    double getValue(int i);
+
+    long getTimestamp(int i);
+}
@@ -0,0 +1,198 @@
+package unimi.dsp.sensors;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * a sliding window buffer for a single producer and a single consumer, such as a simulator and the reader
+ * of its windows. a window is complete with `slidingWindowBufferSize` measurements and reading it removes
+ * the oldest `slidingWindowOverlappingFactor` of them, so the next window overlaps it. the measurements
+ * are stored in a ring of primitive arrays, the consumer reads the window in place and no lock is taken:
+ * a thread parks only when the ring is full or the window is not complete yet.
+ */
+public class RingWindowBuffer implements Buffer {
+    private final int windowSize;
+    // the number of measurements removed after a window is read
+    private final int slideSize;
+    // while the consumer reads a window, the producer can already add the measurements replacing the slide
+    private final int capacity;
+    private final double[] values;
+    private final long[] timestamps;
+    private final RingWindow window = new RingWindow();
+    // the number of measurements added and removed so far, the position in the ring is index % capacity.
+    // the tail is written only by the producer and the head only by the consumer
+    private volatile long tail = 0;
+    private volatile long head = 0;
+    // each thread publishes itself before parking and checks the condition again, while the other thread
+    // updates its index before reading it, so a wake up cannot be lost
+    private volatile Thread waitingProducer;
+    private volatile Thread waitingConsumer;
+    // the consumer has a window to release before reading the next one. accessed only by the consumer
+    private boolean isWindowRead = false;
+    // all the measurements come from the same sensor, they are needed only by `readAllAndClean`
+    private volatile String sensorId;
+    private volatile String sensorType;
+    // called by the producer each time a window is complete, so the consumer does not need to wait for it
+    private volatile Runnable windowListener = () -> {};
+
+    public RingWindowBuffer(int slidingWindowBufferSize, float slidingWindowOverlappingFactor) {
+        this.windowSize = slidingWindowBufferSize;
+        this.slideSize = Math.round(slidingWindowBufferSize * slidingWindowOverlappingFactor);
+        this.capacity = this.windowSize + this.slideSize;
+        this.values = new double[this.capacity];
+        this.timestamps = new long[this.capacity];
+    }
+
+    @Override
+    public void addMeasurement(Measurement m) {
+        if (this.sensorId == null) {
+            this.sensorId = m.getId();
+            this.sensorType = m.getType();
+        }
+        this.add(m.getValue(), m.getTimestamp());
+    }
+
+    @Override
+    public void addMeasurements(MeasurementBatch batch) {
+        if (batch.size() > 0 && this.sensorId == null) {
+            this.sensorId = batch.getSensorId(0);
+            this.sensorType = batch.getType(0);
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            if (!this.add(batch.getValue(i), batch.getTimestamp(i)))
+                return;
+        }
+    }
+
+    /**
+     * @return false if the producer has been interrupted while waiting, then the measurement is dropped
+     */
+    private boolean add(double value, long timestamp) {
+        long tail = this.tail;
+        while (tail - this.head == this.capacity) {
+            this.waitingProducer = Thread.currentThread();
+            if (tail - this.head == this.capacity)
+                LockSupport.park(this);
+            this.waitingProducer = null;
+            // the measurement is dropped if the producer is interrupted
+            if (Thread.interrupted())
+                return false;
+        }
+
+        int position = (int) (tail % this.capacity);
+        this.values[position] = value;
+        this.timestamps[position] = timestamp;
+        this.tail = tail + 1;
+
+        if (tail + 1 - this.head >= this.windowSize) {
+            Thread consumer = this.waitingConsumer;
+            if (consumer != null)
+                LockSupport.unpark(consumer);
+            this.windowListener.run();
+        }
+        return true;
+    }
+
+    public void setWindowListener(Runnable windowListener) {
+        this.windowListener = windowListener;
+    }
+
+    /**
+     * the window is a view of the ring and it is released by the next read. if the consumer is interrupted
+     * while waiting, it gets the incomplete window, which is not released.
+     */
+    @Override
+    public MeasurementWindow readWindow() {
+        this.releaseWindow();
+
+        long head = this.head;
+        while (this.tail - head < this.windowSize) {
+            this.waitingConsumer = Thread.currentThread();
+            if (this.tail - head < this.windowSize)
+                LockSupport.park(this);
+            this.waitingConsumer = null;
+            if (Thread.interrupted()) {
+                this.window.set(head, (int) (this.tail - head));
+                return this.window;
+            }
+        }
+
+        this.window.set(head, this.windowSize);
+        this.isWindowRead = true;
+        return this.window;
+    }
+
+    // it can be called by any thread
+    public boolean isWindowComplete() {
+        return this.tail - this.head >= this.windowSize;
+    }
+
+    /**
+     * same as `readWindow`, but it returns null instead of waiting if the window is not complete
+     */
+    public MeasurementWindow tryReadWindow() {
+        this.releaseWindow();
+
+        long head = this.head;
+        if (this.tail - head < this.windowSize)
+            return null;
+
+        this.window.set(head, this.windowSize);
+        this.isWindowRead = true;
+        return this.window;
+    }
+
+    @Override
+    public List<Measurement> readAllAndClean() {
+        MeasurementWindow window = this.readWindow();
+        List<Measurement> windowMeasurements = new ArrayList<>(window.size());
+        for (int i = 0; i < window.size(); i++)
+            windowMeasurements.add(new Measurement(this.sensorId, this.sensorType,
+                    window.getValue(i), window.getTimestamp(i)));
+        this.releaseWindow();
+        return windowMeasurements;
+    }
+
+    private void releaseWindow() {
+        if (!this.isWindowRead)
+            return;
+
+        this.isWindowRead = false;
+        this.head = this.head + this.slideSize;
+        Thread producer = this.waitingProducer;
+        if (producer != null)
+            LockSupport.unpark(producer);
+    }
+
+    private class RingWindow implements MeasurementWindow {
+        private long start;
+        private int size;
+
+        private void set(long start, int size) {
+            this.start = start;
+            this.size = size;
+        }
+
+        @Override
+        public int size() {
+            return this.size;
+        }
+
+        @Override
+        public double getValue(int i) {
+            return values[this.getPosition(i)];
+        }
+
+        @Override
+        public long getTimestamp(int i) {
+            return timestamps[this.getPosition(i)];
+        }
+
+        private int getPosition(int i) {
+            if (i < 0 || i >= this.size)
+                throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + this.size);
+            return (int) ((this.start + i) % capacity);
+        }
+    }
+}
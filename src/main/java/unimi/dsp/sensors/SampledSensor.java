@@ -0,0 +1,15 @@
+package unimi.dsp.sensors;
+
+/**
+ * a sensor that produces a measurement when it is asked, so it does not need its own thread.
+ * it is sampled every `getSamplingPeriodMillis` milliseconds by the `SensorPipeline` it is added to.
+ */
+public interface SampledSensor {
+    String getId();
+
+    String getType();
+
+    long getSamplingPeriodMillis();
+
+    double sample();
+}
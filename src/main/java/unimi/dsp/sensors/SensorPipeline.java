@@ -0,0 +1,341 @@
+package unimi.dsp.sensors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import unimi.dsp.sensors.simulators.Simulator;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * the sensors of a taxi. every sensor is sampled at its own rate by a periodic task of a shared scheduler,
+ * so the number of sensors does not change the number of threads, and its measurements are routed by type
+ * to the sliding window aggregator of that type.
+ * the sensors with the same rate are sampled by the same task into a reused `MeasurementBatch`, whose
+ * measurements are routed by the index of their sensor in the registry of the pipeline.
+ * a `Simulator`, which sleeps on its own thread between its measurements, is a source too: it fills a
+ * `RingWindowBuffer`, whose windows are aggregated on the shared scheduler when they complete.
+ * the averages of the completed windows are kept until they are taken, at most `maxAveragesPerType`
+ * of each type, so the memory of a taxi is bounded whatever the sampling rates and the upload delay.
+ * it is also a `MeasurementSink`, so a producer running on its own thread can add its measurements to it.
+ */
+public class SensorPipeline implements MeasurementSink, Closeable {
+    private static final Logger logger = LogManager.getLogger(SensorPipeline.class.getName());
+
+    private final int slidingWindowBufferSize;
+    private final float slidingWindowOverlappingFactor;
+    private final int maxAveragesPerType;
+    private final ScheduledExecutorService scheduler;
+    private final SensorRegistry sensorRegistry = new SensorRegistry();
+    // the key is the type of the measurements
+    private final Map<String, TypeAggregator> typeAggregators = new ConcurrentHashMap<>();
+    // the aggregator of the type of each sensor, by sensor index. it is replaced when a sensor is registered
+    private volatile TypeAggregator[] sensorTypeAggregators = new TypeAggregator[0];
+    // guarded by this. the key is the sampling period
+    private final Map<Long, SamplingGroup> samplingGroups = new LinkedHashMap<>();
+    private final List<SimulatorSource> simulatorSources = new ArrayList<>();
+    private final List<ScheduledFuture<?>> samplingTasks = new ArrayList<>();
+    private boolean isStarted = false;
+
+    public SensorPipeline(int slidingWindowBufferSize, float slidingWindowOverlappingFactor,
+                          int maxAveragesPerType) {
+        this(slidingWindowBufferSize, slidingWindowOverlappingFactor, maxAveragesPerType,
+                SensorScheduler.getInstance());
+    }
+
+    public SensorPipeline(int slidingWindowBufferSize, float slidingWindowOverlappingFactor,
+                          int maxAveragesPerType, ScheduledExecutorService scheduler) {
+        this.slidingWindowBufferSize = slidingWindowBufferSize;
+        this.slidingWindowOverlappingFactor = slidingWindowOverlappingFactor;
+        this.maxAveragesPerType = maxAveragesPerType;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * the sensor is sampled from `start` until `close`
+     */
+    public synchronized void addSensor(SampledSensor sensor) {
+        int sensorIndex = this.sensorRegistry.intern(sensor.getId(), sensor.getType());
+        // I create the aggregator now, so the type is reported even before its first window
+        this.getSensorTypeAggregator(sensorIndex);
+
+        SamplingGroup samplingGroup = this.samplingGroups.get(sensor.getSamplingPeriodMillis());
+        if (samplingGroup == null) {
+            samplingGroup = new SamplingGroup(sensor.getSamplingPeriodMillis());
+            this.samplingGroups.put(sensor.getSamplingPeriodMillis(), samplingGroup);
+            if (this.isStarted)
+                this.scheduleSampling(samplingGroup);
+        }
+        samplingGroup.addSensor(sensor, sensorIndex);
+    }
+
+    /**
+     * the registry of the sensors of this pipeline, which the batches added to it must use
+     */
+    public SensorRegistry getSensorRegistry() {
+        return this.sensorRegistry;
+    }
+
+    /**
+     * the simulator is created on the buffer of its windows, which has a single producer, so every simulator
+     * has its own. it is started by `start` and stopped by `close`, and a stopped simulator is not restarted
+     * @return the simulator created by `simulatorFactory`
+     */
+    public synchronized <T extends Simulator> T addSimulator(Function<Buffer, T> simulatorFactory) {
+        RingWindowBuffer buffer = new RingWindowBuffer(this.slidingWindowBufferSize,
+                this.slidingWindowOverlappingFactor);
+        T simulator = simulatorFactory.apply(buffer);
+        SimulatorSource simulatorSource = new SimulatorSource(buffer, simulator);
+        this.simulatorSources.add(simulatorSource);
+        if (this.isStarted)
+            simulatorSource.start();
+        return simulator;
+    }
+
+    public synchronized void start() {
+        if (this.isStarted)
+            return;
+        this.isStarted = true;
+        for (SamplingGroup samplingGroup : this.samplingGroups.values())
+            this.scheduleSampling(samplingGroup);
+        for (SimulatorSource simulatorSource : this.simulatorSources)
+            simulatorSource.start();
+    }
+
+    private void scheduleSampling(SamplingGroup samplingGroup) {
+        long samplingPeriod = samplingGroup.samplingPeriodMillis;
+        // the first samples are spread over a period, so the sensors of many taxis are not sampled all together
+        long initialDelay = ThreadLocalRandom.current().nextLong(samplingPeriod);
+        this.samplingTasks.add(this.scheduler.scheduleAtFixedRate(samplingGroup,
+                initialDelay, samplingPeriod, TimeUnit.MILLISECONDS));
+    }
+
+    @Override
+    public void addMeasurement(Measurement m) {
+        this.getTypeAggregator(m.getType()).add(m.getValue());
+    }
+
+    /**
+     * the sensors of the batch must be interned in the registry of this pipeline, see `getSensorRegistry`
+     */
+    @Override
+    public void addMeasurements(MeasurementBatch batch) {
+        if (batch.getSensorRegistry() != this.sensorRegistry)
+            throw new IllegalArgumentException("The batch does not use the sensor registry of the pipeline");
+        for (int i = 0; i < batch.size(); i++)
+            this.getSensorTypeAggregator(batch.getSensorIndex(i)).add(batch.getValue(i));
+    }
+
+    /**
+     * @return for every type, the averages of the windows completed since the previous call,
+     * from the oldest to the newest
+     */
+    public synchronized Map<String, List<Double>> takeAverages() {
+        Map<String, List<Double>> averages = new TreeMap<>();
+        for (TypeAggregator typeAggregator : this.typeAggregators.values())
+            averages.put(typeAggregator.type, typeAggregator.takeAverages());
+        return averages;
+    }
+
+    @Override
+    public synchronized void close() {
+        for (ScheduledFuture<?> samplingTask : this.samplingTasks)
+            samplingTask.cancel(false);
+        this.samplingTasks.clear();
+        for (SimulatorSource simulatorSource : this.simulatorSources)
+            simulatorSource.simulator.stopMeGently();
+        this.isStarted = false;
+    }
+
+    private TypeAggregator getTypeAggregator(String type) {
+        // computeIfAbsent locks the map even if the type is already there
+        TypeAggregator typeAggregator = this.typeAggregators.get(type);
+        if (typeAggregator != null)
+            return typeAggregator;
+        return this.typeAggregators.computeIfAbsent(type, TypeAggregator::new);
+    }
+
+    private TypeAggregator getSensorTypeAggregator(int sensorIndex) {
+        TypeAggregator[] sensorTypeAggregators = this.sensorTypeAggregators;
+        if (sensorIndex < sensorTypeAggregators.length)
+            return sensorTypeAggregators[sensorIndex];
+        return this.addSensorTypeAggregators(sensorIndex);
+    }
+
+    // the sensors registered since the last call get the aggregators of their types
+    private synchronized TypeAggregator addSensorTypeAggregators(int sensorIndex) {
+        int sensorsNum = this.sensorRegistry.size();
+        if (sensorIndex < 0 || sensorIndex >= sensorsNum)
+            throw new IndexOutOfBoundsException("Sensor index: " + sensorIndex + ", Sensors: " + sensorsNum);
+
+        TypeAggregator[] sensorTypeAggregators = Arrays.copyOf(this.sensorTypeAggregators, sensorsNum);
+        for (int i = this.sensorTypeAggregators.length; i < sensorsNum; i++)
+            sensorTypeAggregators[i] = this.getTypeAggregator(this.sensorRegistry.getType(i));
+        this.sensorTypeAggregators = sensorTypeAggregators;
+        return sensorTypeAggregators[sensorIndex];
+    }
+
+    /**
+     * the sensors with the same sampling period, which are sampled by the same periodic task.
+     * the samples go in a batch reused by the task, so sampling does not create any object
+     */
+    private class SamplingGroup implements Runnable {
+        private final long samplingPeriodMillis;
+        // replaced when a sensor is added, so the task reads them without locks. the indexes are replaced
+        // before the sensors, so the task always finds the index of a sensor it sees
+        private volatile int[] sensorIndexes = new int[0];
+        private volatile SampledSensor[] sensors = new SampledSensor[0];
+        // accessed only by the task, whose runs never overlap
+        private MeasurementBatch batch = new MeasurementBatch(sensorRegistry, 0);
+
+        private SamplingGroup(long samplingPeriodMillis) {
+            this.samplingPeriodMillis = samplingPeriodMillis;
+        }
+
+        // called with the lock of the pipeline
+        private void addSensor(SampledSensor sensor, int sensorIndex) {
+            int[] sensorIndexes = Arrays.copyOf(this.sensorIndexes, this.sensorIndexes.length + 1);
+            sensorIndexes[sensorIndexes.length - 1] = sensorIndex;
+            SampledSensor[] sensors = Arrays.copyOf(this.sensors, this.sensors.length + 1);
+            sensors[sensors.length - 1] = sensor;
+            this.sensorIndexes = sensorIndexes;
+            this.sensors = sensors;
+        }
+
+        @Override
+        public void run() {
+            SampledSensor[] sensors = this.sensors;
+            int[] sensorIndexes = this.sensorIndexes;
+            if (this.batch.getCapacity() < sensors.length)
+                this.batch = new MeasurementBatch(sensorRegistry, sensors.length);
+
+            this.batch.clear();
+            long timestamp = System.currentTimeMillis();
+            for (int i = 0; i < sensors.length; i++) {
+                // an exception would cancel the periodic task, so the sensors would stop silently
+                try {
+                    this.batch.add(sensorIndexes[i], sensors[i].sample(), timestamp);
+                } catch (RuntimeException e) {
+                    logger.error("Sensor {} failed to produce a measurement", sensors[i].getId(), e);
+                }
+            }
+            addMeasurements(this.batch);
+        }
+    }
+
+    /**
+     * the aggregation of the measurements of a type, which can come from several sensors.
+     * the arrays of the averages are swapped at each take, so the averages are never copied while
+     * the lock is held
+     */
+    private class TypeAggregator {
+        private final String type;
+        // guarded by this
+        private final SlidingWindowAggregator windowAggregator;
+        private double[] averages;
+        private int averagesNum = 0;
+        private int droppedAveragesNum = 0;
+        // accessed only by the thread taking the averages
+        private double[] spareAverages;
+
+        private TypeAggregator(String type) {
+            this.type = type;
+            this.windowAggregator = new SlidingWindowAggregator(slidingWindowBufferSize,
+                    slidingWindowOverlappingFactor);
+            this.averages = new double[maxAveragesPerType];
+            this.spareAverages = new double[maxAveragesPerType];
+        }
+
+        private synchronized void add(double value) {
+            if (this.windowAggregator.add(value))
+                this.addAverage(this.windowAggregator.getAverage());
+        }
+
+        private synchronized void addAverage(double average) {
+            if (this.averagesNum == this.averages.length) {
+                this.droppedAveragesNum++;
+                return;
+            }
+            this.averages[this.averagesNum++] = average;
+        }
+
+        private List<Double> takeAverages() {
+            double[] takenAverages;
+            int takenAveragesNum;
+            int droppedAveragesNum;
+            synchronized (this) {
+                takenAverages = this.averages;
+                takenAveragesNum = this.averagesNum;
+                droppedAveragesNum = this.droppedAveragesNum;
+                this.averages = this.spareAverages;
+                this.averagesNum = 0;
+                this.droppedAveragesNum = 0;
+            }
+            if (droppedAveragesNum > 0)
+                logger.warn("{} averages of type {} have been dropped, at most {} are kept",
+                        droppedAveragesNum, this.type, takenAverages.length);
+
+            List<Double> averagesList = new ArrayList<>(takenAveragesNum);
+            for (int i = 0; i < takenAveragesNum; i++)
+                averagesList.add(takenAverages[i]);
+            this.spareAverages = takenAverages;
+            return averagesList;
+        }
+    }
+
+    /**
+     * a simulator with the buffer it fills. the windows are read by a task of the scheduler, at most one at
+     * a time, so the buffer keeps a single consumer and each window is aggregated only with its new slide
+     */
+    private class SimulatorSource {
+        private final RingWindowBuffer buffer;
+        private final Simulator simulator;
+        private final TypeAggregator typeAggregator;
+        // accessed only by the aggregation task
+        private final SlidingWindowAggregator windowAggregator;
+        private final AtomicBoolean isAggregationScheduled = new AtomicBoolean(false);
+
+        private SimulatorSource(RingWindowBuffer buffer, Simulator simulator) {
+            this.buffer = buffer;
+            this.simulator = simulator;
+            this.typeAggregator = getTypeAggregator(this.simulator.getType());
+            this.windowAggregator = new SlidingWindowAggregator(slidingWindowBufferSize,
+                    slidingWindowOverlappingFactor);
+            this.buffer.setWindowListener(this::scheduleAggregation);
+        }
+
+        private void start() {
+            if (this.simulator.getState() == Thread.State.NEW)
+                this.simulator.start();
+        }
+
+        private void scheduleAggregation() {
+            if (this.isAggregationScheduled.compareAndSet(false, true))
+                scheduler.execute(this::aggregateWindows);
+        }
+
+        private void aggregateWindows() {
+            do {
+                MeasurementWindow window;
+                while ((window = this.buffer.tryReadWindow()) != null) {
+                    if (this.windowAggregator.addWindow(window))
+                        this.typeAggregator.addAverage(this.windowAggregator.getAverage());
+                }
+                this.isAggregationScheduled.set(false);
+                // a window completed after the last read and before the reset would not schedule a new task
+            } while (this.buffer.isWindowComplete() && this.isAggregationScheduled.compareAndSet(false, true));
+        }
+    }
+}
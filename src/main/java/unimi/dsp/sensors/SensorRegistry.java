@@ -0,0 +1,62 @@
+package unimi.dsp.sensors;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * the sensors of a pipeline, each one with an index, so a measurement can refer to its sensor with an int
+ * instead of two strings. the indexes start from 0 and are never reused, and a registry lives as long as
+ * its pipeline, so it holds only the sensors of a taxi.
+ * a sensor is meant to be interned once, then its index is reused for all its measurements.
+ */
+public final class SensorRegistry {
+    // the key is the sensor id. the lookups do not lock, the registrations are serialized by this
+    private final Map<String, Integer> sensorIndexes = new ConcurrentHashMap<>();
+    // the arrays are replaced when a sensor is registered, so they can be read without locks
+    private volatile String[] sensorIds = new String[0];
+    private volatile String[] sensorTypes = new String[0];
+
+    /**
+     * @return the index of the sensor, which is registered if it is new
+     */
+    public int intern(String sensorId, String sensorType) {
+        Integer sensorIndex = this.sensorIndexes.get(sensorId);
+        if (sensorIndex == null)
+            sensorIndex = this.register(sensorId, sensorType);
+        if (!this.sensorTypes[sensorIndex].equals(sensorType))
+            throw new IllegalArgumentException(String.format(
+                    "Validation rule: a sensor has a single type, sensor = %s, types = %s, %s",
+                    sensorId, this.sensorTypes[sensorIndex], sensorType));
+        return sensorIndex;
+    }
+
+    private synchronized int register(String sensorId, String sensorType) {
+        Integer sensorIndex = this.sensorIndexes.get(sensorId);
+        if (sensorIndex != null)
+            return sensorIndex;
+
+        int newSensorIndex = this.sensorIds.length;
+        String[] newSensorIds = Arrays.copyOf(this.sensorIds, newSensorIndex + 1);
+        String[] newSensorTypes = Arrays.copyOf(this.sensorTypes, newSensorIndex + 1);
+        newSensorIds[newSensorIndex] = sensorId;
+        newSensorTypes[newSensorIndex] = sensorType;
+        this.sensorTypes = newSensorTypes;
+        this.sensorIds = newSensorIds;
+        // the index is published after the arrays, so whoever finds it can read its sensor
+        this.sensorIndexes.put(sensorId, newSensorIndex);
+        return newSensorIndex;
+    }
+
+    public int size() {
+        return this.sensorIds.length;
+    }
+
+    public String getId(int sensorIndex) {
+        return this.sensorIds[sensorIndex];
+    }
+
+    public String getType(int sensorIndex) {
+        return this.sensorTypes[sensorIndex];
+    }
+}
@@ -0,0 +1,36 @@
+package unimi.dsp.sensors;
+
+import unimi.dsp.util.ConfigurationManager;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * the threads running the sensor work of all the taxis of the process, so a taxi does not need
+ * its own threads to aggregate its measurements
+ */
+public final class SensorScheduler {
+    private static final ConfigurationManager configurationManager = ConfigurationManager.getInstance();
+    private static final AtomicInteger sensorThreadsCounter = new AtomicInteger();
+    private static final ScheduledThreadPoolExecutor executor = createExecutor();
+
+    private SensorScheduler() {
+    }
+
+    public static ScheduledExecutorService getInstance() {
+        return executor;
+    }
+
+    private static ScheduledThreadPoolExecutor createExecutor() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(
+                configurationManager.getSensorSchedulerThreads(), r -> {
+                    Thread thread = new Thread(r, "sensor-" + sensorThreadsCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        // the periodic tasks of a stopped taxi are cancelled, so they should not stay in the queue
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+}
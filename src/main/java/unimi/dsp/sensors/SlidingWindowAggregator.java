@@ -0,0 +1,206 @@
+package unimi.dsp.sensors;
+
+/**
+ * aggregates the measurements of an overlapping sliding window while they enter it, so a window costs
+ * O(slide) instead of O(window) and no list of measurements is created.
+ * the average comes from a running sum, the min and the max from monotonic queues and the percentiles
+ * from a fixed histogram, each of them updated when a measurement enters or leaves the window.
+ * the min, the max and the percentiles are optional, they are enabled with `withMinMax` and `withPercentiles`.
+ * it is not thread safe, it is meant to be used by the thread consuming the measurements.
+ */
+public class SlidingWindowAggregator {
+    private final int windowSize;
+    // a window is completed every `slideSize` measurements, after the first one
+    private final int slideSize;
+    // values[i % windowSize] is the i-th measurement, for the last windowSize ones
+    private final double[] values;
+    // the number of measurements added so far
+    private long addedNum = 0;
+    private int addedSinceLastWindowNum = 0;
+    private double sum = 0;
+
+    // the indexes of the measurements that can still become the min or the max, as circular queues
+    private long[] minQueue;
+    private int minQueueHead = 0;
+    private int minQueueSize = 0;
+    private long[] maxQueue;
+    private int maxQueueHead = 0;
+    private int maxQueueSize = 0;
+
+    // the values outside [histogramLowest, histogramHighest] go in the first or in the last bucket
+    private int[] histogram;
+    private double histogramLowest;
+    private double bucketWidth;
+
+    public SlidingWindowAggregator(int slidingWindowBufferSize, float slidingWindowOverlappingFactor) {
+        this.windowSize = slidingWindowBufferSize;
+        this.slideSize = Math.max(1, Math.round(slidingWindowBufferSize * slidingWindowOverlappingFactor));
+        this.values = new double[this.windowSize];
+    }
+
+    public SlidingWindowAggregator withMinMax() {
+        this.minQueue = new long[this.windowSize];
+        this.maxQueue = new long[this.windowSize];
+        return this;
+    }
+
+    public SlidingWindowAggregator withPercentiles(double lowest, double highest, int bucketsNum) {
+        this.histogram = new int[bucketsNum];
+        this.histogramLowest = lowest;
+        this.bucketWidth = (highest - lowest) / bucketsNum;
+        return this;
+    }
+
+    /**
+     * @return true if the measurement completes a window, whose aggregates can be read until the next add
+     */
+    public boolean add(double value) {
+        int position = (int) (this.addedNum % this.windowSize);
+        boolean isWindowFull = this.addedNum >= this.windowSize;
+        if (isWindowFull) {
+            double leavingValue = this.values[position];
+            this.sum -= leavingValue;
+            if (this.histogram != null)
+                this.histogram[this.getBucket(leavingValue)]--;
+        }
+
+        this.values[position] = value;
+        this.sum += value;
+        if (this.histogram != null)
+            this.histogram[this.getBucket(value)]++;
+        if (this.minQueue != null)
+            this.addToMinMaxQueues(this.addedNum, value);
+        this.addedNum++;
+
+        // I recompute the sum once per window, so the rounding errors of the removals do not accumulate
+        if (this.addedNum % this.windowSize == 0) {
+            this.sum = 0;
+            for (double windowValue : this.values)
+                this.sum += windowValue;
+        }
+
+        if (this.addedNum < this.windowSize)
+            return false;
+        if (this.addedNum == this.windowSize) {
+            this.addedSinceLastWindowNum = 0;
+            return true;
+        }
+        this.addedSinceLastWindowNum++;
+        if (this.addedSinceLastWindowNum < this.slideSize)
+            return false;
+        this.addedSinceLastWindowNum = 0;
+        return true;
+    }
+
+    /**
+     * adds the measurements of the sensor `sensorIndex` in the batch, in order, reading the primitive columns.
+     * `windowListener` is called for each window they complete, while its aggregates can be read
+     * @return the number of completed windows
+     */
+    public int add(MeasurementBatch batch, int sensorIndex, Runnable windowListener) {
+        int completedWindowsNum = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            if (batch.getSensorIndex(i) == sensorIndex && this.add(batch.getValue(i))) {
+                completedWindowsNum++;
+                windowListener.run();
+            }
+        }
+        return completedWindowsNum;
+    }
+
+    /**
+     * adds only the measurements of the window that were not in the previous one, which must have been
+     * read with the same window size and overlapping factor
+     * @return true if the window has been completed
+     */
+    public boolean addWindow(MeasurementWindow window) {
+        int newMeasurementsNum = this.addedNum == 0
+                ? window.size()
+                : Math.min(window.size(), this.slideSize - this.addedSinceLastWindowNum);
+        boolean isWindowCompleted = false;
+        for (int i = window.size() - newMeasurementsNum; i < window.size(); i++)
+            isWindowCompleted = this.add(window.getValue(i));
+        return isWindowCompleted;
+    }
+
+    public int getCount() {
+        return (int) Math.min(this.addedNum, this.windowSize);
+    }
+
+    public double getAverage() {
+        int count = this.getCount();
+        return count == 0 ? 0 : this.sum / count;
+    }
+
+    public double getMin() {
+        if (this.minQueue == null)
+            throw new IllegalStateException("The min is not enabled, see withMinMax");
+        return this.minQueueSize == 0 ? Double.NaN : this.getValue(this.minQueue[this.minQueueHead]);
+    }
+
+    public double getMax() {
+        if (this.maxQueue == null)
+            throw new IllegalStateException("The max is not enabled, see withMinMax");
+        return this.maxQueueSize == 0 ? Double.NaN : this.getValue(this.maxQueue[this.maxQueueHead]);
+    }
+
+    /**
+     * @param percentile between 0 and 1
+     * @return the middle of the histogram bucket containing the percentile, so the error is at most
+     * half a bucket for the values inside the histogram range
+     */
+    public double getPercentile(double percentile) {
+        if (this.histogram == null)
+            throw new IllegalStateException("The percentiles are not enabled, see withPercentiles");
+        int count = this.getCount();
+        if (count == 0)
+            return Double.NaN;
+
+        long rank = Math.max(1, (long) Math.ceil(percentile * count));
+        long cumulativeCount = 0;
+        int bucket = 0;
+        while (bucket < this.histogram.length - 1) {
+            cumulativeCount += this.histogram[bucket];
+            if (cumulativeCount >= rank)
+                break;
+            bucket++;
+        }
+        return this.histogramLowest + (bucket + 0.5) * this.bucketWidth;
+    }
+
+    private void addToMinMaxQueues(long index, double value) {
+        long oldestIndex = index - this.windowSize + 1;
+        // the measurement leaving the window can be only at the head
+        if (this.minQueueSize > 0 && this.minQueue[this.minQueueHead] < oldestIndex) {
+            this.minQueueHead = (this.minQueueHead + 1) % this.windowSize;
+            this.minQueueSize--;
+        }
+        if (this.maxQueueSize > 0 && this.maxQueue[this.maxQueueHead] < oldestIndex) {
+            this.maxQueueHead = (this.maxQueueHead + 1) % this.windowSize;
+            this.maxQueueSize--;
+        }
+
+        // a measurement that is not smaller (greater) than the new one will leave first, so it cannot
+        // be the min (max) anymore
+        while (this.minQueueSize > 0 && this.getValue(this.minQueue[
+                (this.minQueueHead + this.minQueueSize - 1) % this.windowSize]) >= value)
+            this.minQueueSize--;
+        this.minQueue[(this.minQueueHead + this.minQueueSize) % this.windowSize] = index;
+        this.minQueueSize++;
+
+        while (this.maxQueueSize > 0 && this.getValue(this.maxQueue[
+                (this.maxQueueHead + this.maxQueueSize - 1) % this.windowSize]) <= value)
+            this.maxQueueSize--;
+        this.maxQueue[(this.maxQueueHead + this.maxQueueSize) % this.windowSize] = index;
+        this.maxQueueSize++;
+    }
+
+    private double getValue(long index) {
+        return this.values[(int) (index % this.windowSize)];
+    }
+
+    private int getBucket(double value) {
+        int bucket = (int) ((value - this.histogramLowest) / this.bucketWidth);
+        return Math.max(0, Math.min(this.histogram.length - 1, bucket));
+    }
+}
@@ -0,0 +1,54 @@
+package unimi.dsp.sensors.simulators;
+
+import unimi.dsp.sensors.SampledSensor;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * the simulator of a sensor of type `SensorType`. unlike a `Simulator` it does not sleep between
+ * the measurements, it is sampled by the `SensorPipeline` of the taxi.
+ */
+public class SensorSimulator implements SampledSensor {
+    private static final AtomicInteger ID = new AtomicInteger(1);
+
+    private final Random rnd = new Random();
+    private final String id;
+    private final SensorType type;
+    private final long samplingPeriodMillis;
+    // the pipeline never samples the same sensor concurrently, and it publishes t between two samples
+    private double t;
+
+    public SensorSimulator(String id, SensorType type, long samplingPeriodMillis) {
+        this.id = id;
+        this.type = type;
+        this.samplingPeriodMillis = samplingPeriodMillis;
+        this.t = this.rnd.nextInt();
+    }
+
+    public SensorSimulator(SensorType type, long samplingPeriodMillis) {
+        this(type.name().toLowerCase() + "-" + ID.getAndIncrement(), type, samplingPeriodMillis);
+    }
+
+    @Override
+    public String getId() {
+        return this.id;
+    }
+
+    @Override
+    public String getType() {
+        return this.type.name();
+    }
+
+    @Override
+    public long getSamplingPeriodMillis() {
+        return this.samplingPeriodMillis;
+    }
+
+    @Override
+    public double sample() {
+        double value = this.type.getValue(this.t, this.rnd.nextGaussian());
+        this.t += 0.2;
+        return value;
+    }
+}
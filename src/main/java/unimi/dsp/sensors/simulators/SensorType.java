@@ -0,0 +1,53 @@
+package unimi.dsp.sensors.simulators;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * the kinds of sensor a taxi can carry. the measurements are simulated like the ones of `PM10Simulator`,
+ * as |amplitude * sin(frequency * t) + noise| + offset
+ */
+public enum SensorType {
+    PM10(15, 0.05, 15, 0.1),
+    PM25(10, 0.05, 8, 0.1),
+    NO2(20, 0.02, 20, 0.5),
+    TEMPERATURE(5, 0.001, 15, 0.05),
+    SPEED(20, 0.1, 10, 2);
+
+    private final double amplitude;
+    private final double frequency;
+    private final double offset;
+    private final double noise;
+
+    SensorType(double amplitude, double frequency, double offset, double noise) {
+        this.amplitude = amplitude;
+        this.frequency = frequency;
+        this.offset = offset;
+        this.noise = noise;
+    }
+
+    double getValue(double t, double gaussian) {
+        return Math.abs(this.amplitude * Math.sin(this.frequency * t) + gaussian * this.noise) + this.offset;
+    }
+
+    /**
+     * @param sensors a comma separated list of type:samplingPeriodMillis, e.g. "PM10:300,NO2:1000"
+     * @return the sampling period of each type, in the order of the list
+     */
+    public static Map<SensorType, Long> parseSamplingPeriods(String sensors) {
+        Map<SensorType, Long> samplingPeriods = new LinkedHashMap<>();
+        for (String sensor : sensors.split(",")) {
+            String[] typeAndPeriod = sensor.trim().split(":");
+            if (typeAndPeriod.length != 2)
+                throw new IllegalArgumentException(
+                        String.format("Validation rule: sensor = type:samplingPeriodMillis, sensor = %s", sensor));
+            long samplingPeriod = Long.parseLong(typeAndPeriod[1].trim());
+            if (samplingPeriod <= 0)
+                throw new IllegalArgumentException(
+                        String.format("Validation rule: samplingPeriodMillis > 0, samplingPeriodMillis = %d",
+                                samplingPeriod));
+            samplingPeriods.put(SensorType.valueOf(typeAndPeriod[0].trim()), samplingPeriod);
+        }
+        return samplingPeriods;
+    }
+}
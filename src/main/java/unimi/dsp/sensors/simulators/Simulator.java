@@ -50,5 +50,9 @@ public abstract class Simulator extends Thread {
         return id;
     }
 
+    public String getType(){
+        return type;
+    }
+
 }
 
@@ -0,0 +1,97 @@
+package unimi.dsp.taxi;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * the taxis of a district sorted by id, which is the order of the election ring.
+ * it is immutable: a change in the network creates a new ring, so it can be read without locks.
+ */
+final class DistrictRing {
+    static final DistrictRing EMPTY = new DistrictRing(new int[0], new NetworkTaxiConnection[0]);
+
+    private final int[] taxiIds;
+    // connections[i] is the connection to the taxi taxiIds[i]
+    private final NetworkTaxiConnection[] connections;
+
+    private DistrictRing(int[] taxiIds, NetworkTaxiConnection[] connections) {
+        this.taxiIds = taxiIds;
+        this.connections = connections;
+    }
+
+    DistrictRing with(NetworkTaxiConnection connection) {
+        int pos = Arrays.binarySearch(this.taxiIds, connection.getRemoteTaxiId());
+        if (pos >= 0) {
+            NetworkTaxiConnection[] newConnections = this.connections.clone();
+            newConnections[pos] = connection;
+            return new DistrictRing(this.taxiIds, newConnections);
+        }
+
+        int insertionPos = -pos - 1;
+        int[] newTaxiIds = new int[this.taxiIds.length + 1];
+        NetworkTaxiConnection[] newConnections = new NetworkTaxiConnection[this.connections.length + 1];
+        System.arraycopy(this.taxiIds, 0, newTaxiIds, 0, insertionPos);
+        System.arraycopy(this.connections, 0, newConnections, 0, insertionPos);
+        newTaxiIds[insertionPos] = connection.getRemoteTaxiId();
+        newConnections[insertionPos] = connection;
+        System.arraycopy(this.taxiIds, insertionPos, newTaxiIds, insertionPos + 1,
+                this.taxiIds.length - insertionPos);
+        System.arraycopy(this.connections, insertionPos, newConnections, insertionPos + 1,
+                this.connections.length - insertionPos);
+        return new DistrictRing(newTaxiIds, newConnections);
+    }
+
+    DistrictRing without(int taxiId) {
+        int pos = Arrays.binarySearch(this.taxiIds, taxiId);
+        if (pos < 0)
+            return this;
+        if (this.taxiIds.length == 1)
+            return EMPTY;
+
+        int[] newTaxiIds = new int[this.taxiIds.length - 1];
+        NetworkTaxiConnection[] newConnections = new NetworkTaxiConnection[this.connections.length - 1];
+        System.arraycopy(this.taxiIds, 0, newTaxiIds, 0, pos);
+        System.arraycopy(this.connections, 0, newConnections, 0, pos);
+        System.arraycopy(this.taxiIds, pos + 1, newTaxiIds, pos, newTaxiIds.length - pos);
+        System.arraycopy(this.connections, pos + 1, newConnections, pos, newConnections.length - pos);
+        return new DistrictRing(newTaxiIds, newConnections);
+    }
+
+    /**
+     * @return the connection to the taxi following `taxiId` in the ring, which does not need to contain it,
+     * or null if the ring is empty
+     */
+    NetworkTaxiConnection getNext(int taxiId) {
+        if (this.taxiIds.length == 0)
+            return null;
+
+        int pos = Arrays.binarySearch(this.taxiIds, taxiId);
+        int nextPos = pos >= 0 ? pos + 1 : -pos - 1;
+        return this.connections[nextPos == this.taxiIds.length ? 0 : nextPos];
+    }
+
+    /**
+     * @return the ids of the ring in ring order, starting from the one following `taxiId`
+     */
+    int[] getTaxiIdsAfter(int taxiId) {
+        int pos = Arrays.binarySearch(this.taxiIds, taxiId);
+        int startPos = pos >= 0 ? pos + 1 : -pos - 1;
+        int[] rotatedTaxiIds = new int[this.taxiIds.length];
+        for (int i = 0; i < this.taxiIds.length; i++)
+            rotatedTaxiIds[i] = this.taxiIds[(startPos + i) % this.taxiIds.length];
+        return rotatedTaxiIds;
+    }
+
+    List<NetworkTaxiConnection> getConnections() {
+        return Collections.unmodifiableList(Arrays.asList(this.connections));
+    }
+
+    int[] getTaxiIds() {
+        return this.taxiIds.clone();
+    }
+
+    int size() {
+        return this.taxiIds.length;
+    }
+}
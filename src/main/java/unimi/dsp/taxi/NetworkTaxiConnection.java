@@ -1,35 +1,53 @@
 package unimi.dsp.taxi;
 
 import com.google.protobuf.Empty;
-import io.grpc.ManagedChannel;
-import io.grpc.ManagedChannelBuilder;
 import io.grpc.stub.StreamObserver;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import unimi.dsp.dto.RideRequestDto;
 import unimi.dsp.dto.TaxiInfoDto;
 import unimi.dsp.model.types.District;
+import unimi.dsp.model.types.SmartCityCell;
 import unimi.dsp.model.types.SmartCityPosition;
 import unimi.dsp.model.types.election.RideElectionInfo;
+import unimi.dsp.model.types.election.RideRequestMessage;
+import unimi.dsp.util.ConfigurationManager;
 
 import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 public class NetworkTaxiConnection implements Closeable {
     private static final Logger logger = LogManager.getLogger(NetworkTaxiConnection.class.getName());
+    private static final ConfigurationManager configurationManager = ConfigurationManager.getInstance();
+    // the deadline of the calls broadcast with a timeout, so they end in time even when run by the caller
+    // of the fan-out. the recharge calls have none, their broadcasts wait for every answer
+    private static final int BROADCAST_TIMEOUT_MILLIS = configurationManager.getBroadcastTimeoutMillis();
+    private static final int ELECTION_RPC_DEADLINE_MILLIS = configurationManager.getElectionRpcDeadlineMillis();
+    private static final int ELECTION_RPC_MAX_RETRIES = configurationManager.getElectionRpcMaxRetries();
+    private static final int ELECTION_RPC_RETRY_BACKOFF_MILLIS = configurationManager.getElectionRpcRetryBackoffMillis();
+    // shared by all the connections, it only schedules the retries of the election messages
+    private static final ScheduledExecutorService electionRetryScheduler =
+            Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "election-retry-scheduler");
+                thread.setDaemon(true);
+                return thread;
+            });
 
     private final Taxi taxi;
     private final TaxiInfoDto remoteTaxiInfo;
     private District remoteTaxiDistrict;
-    private final ManagedChannel channel;
+    private final TaxiChannelPool channelPool = TaxiChannelPool.getInstance();
+    private final ElectionMessageSender electionMessageSender = new ElectionMessageSender();
 
     public NetworkTaxiConnection(Taxi taxi, TaxiInfoDto remoteTaxiInfo) {
         this.taxi = taxi;
         this.remoteTaxiInfo = remoteTaxiInfo;
-        this.channel = ManagedChannelBuilder
-                .forAddress(this.remoteTaxiInfo.getIpAddress(), this.remoteTaxiInfo.getPort())
-                .usePlaintext().build();
     }
 
     public District getRemoteTaxiDistrict() {
@@ -44,17 +62,18 @@ public class NetworkTaxiConnection implements Closeable {
         this.remoteTaxiDistrict = remoteTaxiDistrict;
     }
 
+    // the channel is closed by the pool once the calls in flight have completed and it stays unused
     public void close() {
-        try {
-            channel.shutdown().awaitTermination(2, TimeUnit.SECONDS);
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
-        }
+        this.electionMessageSender.close();
+    }
+
+    private TaxiChannelPool.Lease leaseChannel() {
+        return this.channelPool.lease(this.remoteTaxiInfo.getIpAddress(), this.remoteTaxiInfo.getPort());
     }
 
     /**
      * used to inform the remote taxi that a new one (`taxi`) has entered the network.
-     * the channel stays open only for those taxis that are in the same district.
+     * the channel is leased from the pool only for the call, and the pool closes it once it stays idle.
      */
     public void sendAddTaxi() {
         TaxiServiceOuterClass.TaxiAddRequest request = TaxiServiceOuterClass.TaxiAddRequest.newBuilder()
@@ -64,8 +83,11 @@ public class NetworkTaxiConnection implements Closeable {
                 .setX(this.taxi.getX())
                 .setY(this.taxi.getY())
                 .build();
-        TaxiServiceOuterClass.TaxiAddResponse response = TaxiServiceGrpc
-                .newBlockingStub(channel).addTaxi(request);
+        TaxiServiceOuterClass.TaxiAddResponse response;
+        try (TaxiChannelPool.Lease lease = this.leaseChannel()) {
+            response = lease.getBlockingStub()
+                    .withDeadlineAfter(BROADCAST_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).addTaxi(request);
+        }
 
         District remoteDistrict = District.fromPosition(
                 new SmartCityPosition(response.getX(), response.getY()));
@@ -79,42 +101,117 @@ public class NetworkTaxiConnection implements Closeable {
                 .setNewX(this.taxi.getX()).setNewY(this.taxi.getY())
                 .build();
 
-        TaxiServiceGrpc.newBlockingStub(this.channel).changeRemoteTaxiDistrict(request);
+        try (TaxiChannelPool.Lease lease = this.leaseChannel()) {
+            lease.getBlockingStub().withDeadlineAfter(BROADCAST_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+                    .changeRemoteTaxiDistrict(request);
+        }
     }
 
     public void sendRemoveTaxi() {
         TaxiServiceOuterClass.TaxiRemoveRequest request = TaxiServiceOuterClass.TaxiRemoveRequest.newBuilder()
                 .setId(this.taxi.getId())
                 .build();
-        TaxiServiceGrpc.newBlockingStub(this.channel).removeTaxi(request);
+        try (TaxiChannelPool.Lease lease = this.leaseChannel()) {
+            lease.getBlockingStub()
+                    .withDeadlineAfter(BROADCAST_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).removeTaxi(request);
+        }
+    }
+
+    /**
+     * from now on the election messages are sent on a single long-lived stream to the remote taxi,
+     * which is opened with the first message. used for the next taxi in the ring, which receives most of them.
+     */
+    public void openElectionStream() {
+        this.electionMessageSender.openStream();
+    }
+
+    /**
+     * go back to one call per election message. the messages already sent on the stream
+     * are still acknowledged before the stream ends.
+     */
+    public void closeElectionStream() {
+        this.electionMessageSender.closeStream();
     }
 
+    /**
+     * the election messages do not block the caller: they are sent in background, in order,
+     * with a deadline and retried with backoff if the remote taxi does not answer
+     */
     public void sendForwardElectionIdOrTakeRide(RideRequestDto rideRequest,
                                                  RideElectionInfo.RideElectionId rideRequestElectionId) {
-        TaxiServiceOuterClass.RideElectionIdRequest request = TaxiServiceOuterClass.RideElectionIdRequest
-                .newBuilder()
+        TaxiServiceOuterClass.RideElectionIdRequest request = createRideElectionIdRequest(
+                rideRequest, rideRequestElectionId);
+
+        this.electionMessageSender.send("ELECTION info for ride " + rideRequest.getId(),
+                (stub, responseObserver) -> stub.forwardElectionIdOrTakeRide(request, responseObserver),
+                TaxiServiceOuterClass.ElectionStreamMessage.newBuilder().setElection(request).build());
+    }
+
+    /**
+     * forward the election ids of many rides in a single message, which the remote taxi processes in one pass
+     */
+    public void sendForwardElectionToken(List<RideRequestMessage> electionMessages) {
+        TaxiServiceOuterClass.RideElectionTokenRequest.Builder requestBuilder =
+                TaxiServiceOuterClass.RideElectionTokenRequest.newBuilder();
+        for (RideRequestMessage electionMessage : electionMessages)
+            requestBuilder.addElections(createRideElectionIdRequest(electionMessage.getRideRequest(),
+                    electionMessage.getRideElectionInfo().getRideElectionId()));
+        TaxiServiceOuterClass.RideElectionTokenRequest request = requestBuilder.build();
+
+        this.electionMessageSender.send("ELECTION token for " + electionMessages.size() + " rides",
+                (stub, responseObserver) -> stub.forwardElectionToken(request, responseObserver),
+                TaxiServiceOuterClass.ElectionStreamMessage.newBuilder().setToken(request).build());
+    }
+
+    private static TaxiServiceOuterClass.RideElectionIdRequest createRideElectionIdRequest(
+            RideRequestDto rideRequest, RideElectionInfo.RideElectionId rideRequestElectionId) {
+        int startCell = rideRequest.getStartCell();
+        int endCell = rideRequest.getEndCell();
+        return TaxiServiceOuterClass.RideElectionIdRequest.newBuilder()
                 .setRideRequestId(rideRequest.getId())
-                .setStartX(rideRequest.getStart().x)
-                .setStartY(rideRequest.getStart().y)
-                .setEndX(rideRequest.getEnd().x)
-                .setEndY(rideRequest.getEnd().y)
+                .setStartX(SmartCityCell.getX(startCell))
+                .setStartY(SmartCityCell.getY(startCell))
+                .setEndX(SmartCityCell.getX(endCell))
+                .setEndY(SmartCityCell.getY(endCell))
                 .setTaxiId(rideRequestElectionId.getTaxiId())
                 .setDistanceFromSP(rideRequestElectionId.getDistanceFromSP())
                 .setBatteryLevel(rideRequestElectionId.getBatteryLevel())
                 .build();
-
-        logger.info("Taxi {} sent ELECTION info for ride {} to taxi {}",
-                taxi.getId(), rideRequest.getId(), remoteTaxiInfo.getId());
-        TaxiServiceGrpc.newBlockingStub(this.channel).forwardElectionIdOrTakeRide(request);
     }
 
     public void sendMarkElectionConfirmed(int rideRequestId, int taxiId) {
         TaxiServiceOuterClass.RideElectionConfirmRequest request = TaxiServiceOuterClass.RideElectionConfirmRequest
                 .newBuilder().setRideRequestId(rideRequestId).setTaxiId(taxiId).build();
 
-        logger.info("Taxi {} sent ELECTED for ride {} to taxi {}",
-                taxi.getId(), rideRequestId, remoteTaxiInfo.getId());
-        TaxiServiceGrpc.newBlockingStub(this.channel).markElectionConfirmed(request);
+        this.electionMessageSender.send("ELECTED for ride " + rideRequestId,
+                (stub, responseObserver) -> stub.markElectionConfirmed(request, responseObserver),
+                TaxiServiceOuterClass.ElectionStreamMessage.newBuilder().setElected(request).build());
+    }
+
+    /**
+     * relay a district broadcast in background, in order with the election messages
+     */
+    public void sendDistrictBroadcast(TaxiServiceOuterClass.DistrictBroadcastRequest request) {
+        this.electionMessageSender.send(getDistrictBroadcastDescription(request),
+                (stub, responseObserver) -> stub.relayDistrictBroadcast(request, responseObserver),
+                TaxiServiceOuterClass.ElectionStreamMessage.newBuilder().setBroadcast(request).build());
+    }
+
+    /**
+     * relay a district broadcast and wait until the subtree of the remote taxi has received it
+     */
+    public void sendDistrictBroadcastAndWait(TaxiServiceOuterClass.DistrictBroadcastRequest request) {
+        try (TaxiChannelPool.Lease lease = this.leaseChannel()) {
+            lease.getBlockingStub().relayDistrictBroadcast(request);
+        }
+        logger.info("Taxi {} relayed {} to taxi {}",
+                taxi.getId(), getDistrictBroadcastDescription(request), remoteTaxiInfo.getId());
+    }
+
+    private static String getDistrictBroadcastDescription(TaxiServiceOuterClass.DistrictBroadcastRequest request) {
+        return request.hasElected()
+                ? "ELECTED broadcast for ride " + request.getElected().getRideRequestId()
+                : "RECHARGE-FREE broadcast of taxi " + request.getRechargeFree().getTaxiId();
     }
 
     public boolean sendAskRechargeRequestApproval() {
@@ -122,10 +219,9 @@ public class NetworkTaxiConnection implements Closeable {
                 .newBuilder().setTaxiId(this.taxi.getId()).setRechargeTs(this.taxi.getLocalRechargeRequestTs())
                 .build();
 
-        TaxiServiceOuterClass.RechargeInfoResponse response = TaxiServiceGrpc.newBlockingStub(this.channel)
-                .askRechargeRequestApproval(request);
-
-        return response.getOk();
+        try (TaxiChannelPool.Lease lease = this.leaseChannel()) {
+            return lease.getBlockingStub().askRechargeRequestApproval(request).getOk();
+        }
     }
 
     public void sendUpdateRechargeRequestApproval() {
@@ -134,7 +230,223 @@ public class NetworkTaxiConnection implements Closeable {
 
         logger.info("Taxi {} sent RECHARGE-FREE update to taxi {}",
                 taxi.getId(), remoteTaxiInfo.getId());
-        TaxiServiceGrpc.newBlockingStub(this.channel).updateRechargeRequestApproval(request);
+        try (TaxiChannelPool.Lease lease = this.leaseChannel()) {
+            lease.getBlockingStub().updateRechargeRequestApproval(request);
+        }
+    }
+
+    private interface ElectionCall {
+        void start(TaxiServiceGrpc.TaxiServiceStub stub, StreamObserver<Empty> responseObserver);
+    }
+
+    private static class ElectionMessage {
+        private final String description;
+        private final ElectionCall call;
+        private final TaxiServiceOuterClass.ElectionStreamMessage streamMessage;
+
+        public ElectionMessage(String description, ElectionCall call,
+                               TaxiServiceOuterClass.ElectionStreamMessage streamMessage) {
+            this.description = description;
+            this.call = call;
+            this.streamMessage = streamMessage;
+        }
+    }
+
+    /**
+     * a stream of election messages, which are acknowledged by the remote taxi in the same order
+     */
+    private static class ElectionStream {
+        private TaxiChannelPool.Lease lease;
+        private StreamObserver<TaxiServiceOuterClass.ElectionStreamMessage> requestObserver;
+        // sent on the stream but not acknowledged yet, guarded by the sender
+        private final Deque<ElectionMessage> unackedMessages = new ArrayDeque<>();
+    }
+
+    /**
+     * sends the election messages to the remote taxi one at a time, so that they arrive in the same order
+     * as when they were sent by blocking calls. the next message starts from the callback of the previous one,
+     * so no thread waits for the network.
+     * a message which is not acknowledged within the deadline is retried: the receiver may get it twice,
+     * which the election tolerates, since an equal election id only restarts the election.
+     * when the stream is open the messages are written on it instead, without waiting for the previous ones.
+     * if the stream breaks, the messages it did not acknowledge are sent again one call at a time,
+     * and a new stream is opened once they have all been delivered.
+     */
+    private class ElectionMessageSender {
+        // messages to send one call at a time
+        private final Deque<ElectionMessage> pendingMessages = new ArrayDeque<>();
+        private boolean isSending = false;
+        private boolean isClosed = false;
+        private boolean isStreaming = false;
+        // null until the first message is sent after opening, or after the stream breaks
+        private ElectionStream stream;
+
+        public void send(String description, ElectionCall call,
+                         TaxiServiceOuterClass.ElectionStreamMessage streamMessage) {
+            ElectionMessage message = new ElectionMessage(description, call, streamMessage);
+            synchronized (this) {
+                if (this.isClosed)
+                    return;
+                // the stream is used only when no message waits for a call, otherwise the order would change
+                if (this.isStreaming && this.pendingMessages.isEmpty()) {
+                    this.sendOnStream(message);
+                    return;
+                }
+                this.pendingMessages.addLast(message);
+                if (this.isSending)
+                    return;
+                this.isSending = true;
+            }
+            this.sendFirst(0);
+        }
+
+        public synchronized void openStream() {
+            this.isStreaming = true;
+        }
+
+        public synchronized void closeStream() {
+            this.isStreaming = false;
+            this.completeStream();
+        }
+
+        public synchronized void close() {
+            this.isClosed = true;
+            this.pendingMessages.clear();
+            this.isStreaming = false;
+            this.completeStream();
+        }
+
+        private void completeStream() {
+            assert Thread.holdsLock(this);
+
+            if (this.stream != null) {
+                this.stream.requestObserver.onCompleted();
+                this.stream = null;
+            }
+        }
+
+        private void sendOnStream(ElectionMessage message) {
+            assert Thread.holdsLock(this);
+
+            if (this.stream == null)
+                this.stream = this.startStream();
+            this.stream.unackedMessages.addLast(message);
+            this.stream.requestObserver.onNext(message.streamMessage);
+        }
+
+        private ElectionStream startStream() {
+            ElectionStream electionStream = new ElectionStream();
+            // the channel is leased until the stream ends
+            electionStream.lease = leaseChannel();
+            // wait for ready: the messages written while the channel is connecting are buffered by gRPC
+            electionStream.requestObserver = electionStream.lease.getAsyncStub().withWaitForReady().electionStream(
+                    new StreamObserver<TaxiServiceOuterClass.ElectionStreamAck>() {
+                        @Override
+                        public void onNext(TaxiServiceOuterClass.ElectionStreamAck ack) {
+                            ElectionMessage message;
+                            synchronized (ElectionMessageSender.this) {
+                                message = electionStream.unackedMessages.pollFirst();
+                            }
+                            if (message != null)
+                                logger.info("Taxi {} sent {} to taxi {} on the election stream",
+                                        taxi.getId(), message.description, remoteTaxiInfo.getId());
+                        }
+
+                        @Override
+                        public void onError(Throwable t) {
+                            electionStream.lease.close();
+                            resendUnackedMessages(electionStream, t);
+                        }
+
+                        @Override
+                        public void onCompleted() {
+                            electionStream.lease.close();
+                            resendUnackedMessages(electionStream, null);
+                        }
+                    });
+            logger.info("Taxi {} opened the election stream to taxi {}", taxi.getId(), remoteTaxiInfo.getId());
+            return electionStream;
+        }
+
+        private void resendUnackedMessages(ElectionStream electionStream, Throwable t) {
+            synchronized (this) {
+                if (this.stream == electionStream)
+                    this.stream = null;
+                if (this.isClosed || electionStream.unackedMessages.isEmpty())
+                    return;
+
+                logger.warn("Taxi {} lost the election stream to taxi {}, {} messages are sent again: {}",
+                        taxi.getId(), remoteTaxiInfo.getId(), electionStream.unackedMessages.size(),
+                        t == null ? "completed" : t.getMessage());
+                // they were sent before any message which is still waiting for a call
+                while (!electionStream.unackedMessages.isEmpty())
+                    this.pendingMessages.addFirst(electionStream.unackedMessages.pollLast());
+                if (this.isSending)
+                    return;
+                this.isSending = true;
+            }
+            this.sendFirst(0);
+        }
+
+        private void sendFirst(int attempt) {
+            ElectionMessage message;
+            synchronized (this) {
+                if (this.pendingMessages.isEmpty()) {
+                    this.isSending = false;
+                    return;
+                }
+                message = this.pendingMessages.peekFirst();
+            }
+
+            // wait for ready: while the channel is reconnecting the call waits until the deadline
+            // instead of failing at once
+            TaxiChannelPool.Lease lease = leaseChannel();
+            message.call.start(lease.getAsyncStub().withWaitForReady()
+                            .withDeadlineAfter(ELECTION_RPC_DEADLINE_MILLIS, TimeUnit.MILLISECONDS),
+                    new StreamObserver<Empty>() {
+                        @Override
+                        public void onNext(Empty value) {
+                        }
+
+                        @Override
+                        public void onError(Throwable t) {
+                            lease.close();
+                            if (attempt < ELECTION_RPC_MAX_RETRIES && !isClosed()) {
+                                long backoffMillis = (long) ELECTION_RPC_RETRY_BACKOFF_MILLIS << attempt;
+                                logger.warn("Taxi {} could not send {} to taxi {}, retrying in {} ms: {}",
+                                        taxi.getId(), message.description, remoteTaxiInfo.getId(),
+                                        backoffMillis, t.getMessage());
+                                electionRetryScheduler.schedule(() -> sendFirst(attempt + 1),
+                                        backoffMillis, TimeUnit.MILLISECONDS);
+                                return;
+                            }
+
+                            if (!isClosed())
+                                logger.error("Taxi {} gave up sending {} to taxi {}",
+                                        taxi.getId(), message.description, remoteTaxiInfo.getId(), t);
+                            completeFirst();
+                        }
+
+                        @Override
+                        public void onCompleted() {
+                            lease.close();
+                            logger.info("Taxi {} sent {} to taxi {}",
+                                    taxi.getId(), message.description, remoteTaxiInfo.getId());
+                            completeFirst();
+                        }
+                    });
+        }
+
+        private void completeFirst() {
+            synchronized (this) {
+                this.pendingMessages.pollFirst();
+            }
+            this.sendFirst(0);
+        }
+
+        private synchronized boolean isClosed() {
+            return this.isClosed;
+        }
     }
 
     @Override
@@ -0,0 +1,25 @@
+package unimi.dsp.taxi;
+
+/**
+ * the tree along which a district broadcast is relayed. the taxis are numbered by rank, the originator
+ * has rank 0 and the taxi with rank r forwards the message to the ranks fanOut * r + 1 ... fanOut * r + fanOut,
+ * so each taxi sends at most fanOut messages and the message reaches n taxis in O(log n) hops.
+ */
+final class RelayTree {
+    private RelayTree() {
+    }
+
+    static int getFirstChildRank(int rank, int fanOut) {
+        return fanOut * rank + 1;
+    }
+
+    /**
+     * @return the number of children of the taxi with rank `rank` in a tree of `size` taxis
+     */
+    static int getChildrenNum(int rank, int size, int fanOut) {
+        int firstChildRank = getFirstChildRank(rank, fanOut);
+        if (firstChildRank >= size)
+            return 0;
+        return Math.min(fanOut, size - firstChildRank);
+    }
+}
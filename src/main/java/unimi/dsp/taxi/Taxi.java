@@ -17,13 +17,14 @@ import unimi.dsp.dto.TaxiInfoDto;
 import unimi.dsp.model.types.election.RideElectionInfo;
 import unimi.dsp.model.types.District;
 import unimi.dsp.model.types.election.RideRequestMessage;
+import unimi.dsp.model.types.SmartCityCell;
 import unimi.dsp.model.types.SmartCityPosition;
 import unimi.dsp.model.types.TaxiStats;
 import unimi.dsp.model.types.concurrency.ThreadSafeQueue;
-import unimi.dsp.sensors.Buffer;
-import unimi.dsp.sensors.SlidingWindowBuffer;
+import unimi.dsp.sensors.SensorPipeline;
 import unimi.dsp.sensors.simulators.PM10Simulator;
-import unimi.dsp.sensors.simulators.Simulator;
+import unimi.dsp.sensors.simulators.SensorSimulator;
+import unimi.dsp.sensors.simulators.SensorType;
 import unimi.dsp.taxi.services.grpc.TaxiService;
 import unimi.dsp.taxi.services.mqtt.SETATaxiPubSub;
 import unimi.dsp.taxi.services.rest.AdminService;
@@ -35,43 +36,55 @@ import unimi.dsp.util.ConcurrencyUtils;
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 public class Taxi implements Closeable  {
     private static final ConfigurationManager configurationManager = ConfigurationManager.getInstance();
     private static final Logger logger = LogManager.getLogger(Taxi.class.getName());
+    private static final int BROADCAST_TIMEOUT_MILLIS = configurationManager.getBroadcastTimeoutMillis();
 
     private final int id;
     private final String host;
     private final int port;
     private final TaxiConfig taxiConfig;
     private volatile int batteryLevel;
-    // x and y are volatile because they are never updated at the same time by different threads,
-    // but they could be read by different threads
-    private volatile int x;
-    private volatile int y;
+    // the position packed in a `SmartCityCell`, so x and y are always read and written together.
+    // it is volatile because it is never updated at the same time by different threads,
+    // but it could be read by different threads
+    private volatile int cell;
     // map that associate a taxi id with a connection to the corresponding taxi in the network
     private final Map<Integer, NetworkTaxiConnection> networkTaxis;
+    // the election rings of the districts, built from network taxis. it is replaced, never modified,
+    // under the lock of network taxis, so the readers do not lock
+    private volatile Map<District, DistrictRing> districtRings = new HashMap<>();
     private volatile TaxiStatus status;
     // recharging
     private volatile long localRechargeRequestTs;
     // I have approved the requests coming from these taxis. this means that I cannot recharge
     // until I get back an OK from them (if I have approved them it means they have the priority).
     private final Set<Integer> rechargeAwaitingTaxiIds;
+    // I have answered no to the recharge requests of these taxis, so they wait for my RECHARGE-FREE.
+    // guarded by this
+    private final Set<Integer> deferredRechargeTaxiIds = new HashSet<>();
     // the key of the outer map represents the ride request, while the key of the inner map
     // is the currently greater id of that election
     private final Map<RideRequestDto, RideElectionInfo> rideRequestElectionsMap;
     private final ThreadSafeQueue<RideRequestMessage> rideRequestMessages;
     private final RideRequestMessageProcessor rideRequestMessageProcessor;
+    // the connection to the next taxi in the ring, which has the election stream open. guarded by this
+    private NetworkTaxiConnection electionStreamConnection;
+    // with the election batching, the election ids to forward are collected here during a pass
+    // of the message processor and sent together as a single token. guarded by this
+    private final List<RideRequestMessage> electionToken = new ArrayList<>();
 
     // statistics
-    private Simulator pollutionDataProvider;
+    private final SensorPipeline sensorPipeline;
     private final Thread pollutionCollectingThread;
     private volatile double kmsTraveled = 0;
     private final Set<Integer> takenRides;
     // lock objects
     private final Object lockStats = new Object();
-    private final Object lockTaxiPosition = new Object();
 
     // for grpc communication
     private Server grpcServer;
@@ -100,15 +113,17 @@ public class Taxi implements Closeable  {
         this.rideRequestMessages = new ThreadSafeQueue<>();
         this.rideRequestMessageProcessor = new RideRequestMessageProcessor();
         this.rechargeAwaitingTaxiIds = new HashSet<>();
-        Buffer buffer = new SlidingWindowBuffer(taxiConfig.slidingWindowBufferSize,
-                taxiConfig.slidingWindowOverlappingFactor);
-        this.initializeSimulator(buffer);
-        this.pollutionCollectingThread = new StatsCollectorThread(buffer,
+        this.sensorPipeline = new SensorPipeline(taxiConfig.slidingWindowBufferSize,
+                taxiConfig.slidingWindowOverlappingFactor, configurationManager.getMaxSensorAveragesPerUpload());
+        this.initializeSensors(this.sensorPipeline);
+        this.pollutionCollectingThread = new StatsCollectorThread(this.sensorPipeline,
                 taxiConfig.statsLoadingDelay, this, this.adminService);
     }
 
-    void initializeSimulator(Buffer buffer) {
-        this.pollutionDataProvider = new PM10Simulator(buffer);
+    void initializeSensors(SensorPipeline sensorPipeline) {
+        sensorPipeline.addSimulator(PM10Simulator::new);
+        for (Map.Entry<SensorType, Long> sensor : SensorType.parseSamplingPeriods(this.taxiConfig.sensors).entrySet())
+            sensorPipeline.addSensor(new SensorSimulator(sensor.getKey(), sensor.getValue()));
     }
 
     public int getId() {
@@ -124,11 +139,15 @@ public class Taxi implements Closeable  {
     }
 
     public int getX() {
-        return x;
+        return SmartCityCell.getX(this.cell);
     }
 
     public int getY() {
-        return y;
+        return SmartCityCell.getY(this.cell);
+    }
+
+    public int getCell() {
+        return this.cell;
     }
 
     public int getBatteryLevel() {
@@ -150,60 +169,101 @@ public class Taxi implements Closeable  {
     }
 
     public District getDistrict() {
-        return District.fromPosition(this.getPosition());
+        return District.fromCell(this.cell);
     }
     public SmartCityPosition getPosition() {
-        synchronized (this.lockTaxiPosition) {
-            return new SmartCityPosition(this.x, this.y);
-        }
+        return SmartCityCell.toPosition(this.cell);
     }
 
+    // the connections must be added and removed by the methods below, which keep the district rings updated
     public Map<Integer, NetworkTaxiConnection> getNetworkTaxiConnections() {
         return networkTaxis;
     }
 
-    public ThreadSafeQueue<RideRequestMessage> getRideRequestMessagesQueue() {
-        return rideRequestMessages;
+    public void addNetworkTaxiConnection(NetworkTaxiConnection taxiConnection) {
+        synchronized (this.networkTaxis) {
+            NetworkTaxiConnection oldTaxiConnection = this.networkTaxis.put(
+                    taxiConnection.getRemoteTaxiId(), taxiConnection);
+            Map<District, DistrictRing> newDistrictRings = new HashMap<>(this.districtRings);
+            if (oldTaxiConnection != null && oldTaxiConnection.getRemoteTaxiDistrict() != null)
+                newDistrictRings.computeIfPresent(oldTaxiConnection.getRemoteTaxiDistrict(),
+                        (district, ring) -> ring.without(oldTaxiConnection.getRemoteTaxiId()));
+            if (taxiConnection.getRemoteTaxiDistrict() != null)
+                newDistrictRings.put(taxiConnection.getRemoteTaxiDistrict(),
+                        getDistrictRing(newDistrictRings, taxiConnection.getRemoteTaxiDistrict())
+                                .with(taxiConnection));
+            this.districtRings = newDistrictRings;
+        }
     }
 
-    public double getDistanceFromPosition(SmartCityPosition position) {
-        double deltaX = this.getX() - position.x;
-        double deltaY = this.getY() - position.y;
-        return Math.sqrt(deltaX * deltaX + deltaY * deltaY);
+    /**
+     * @return the removed connection, or null if the taxi is not in the network
+     */
+    public NetworkTaxiConnection removeNetworkTaxiConnection(int taxiId) {
+        synchronized (this.networkTaxis) {
+            NetworkTaxiConnection taxiConnection = this.networkTaxis.remove(taxiId);
+            if (taxiConnection != null && taxiConnection.getRemoteTaxiDistrict() != null) {
+                Map<District, DistrictRing> newDistrictRings = new HashMap<>(this.districtRings);
+                newDistrictRings.computeIfPresent(taxiConnection.getRemoteTaxiDistrict(),
+                        (district, ring) -> ring.without(taxiId));
+                this.districtRings = newDistrictRings;
+            }
+            return taxiConnection;
+        }
     }
 
-    public Collection<NetworkTaxiConnection> getTaxiConnectionsInSameDistrict() {
-        District curDistrict = this.getDistrict();
+    public void changeNetworkTaxiDistrict(int taxiId, District newDistrict) {
         synchronized (this.networkTaxis) {
-            return this.networkTaxis.values().stream()
-                    .filter(conn -> conn.getRemoteTaxiDistrict().equals(curDistrict))
-                    .collect(Collectors.toList());
+            NetworkTaxiConnection taxiConnection = this.networkTaxis.get(taxiId);
+            if (taxiConnection == null)
+                return;
+
+            this.removeNetworkTaxiConnection(taxiId);
+            taxiConnection.setRemoteTaxiDistrict(newDistrict);
+            this.addNetworkTaxiConnection(taxiConnection);
         }
     }
 
-    public Optional<NetworkTaxiConnection> getNextDistrictTaxiConnection() {
-        District curDistrict = this.getDistrict();
-        // I am synchronizing because I access twice to network takis in different places
+    // used when many connections change at once
+    private void rebuildDistrictRings() {
         synchronized (this.networkTaxis) {
-            Collection<Integer> districtTaxiIds = this.getDistrictTaxiIds(curDistrict);
-            if (districtTaxiIds.isEmpty())
-                return Optional.empty();
-            List<Integer> sortedIds = districtTaxiIds.stream().sorted().collect(Collectors.toList());
+            Map<District, DistrictRing> newDistrictRings = new HashMap<>();
+            for (NetworkTaxiConnection taxiConnection : this.networkTaxis.values())
+                if (taxiConnection.getRemoteTaxiDistrict() != null)
+                    newDistrictRings.put(taxiConnection.getRemoteTaxiDistrict(),
+                            getDistrictRing(newDistrictRings, taxiConnection.getRemoteTaxiDistrict())
+                                    .with(taxiConnection));
+            this.districtRings = newDistrictRings;
+        }
+    }
 
-            Optional<Integer> optNextId = sortedIds.stream().filter(id -> id > this.id).findFirst();
-            int nextId = optNextId.orElseGet(() -> sortedIds.get(0));
+    private static DistrictRing getDistrictRing(Map<District, DistrictRing> districtRings, District district) {
+        return districtRings.getOrDefault(district, DistrictRing.EMPTY);
+    }
 
-            return Optional.of(this.networkTaxis.get(nextId));
-        }
+    public ThreadSafeQueue<RideRequestMessage> getRideRequestMessagesQueue() {
+        return rideRequestMessages;
+    }
+
+    public double getDistanceFromPosition(SmartCityPosition position) {
+        return this.getDistanceFromCell(SmartCityCell.fromPosition(position));
+    }
+
+    public double getDistanceFromCell(int cell) {
+        return SmartCityCell.getDistance(this.cell, cell);
+    }
+
+    public Collection<NetworkTaxiConnection> getTaxiConnectionsInSameDistrict() {
+        return getDistrictRing(this.districtRings, this.getDistrict()).getConnections();
+    }
+
+    public Optional<NetworkTaxiConnection> getNextDistrictTaxiConnection() {
+        return Optional.ofNullable(getDistrictRing(this.districtRings, this.getDistrict()).getNext(this.id));
     }
 
     public Collection<Integer> getDistrictTaxiIds(District district) {
-        synchronized (this.networkTaxis) {
-            return this.networkTaxis.entrySet().stream()
-                    .filter(entry -> entry.getValue().getRemoteTaxiDistrict().equals(district))
-                    .map(Map.Entry::getKey)
-                    .collect(Collectors.toList());
-        }
+        return Arrays.stream(getDistrictRing(this.districtRings, district).getTaxiIds())
+                .boxed().collect(Collectors.toList());
     }
 
     // synchronized because I am accessing the ride election map
@@ -212,6 +272,7 @@ public class Taxi implements Closeable  {
                 .filter(e -> e.getValue().getRideElectionState()
                         .equals(RideElectionInfo.RideElectionState.ELECTION))
                 .forEach(e -> this.handleRideElectionId(e.getKey(), e.getValue().getRideElectionId()));
+        this.flushElectionToken();
     }
 
     public void enterInSETANetwork() {
@@ -241,7 +302,7 @@ public class Taxi implements Closeable  {
     }
 
     private void startCollectingPollutionData() {
-        this.pollutionDataProvider.start();
+        this.sensorPipeline.start();
         this.pollutionCollectingThread.start();
     }
 
@@ -272,11 +333,10 @@ public class Taxi implements Closeable  {
 
     void registerToServer() {
         NewTaxiDto newTaxi = this.adminService.registerTaxi(new TaxiInfoDto(this.id, this.host, this.port));
-        this.x = newTaxi.getX();
-        this.y = newTaxi.getY();
+        this.cell = SmartCityCell.of(newTaxi.getX(), newTaxi.getY());
         synchronized (this.networkTaxis) {
             for (TaxiInfoDto taxiInfoDto : newTaxi.getTaxiInfos()) {
-                this.networkTaxis.put(taxiInfoDto.getId(), new NetworkTaxiConnection(this, taxiInfoDto));
+                this.addNetworkTaxiConnection(new NetworkTaxiConnection(this, taxiInfoDto));
             }
         }
         logger.info("Taxi {} registered to server", this.id);
@@ -287,8 +347,9 @@ public class Taxi implements Closeable  {
         synchronized (this.networkTaxis) {
             taxiConnections = this.networkTaxis.values().toArray(new NetworkTaxiConnection[0]);
         }
-        ConcurrencyUtils.runThreadsConcurrentlyAndJoin(taxiConnections.length,
-                (i) -> taxiConnections[i].sendAddTaxi());
+        this.broadcast("ADD", taxiConnections, NetworkTaxiConnection::sendAddTaxi);
+        // the districts of the other taxis are known only now
+        this.rebuildDistrictRings();
 
         logger.info("Taxi {} presented itself to the other taxis", this.id);
     }
@@ -307,11 +368,19 @@ public class Taxi implements Closeable  {
 
         NetworkTaxiConnection[] taxiConnections = this.getTaxiConnectionsInSameDistrict()
                 .toArray(new NetworkTaxiConnection[0]);
+        // I wait for every answer: a slow taxi might be recharging, so skipping it would break the mutual
+        // exclusion, and a late yes could not be told apart from a no that is never followed by RECHARGE-FREE
+        List<ConcurrencyUtils.FanOutResult<Boolean>> approvals = ConcurrencyUtils.fanOut(taxiConnections.length,
+                (i) -> taxiConnections[i].sendAskRechargeRequestApproval());
         List<Integer> taxiIdsToWait = new ArrayList<>();
-        ConcurrencyUtils.runThreadsConcurrentlyAndJoin(taxiConnections.length, (i) -> {
-            if (!taxiConnections[i].sendAskRechargeRequestApproval())
+        for (int i = 0; i < taxiConnections.length; i++) {
+            ConcurrencyUtils.FanOutResult<Boolean> approval = approvals.get(i);
+            // as before, a taxi which cannot be reached does not hold the recharge station
+            if (!approval.isCompleted())
+                this.logBroadcastFailure("RECHARGE-ASK", taxiConnections[i], approval);
+            else if (!approval.getValue())
                 taxiIdsToWait.add(taxiConnections[i].getRemoteTaxiId());
-        });
+        }
 
         synchronized (this.rechargeAwaitingTaxiIds) {
             this.rechargeAwaitingTaxiIds.addAll(taxiIdsToWait);
@@ -320,16 +389,24 @@ public class Taxi implements Closeable  {
         this.accessTheRechargeStationIfPossible();
     }
 
+    /**
+     * the station has `rechargeStationCapacity` places, so the taxi can recharge while less than that many taxis
+     * are recharging or have the priority over it, i.e. while less than that many taxis have answered no.
+     * with one place this is the Ricart-Agrawala mutual exclusion, otherwise it is its Raymond generalization
+     */
     public void accessTheRechargeStationIfPossible() {
-        if (!this.getStatus().equals(TaxiStatus.WAITING_TO_RECHARGE))
-            return;
-
-        synchronized (this.rechargeAwaitingTaxiIds) {
-            if (!this.rechargeAwaitingTaxiIds.isEmpty())
+        // I synchronize so that two RECHARGE-FREE cannot both start the recharge
+        synchronized (this) {
+            if (!this.getStatus().equals(TaxiStatus.WAITING_TO_RECHARGE))
                 return;
-        }
 
-        this.setStatus(TaxiStatus.RECHARGING);
+            synchronized (this.rechargeAwaitingTaxiIds) {
+                if (this.rechargeAwaitingTaxiIds.size() >= this.taxiConfig.rechargeStationCapacity)
+                    return;
+            }
+
+            this.setStatus(TaxiStatus.RECHARGING);
+        }
         double distanceFromRechargeStation = this.getDistanceFromPosition(
                 this.getDistrict().getRechargeStationPosition());
         synchronized (this.lockStats) {
@@ -337,10 +414,7 @@ public class Taxi implements Closeable  {
         }
         SmartCityPosition rechargeStationPosition = this.getDistrict().getRechargeStationPosition();
         this.batteryLevel -= (distanceFromRechargeStation * this.taxiConfig.batteryConsumptionPerKm);
-        synchronized (this.lockTaxiPosition) {
-            this.x = rechargeStationPosition.x;
-            this.y = rechargeStationPosition.y;
-        }
+        this.cell = SmartCityCell.fromPosition(rechargeStationPosition);
         Thread t = new Thread(() -> {
             try {
                 Thread.sleep(this.taxiConfig.rechargeDelay);
@@ -349,17 +423,75 @@ public class Taxi implements Closeable  {
             }
 
             this.batteryLevel = this.taxiConfig.initialBatteryLevel;
-            this.informOtherTaxisRechargeStationIsFree();
-            this.setStatus(TaxiStatus.AVAILABLE);
+            if (this.taxiConfig.rechargeDeferredReplies) {
+                // the status changes together with the taking of the deferred taxis, otherwise a request
+                // arriving in the meanwhile would be deferred and never informed
+                NetworkTaxiConnection[] deferredTaxiConnections;
+                synchronized (this) {
+                    deferredTaxiConnections = this.takeDeferredRechargeTaxiConnections();
+                    this.setStatus(TaxiStatus.AVAILABLE);
+                }
+                this.broadcastWithoutTimeout("RECHARGE-FREE", deferredTaxiConnections,
+                        NetworkTaxiConnection::sendUpdateRechargeRequestApproval);
+            } else {
+                this.informOtherTaxisRechargeStationIsFree();
+                this.setStatus(TaxiStatus.AVAILABLE);
+            }
         });
         t.start();
     }
 
     public void informOtherTaxisRechargeStationIsFree() {
+        if (this.taxiConfig.rechargeDeferredReplies) {
+            NetworkTaxiConnection[] deferredTaxiConnections;
+            synchronized (this) {
+                deferredTaxiConnections = this.takeDeferredRechargeTaxiConnections();
+            }
+            this.broadcastWithoutTimeout("RECHARGE-FREE", deferredTaxiConnections,
+                    NetworkTaxiConnection::sendUpdateRechargeRequestApproval);
+            return;
+        }
+
+        if (this.taxiConfig.districtBroadcastRelay) {
+            this.relayDistrictBroadcast(this.newDistrictBroadcast()
+                    .setRechargeFree(TaxiServiceOuterClass.RechargeApprovalRequest.newBuilder()
+                            .setTaxiId(this.id))
+                    .build(), true);
+            return;
+        }
+
         NetworkTaxiConnection[] taxiConnections = this.getTaxiConnectionsInSameDistrict()
                 .toArray(new NetworkTaxiConnection[0]);
-        ConcurrencyUtils.runThreadsConcurrentlyAndJoin(taxiConnections.length,
-                (i) -> taxiConnections[i].sendUpdateRechargeRequestApproval());
+        this.broadcastWithoutTimeout("RECHARGE-FREE", taxiConnections,
+                NetworkTaxiConnection::sendUpdateRechargeRequestApproval);
+    }
+
+    /**
+     * called when this taxi answers no to the recharge request of `taxiId`. Without deferred replies
+     * the station being free is broadcast to the whole district, so nobody has to be remembered
+     */
+    public void deferRechargeRequest(int taxiId) {
+        assert Thread.holdsLock(this);
+
+        if (!this.taxiConfig.rechargeDeferredReplies)
+            return;
+        this.deferredRechargeTaxiIds.add(taxiId);
+    }
+
+    // the taxis which left the network in the meanwhile are not waiting anymore
+    private NetworkTaxiConnection[] takeDeferredRechargeTaxiConnections() {
+        assert Thread.holdsLock(this);
+
+        List<NetworkTaxiConnection> taxiConnections = new ArrayList<>();
+        synchronized (this.networkTaxis) {
+            for (int taxiId : this.deferredRechargeTaxiIds) {
+                NetworkTaxiConnection taxiConnection = this.networkTaxis.get(taxiId);
+                if (taxiConnection != null)
+                    taxiConnections.add(taxiConnection);
+            }
+        }
+        this.deferredRechargeTaxiIds.clear();
+        return taxiConnections.toArray(new NetworkTaxiConnection[0]);
     }
 
     public void takeRide(RideRequestDto rideRequest) {
@@ -373,13 +505,18 @@ public class Taxi implements Closeable  {
             .setRideElectionState(RideElectionInfo.RideElectionState.ELECTED);
         setaPubSub.publishRideConfirmation(new RideConfirmDto(rideRequest.getId()));
 
-        NetworkTaxiConnection[] districtTaxiConnections = this.getTaxiConnectionsInSameDistrict()
-                .toArray(new NetworkTaxiConnection[0]);
-        ConcurrencyUtils.runThreadsConcurrentlyAndJoin(districtTaxiConnections.length,
-                (i) -> districtTaxiConnections[i].sendMarkElectionConfirmed(rideRequest.getId(), this.id));
+        // the confirmations are sent in background, so the taxi is not locked while they travel
+        if (this.taxiConfig.districtBroadcastRelay)
+            this.relayDistrictBroadcast(this.newDistrictBroadcast()
+                    .setElected(TaxiServiceOuterClass.RideElectionConfirmRequest.newBuilder()
+                            .setRideRequestId(rideRequest.getId()).setTaxiId(this.id))
+                    .build(), false);
+        else
+            for (NetworkTaxiConnection districtTaxiConnection : this.getTaxiConnectionsInSameDistrict())
+                districtTaxiConnection.sendMarkElectionConfirmed(rideRequest.getId(), this.id);
 
         District oldDistrict = this.getDistrict();
-        if (!District.fromPosition(rideRequest.getEnd()).equals(oldDistrict))
+        if (!District.fromCell(rideRequest.getEndCell()).equals(oldDistrict))
             unsubscribeFromDistrictTopic();
         Thread rideSimulation = new Thread(() -> {
             try {
@@ -389,7 +526,7 @@ public class Taxi implements Closeable  {
                 throw new RuntimeException(e);
             }
 
-            double rideDistance = (this.getDistanceFromPosition(rideRequest.getStart()) +
+            double rideDistance = (this.getDistanceFromCell(rideRequest.getStartCell()) +
                     rideRequest.getDistanceBetweenRideStartAndEnd());
             synchronized (this.lockStats) {
                 this.kmsTraveled += rideDistance;
@@ -398,10 +535,7 @@ public class Taxi implements Closeable  {
             // I do not need to synchronize on battery level because it can be modified while driving
             // or recharging, that do not happen in parallel
             this.batteryLevel -= rideDistance * this.taxiConfig.batteryConsumptionPerKm;
-            synchronized (this.lockTaxiPosition) {
-                this.x = rideRequest.getEnd().x;
-                this.y = rideRequest.getEnd().y;
-            }
+            this.cell = rideRequest.getEndCell();
 
             synchronized (this) {
                 if (!oldDistrict.equals(this.getDistrict()))
@@ -440,8 +574,7 @@ public class Taxi implements Closeable  {
         synchronized (this.networkTaxis) {
             taxiConnections = this.networkTaxis.values().toArray(new NetworkTaxiConnection[0]);
         }
-        ConcurrencyUtils.runThreadsConcurrentlyAndJoin(taxiConnections.length,
-                (i) -> taxiConnections[i].sendChangeRemoteTaxiDistrict());
+        this.broadcast("CHANGE-DISTRICT", taxiConnections, NetworkTaxiConnection::sendChangeRemoteTaxiDistrict);
 
         logger.info("Taxi {} informed the other taxis that it is now in the district {}",
                 this.id, this.getDistrict());
@@ -452,7 +585,7 @@ public class Taxi implements Closeable  {
                 this.rideRequestMessages.put(new RideRequestMessage(
                     new RideElectionInfo(
                             new RideElectionInfo.RideElectionId(this.id,
-                                    this.getDistanceFromPosition(rideRequest.getStart()),
+                                    this.getDistanceFromCell(rideRequest.getStartCell()),
                                     this.batteryLevel),
                             RideElectionInfo.RideElectionState.ELECTION),
                     rideRequest)));
@@ -464,12 +597,59 @@ public class Taxi implements Closeable  {
         assert Thread.holdsLock(this);
 
         Optional<NetworkTaxiConnection> optNextTaxiInRing = this.getNextDistrictTaxiConnection();
-        if (optNextTaxiInRing.isPresent())
-            optNextTaxiInRing.get().sendForwardElectionIdOrTakeRide(rideRequest, rideElectionId);
+        if (this.taxiConfig.electionStreaming)
+            this.moveElectionStream(optNextTaxiInRing.orElse(null));
+        if (optNextTaxiInRing.isPresent()) {
+            if (this.taxiConfig.electionBatching)
+                this.electionToken.add(new RideRequestMessage(
+                        new RideElectionInfo(rideElectionId, RideElectionInfo.RideElectionState.ELECTION),
+                        rideRequest));
+            else
+                optNextTaxiInRing.get().sendForwardElectionIdOrTakeRide(rideRequest, rideElectionId);
+        }
         else if (this.getStatus().equals(TaxiStatus.AVAILABLE))
             this.takeRide(rideRequest);
     }
 
+    /**
+     * send the election ids collected by `handleRideElectionId` to the next taxi in the ring as one token,
+     * so a burst of rides costs a message per taxi instead of one per ride and taxi
+     */
+    void flushElectionToken() {
+        assert Thread.holdsLock(this);
+
+        if (this.electionToken.isEmpty())
+            return;
+        List<RideRequestMessage> electionMessages = new ArrayList<>(this.electionToken);
+        this.electionToken.clear();
+
+        Optional<NetworkTaxiConnection> optNextTaxiInRing = this.getNextDistrictTaxiConnection();
+        if (this.taxiConfig.electionStreaming)
+            this.moveElectionStream(optNextTaxiInRing.orElse(null));
+        if (optNextTaxiInRing.isPresent()) {
+            optNextTaxiInRing.get().sendForwardElectionToken(electionMessages);
+            return;
+        }
+        // the other taxis of the district left during the pass, so this taxi wins the first election
+        for (RideRequestMessage electionMessage : electionMessages)
+            if (this.getStatus().equals(TaxiStatus.AVAILABLE))
+                this.takeRide(electionMessage.getRideRequest());
+    }
+
+    // the election stream follows the next taxi in the ring, which changes when taxis enter, leave
+    // or change district
+    private void moveElectionStream(NetworkTaxiConnection nextTaxiConnection) {
+        assert Thread.holdsLock(this);
+
+        if (nextTaxiConnection == this.electionStreamConnection)
+            return;
+        if (this.electionStreamConnection != null)
+            this.electionStreamConnection.closeElectionStream();
+        if (nextTaxiConnection != null)
+            nextTaxiConnection.openElectionStream();
+        this.electionStreamConnection = nextTaxiConnection;
+    }
+
     void unsubscribeFromDistrictTopic() {
         District curDistrict = this.getDistrict();
         this.setaPubSub.unsubscribeFromDistrictTopic(curDistrict);
@@ -481,12 +661,111 @@ public class Taxi implements Closeable  {
         synchronized (this.networkTaxis) {
             taxiConnections = this.networkTaxis.values().toArray(new NetworkTaxiConnection[0]);
         }
-        ConcurrencyUtils.runThreadsConcurrentlyAndJoin(taxiConnections.length,
-                (i) -> taxiConnections[i].sendRemoveTaxi());
+        this.broadcast("REMOVE", taxiConnections, NetworkTaxiConnection::sendRemoveTaxi);
 
         logger.info("Taxi {} informed other taxis that it exited from the network", this.id);
     }
 
+    // a broadcast to the taxis of the district, which are ordered as the ring starting from this taxi
+    private TaxiServiceOuterClass.DistrictBroadcastRequest.Builder newDistrictBroadcast() {
+        TaxiServiceOuterClass.DistrictBroadcastRequest.Builder builder = TaxiServiceOuterClass
+                .DistrictBroadcastRequest.newBuilder()
+                .setRank(0)
+                .setFanOut(this.taxiConfig.districtBroadcastRelayFanOut)
+                .addTaxiIds(this.id);
+        for (int taxiId : getDistrictRing(this.districtRings, this.getDistrict()).getTaxiIdsAfter(this.id))
+            builder.addTaxiIds(taxiId);
+        return builder;
+    }
+
+    /**
+     * forward a district broadcast to the children of this taxi in the relay tree, which then forward it
+     * to their children. the tree is taken from the message, so every taxi agrees on it even if
+     * the district has changed in the meanwhile.
+     * @param wait if true, it returns when the subtrees of the children have received the message
+     */
+    public void relayDistrictBroadcast(TaxiServiceOuterClass.DistrictBroadcastRequest request, boolean wait) {
+        List<NetworkTaxiConnection> childConnections = new ArrayList<>();
+        List<TaxiServiceOuterClass.DistrictBroadcastRequest> childRequests = new ArrayList<>();
+        this.addRelayChildren(request, request.getRank(), childConnections, childRequests);
+
+        if (!wait) {
+            for (int i = 0; i < childConnections.size(); i++)
+                childConnections.get(i).sendDistrictBroadcast(childRequests.get(i));
+            return;
+        }
+
+        // only the RECHARGE-FREE broadcasts wait, and like the direct ones they are not timed out
+        List<ConcurrencyUtils.FanOutResult<Void>> results = ConcurrencyUtils.fanOut(childConnections.size(),
+                (i) -> {
+                    childConnections.get(i).sendDistrictBroadcastAndWait(childRequests.get(i));
+                    return null;
+                });
+        for (int i = 0; i < childConnections.size(); i++)
+            if (!results.get(i).isCompleted())
+                this.logBroadcastFailure("RECHARGE-FREE broadcast", childConnections.get(i), results.get(i));
+    }
+
+    // a child which is not in the network anymore is skipped, and its children are reached directly
+    private void addRelayChildren(TaxiServiceOuterClass.DistrictBroadcastRequest request, int rank,
+                                  List<NetworkTaxiConnection> childConnections,
+                                  List<TaxiServiceOuterClass.DistrictBroadcastRequest> childRequests) {
+        int firstChildRank = RelayTree.getFirstChildRank(rank, request.getFanOut());
+        int childrenNum = RelayTree.getChildrenNum(rank, request.getTaxiIdsCount(), request.getFanOut());
+        for (int childRank = firstChildRank; childRank < firstChildRank + childrenNum; childRank++) {
+            NetworkTaxiConnection childConnection;
+            synchronized (this.networkTaxis) {
+                childConnection = this.networkTaxis.get(request.getTaxiIds(childRank));
+            }
+
+            if (childConnection == null)
+                this.addRelayChildren(request, childRank, childConnections, childRequests);
+            else {
+                childConnections.add(childConnection);
+                childRequests.add(request.toBuilder().setRank(childRank).build());
+            }
+        }
+    }
+
+    // send the message to all the taxis at once and wait for them, not longer than the broadcast timeout
+    private void broadcast(String messageName, NetworkTaxiConnection[] taxiConnections,
+                           Consumer<NetworkTaxiConnection> send) {
+        List<ConcurrencyUtils.FanOutResult<Void>> results = ConcurrencyUtils.fanOut(taxiConnections.length,
+                (i) -> {
+                    send.accept(taxiConnections[i]);
+                    return null;
+                }, BROADCAST_TIMEOUT_MILLIS);
+        this.logBroadcastFailures(messageName, taxiConnections, results);
+    }
+
+    // same as `broadcast`, but it waits for all the taxis, because a taxi missing the message would wait for it forever
+    private void broadcastWithoutTimeout(String messageName, NetworkTaxiConnection[] taxiConnections,
+                                         Consumer<NetworkTaxiConnection> send) {
+        List<ConcurrencyUtils.FanOutResult<Void>> results = ConcurrencyUtils.fanOut(taxiConnections.length,
+                (i) -> {
+                    send.accept(taxiConnections[i]);
+                    return null;
+                });
+        this.logBroadcastFailures(messageName, taxiConnections, results);
+    }
+
+    private void logBroadcastFailures(String messageName, NetworkTaxiConnection[] taxiConnections,
+                                      List<ConcurrencyUtils.FanOutResult<Void>> results) {
+        for (int i = 0; i < taxiConnections.length; i++)
+            if (!results.get(i).isCompleted())
+                this.logBroadcastFailure(messageName, taxiConnections[i], results.get(i));
+    }
+
+    private void logBroadcastFailure(String messageName, NetworkTaxiConnection taxiConnection,
+                                     ConcurrencyUtils.FanOutResult<?> result) {
+        if (result.isTimedOut())
+            logger.warn("Taxi {} did not receive the answer to {} from taxi {} within {} ms",
+                    this.id, messageName, taxiConnection.getRemoteTaxiId(), BROADCAST_TIMEOUT_MILLIS);
+        else
+            logger.warn("Taxi {} could not send {} to taxi {}",
+                    this.id, messageName, taxiConnection.getRemoteTaxiId(), result.getError());
+    }
+
     private void unregisterFromServer() {
         this.adminService.unregisterTaxi(this.id);
         logger.info("Taxi {} unregistered from the server", this.id);
@@ -533,13 +812,14 @@ public class Taxi implements Closeable  {
                 this.informOtherTaxisAboutExitingFromTheNetwork();
 
                 this.rideRequestMessageProcessor.interrupt();
-                this.pollutionDataProvider.stopMeGently();
+                this.sensorPipeline.close();
                 this.pollutionCollectingThread.interrupt();
                 this.unsubscribeFromDistrictTopic();
                 synchronized (this.networkTaxis) {
                     for (NetworkTaxiConnection conn : this.networkTaxis.values())
                         conn.close();
                     this.networkTaxis.clear();
+                    this.rebuildDistrictRings();
                 }
                 this.stopGRPCServer();
                 this.unregisterFromServer();
@@ -555,39 +835,18 @@ public class Taxi implements Closeable  {
         public void run() {
             try {
                 while (!this.isInterrupted()) {
-                    RideRequestMessage message = Taxi.this.rideRequestMessages.take();
-                    RideRequestDto rideRequest = message.getRideRequest();
-                    RideElectionInfo rideElectionInfo = message.getRideElectionInfo();
-
-                    Taxi.logger.info("Taxi {} received the ride request {}",
-                            Taxi.this.id, rideRequest.getId());
+                    // with the election batching, all the queued messages are processed in one pass
+                    // and the elections they forward leave together in one token
+                    List<RideRequestMessage> messages = Taxi.this.taxiConfig.electionBatching
+                            ? Taxi.this.rideRequestMessages.takeAll()
+                            : Collections.singletonList(Taxi.this.rideRequestMessages.take());
 
                     // I synchronize on taxi so that the status cannot change to recharging and
                     // the ride election map is not cleared in the meanwhile
                     synchronized (Taxi.this) {
-                        // if the district is different I do not want to process this request so continue
-                        if (!District.fromPosition(rideRequest.getStart()).equals(Taxi.this.getDistrict()))
-                            continue;
-
-                        if (Taxi.this.rideRequestElectionsMap.containsKey(rideRequest) &&
-                                Taxi.this.rideRequestElectionsMap.get(rideRequest).getRideElectionState()
-                                        .equals(RideElectionInfo.RideElectionState.ELECTED))
-                            continue;
-
-                        if (rideElectionInfo.getRideElectionState().equals(RideElectionInfo.RideElectionState.ELECTED)) {
-                            Taxi.this.rideRequestElectionsMap.put(rideRequest, rideElectionInfo);
-                            this.restartElectionsAssociatedToElectedTaxi(rideRequest,
-                                    rideElectionInfo.getRideElectionId().getTaxiId());
-                            continue;
-                        }
-
-                        if (Taxi.this.getStatus().equals(Taxi.TaxiStatus.AVAILABLE)) {
-                            if (Taxi.this.rideRequestElectionsMap.containsKey(rideRequest))
-                                electionLogicWhenAlreadyParticipant(rideRequest, rideElectionInfo.getRideElectionId());
-                            else
-                                electionLogicWhenNotParticipant(rideRequest, rideElectionInfo.getRideElectionId());
-                        } else
-                            electionLogicWhenUnavailable(rideRequest, rideElectionInfo.getRideElectionId());
+                        for (RideRequestMessage message : messages)
+                            this.processMessage(message);
+                        Taxi.this.flushElectionToken();
                     }
                 }
             } catch (InterruptedException e) {
@@ -595,6 +854,40 @@ public class Taxi implements Closeable  {
             }
         }
 
+        private void processMessage(RideRequestMessage message) {
+            assert Thread.holdsLock(Taxi.this);
+
+            RideRequestDto rideRequest = message.getRideRequest();
+            RideElectionInfo rideElectionInfo = message.getRideElectionInfo();
+
+            Taxi.logger.info("Taxi {} received the ride request {}",
+                    Taxi.this.id, rideRequest.getId());
+
+            // if the district is different I do not want to process this request so return
+            if (!District.fromCell(rideRequest.getStartCell()).equals(Taxi.this.getDistrict()))
+                return;
+
+            if (Taxi.this.rideRequestElectionsMap.containsKey(rideRequest) &&
+                    Taxi.this.rideRequestElectionsMap.get(rideRequest).getRideElectionState()
+                            .equals(RideElectionInfo.RideElectionState.ELECTED))
+                return;
+
+            if (rideElectionInfo.getRideElectionState().equals(RideElectionInfo.RideElectionState.ELECTED)) {
+                Taxi.this.rideRequestElectionsMap.put(rideRequest, rideElectionInfo);
+                this.restartElectionsAssociatedToElectedTaxi(rideRequest,
+                        rideElectionInfo.getRideElectionId().getTaxiId());
+                return;
+            }
+
+            if (Taxi.this.getStatus().equals(Taxi.TaxiStatus.AVAILABLE)) {
+                if (Taxi.this.rideRequestElectionsMap.containsKey(rideRequest))
+                    electionLogicWhenAlreadyParticipant(rideRequest, rideElectionInfo.getRideElectionId());
+                else
+                    electionLogicWhenNotParticipant(rideRequest, rideElectionInfo.getRideElectionId());
+            } else
+                electionLogicWhenUnavailable(rideRequest, rideElectionInfo.getRideElectionId());
+        }
+
         private void restartElectionsAssociatedToElectedTaxi(RideRequestDto rideRequest, int electedTaxiId) {
             // if the taxi winning the election is the greater id in an ongoing
             // election, then that election is restarted
@@ -652,7 +945,7 @@ public class Taxi implements Closeable  {
         private RideElectionInfo.RideElectionId createElectionIdFromRideRequest(RideRequestDto rideRequest) {
             return new RideElectionInfo.RideElectionId(
                     Taxi.this.getId(),
-                    Taxi.this.getDistanceFromPosition(rideRequest.getStart()),
+                    Taxi.this.getDistanceFromCell(rideRequest.getStartCell()),
                     Taxi.this.getBatteryLevel());
         }
 
@@ -694,7 +987,14 @@ public class Taxi implements Closeable  {
         private int slidingWindowBufferSize = configurationManager.getSlidingWindowBufferSize();
         private float slidingWindowOverlappingFactor = configurationManager.getSlidingWindowOverlappingFactor();
         private int statsLoadingDelay = configurationManager.getStatsLoadingDelay();
+        private String sensors = configurationManager.getTaxiSensors();
         private int initialBatteryLevel = 100;
+        private boolean electionStreaming = configurationManager.getElectionStreaming();
+        private boolean electionBatching = configurationManager.getElectionBatching();
+        private boolean districtBroadcastRelay = configurationManager.getDistrictBroadcastRelay();
+        private int districtBroadcastRelayFanOut = configurationManager.getDistrictBroadcastRelayFanOut();
+        private boolean rechargeDeferredReplies = configurationManager.getRechargeDeferredReplies();
+        private int rechargeStationCapacity = configurationManager.getRechargeStationCapacity();
 
         public TaxiConfig withRideDeliveryDelay(int rideDeliveryDelay) {
             this.rideDeliveryDelay = rideDeliveryDelay;
@@ -735,6 +1035,45 @@ public class Taxi implements Closeable  {
             this.statsLoadingDelay = statsLoadingDelay;
             return this;
         }
+
+        /**
+         * @param sensors a comma separated list of type:samplingPeriodMillis, see `SensorType`.
+         *                these sensors are sampled besides the PM10 simulator
+         */
+        public TaxiConfig withSensors(String sensors) {
+            this.sensors = sensors;
+            return this;
+        }
+
+        public TaxiConfig withElectionStreaming(boolean electionStreaming) {
+            this.electionStreaming = electionStreaming;
+            return this;
+        }
+
+        public TaxiConfig withElectionBatching(boolean electionBatching) {
+            this.electionBatching = electionBatching;
+            return this;
+        }
+
+        public TaxiConfig withRechargeDeferredReplies(boolean rechargeDeferredReplies) {
+            this.rechargeDeferredReplies = rechargeDeferredReplies;
+            return this;
+        }
+
+        public TaxiConfig withRechargeStationCapacity(int rechargeStationCapacity) {
+            this.rechargeStationCapacity = rechargeStationCapacity;
+            return this;
+        }
+
+        public TaxiConfig withDistrictBroadcastRelay(boolean districtBroadcastRelay) {
+            this.districtBroadcastRelay = districtBroadcastRelay;
+            return this;
+        }
+
+        public TaxiConfig withDistrictBroadcastRelayFanOut(int districtBroadcastRelayFanOut) {
+            this.districtBroadcastRelayFanOut = districtBroadcastRelayFanOut;
+            return this;
+        }
     }
 
     public static void main(String[] args) {
@@ -750,7 +1089,9 @@ public class Taxi implements Closeable  {
         ClientConfig config = new DefaultClientConfig();
         config.getClasses().add(JacksonJaxbJsonProvider.class);
         Client client = Client.create(config);
-        AdminServiceBase adminService = new AdminService(client, serverEndpoint);
+        AdminServiceBase adminService = configurationManager.getTaxiStatisticsBatching()
+                ? new AdminService(client, serverEndpoint, new AdminService.StatisticsBatchingConfig())
+                : new AdminService(client, serverEndpoint);
 
         // mqtt initialization
         MqttAsyncClient mqttClient = MQTTClientFactory.getClient();
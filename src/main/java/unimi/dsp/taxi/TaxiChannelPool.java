@@ -0,0 +1,150 @@
+package unimi.dsp.taxi;
+
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import unimi.dsp.util.ConfigurationManager;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * the gRPC channels to the other taxis. a channel is opened with the first call to a taxi and closed
+ * when no call has used it for `idleTimeoutMillis`, so a taxi keeps channels only to the taxis it talks to,
+ * which are mostly the ones in its district.
+ * the channels are shared by all the taxis of the process, and all of them use the default gRPC event loops.
+ */
+final class TaxiChannelPool implements Closeable {
+    private static final Logger logger = LogManager.getLogger(TaxiChannelPool.class.getName());
+    private static final TaxiChannelPool instance = new TaxiChannelPool(
+            ConfigurationManager.getInstance().getGrpcChannelIdleTimeoutMillis());
+
+    private final long idleTimeoutMillis;
+    // the key is host:port, guarded by this
+    private final Map<String, PooledChannel> channels = new HashMap<>();
+    private final ScheduledExecutorService evictionExecutor;
+
+    TaxiChannelPool(long idleTimeoutMillis) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.evictionExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "taxi-channel-eviction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long evictionPeriodMillis = Math.max(1, idleTimeoutMillis / 2);
+        this.evictionExecutor.scheduleAtFixedRate(this::evictIdleChannels,
+                evictionPeriodMillis, evictionPeriodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    static TaxiChannelPool getInstance() {
+        return instance;
+    }
+
+    /**
+     * the channel cannot be closed until the lease is closed
+     */
+    synchronized Lease lease(String host, int port) {
+        PooledChannel pooledChannel = this.channels.computeIfAbsent(host + ":" + port,
+                address -> new PooledChannel(host, port));
+        pooledChannel.leasesNum++;
+        return new Lease(pooledChannel);
+    }
+
+    synchronized int getChannelsNum() {
+        return this.channels.size();
+    }
+
+    void evictIdleChannels() {
+        List<PooledChannel> idleChannels = new ArrayList<>();
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            Iterator<PooledChannel> iterator = this.channels.values().iterator();
+            while (iterator.hasNext()) {
+                PooledChannel pooledChannel = iterator.next();
+                if (pooledChannel.leasesNum == 0 && now - pooledChannel.lastUseMillis >= this.idleTimeoutMillis) {
+                    iterator.remove();
+                    idleChannels.add(pooledChannel);
+                }
+            }
+        }
+
+        // shutdown does not wait for the channel to terminate
+        for (PooledChannel pooledChannel : idleChannels) {
+            pooledChannel.channel.shutdown();
+            logger.info("Closed the idle channel to {}:{}", pooledChannel.host, pooledChannel.port);
+        }
+    }
+
+    private synchronized void release(PooledChannel pooledChannel) {
+        pooledChannel.leasesNum--;
+        pooledChannel.lastUseMillis = System.currentTimeMillis();
+    }
+
+    @Override
+    public void close() {
+        this.evictionExecutor.shutdownNow();
+        synchronized (this) {
+            this.channels.values().forEach(pooledChannel -> pooledChannel.channel.shutdown());
+            this.channels.clear();
+        }
+    }
+
+    private static class PooledChannel {
+        private final String host;
+        private final int port;
+        private final ManagedChannel channel;
+        // the stubs are immutable and thread safe, so they are created once per channel
+        private final TaxiServiceGrpc.TaxiServiceBlockingStub blockingStub;
+        private final TaxiServiceGrpc.TaxiServiceStub asyncStub;
+        // guarded by the pool
+        private int leasesNum = 0;
+        private long lastUseMillis = System.currentTimeMillis();
+
+        public PooledChannel(String host, int port) {
+            this.host = host;
+            this.port = port;
+            this.channel = ManagedChannelBuilder.forAddress(host, port).usePlaintext().build();
+            this.blockingStub = TaxiServiceGrpc.newBlockingStub(this.channel);
+            this.asyncStub = TaxiServiceGrpc.newStub(this.channel);
+        }
+    }
+
+    /**
+     * the use of a channel by a call, it must be closed once the call has completed
+     */
+    final class Lease implements Closeable {
+        private final PooledChannel pooledChannel;
+        private boolean isClosed = false;
+
+        private Lease(PooledChannel pooledChannel) {
+            this.pooledChannel = pooledChannel;
+        }
+
+        TaxiServiceGrpc.TaxiServiceBlockingStub getBlockingStub() {
+            return this.pooledChannel.blockingStub;
+        }
+
+        TaxiServiceGrpc.TaxiServiceStub getAsyncStub() {
+            return this.pooledChannel.asyncStub;
+        }
+
+        // closing it twice does not release the channel twice
+        @Override
+        public void close() {
+            synchronized (TaxiChannelPool.this) {
+                if (this.isClosed)
+                    return;
+                this.isClosed = true;
+                release(this.pooledChannel);
+            }
+        }
+    }
+}
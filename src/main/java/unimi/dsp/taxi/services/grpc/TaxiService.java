@@ -15,6 +15,8 @@ import unimi.dsp.taxi.Taxi;
 import unimi.dsp.taxi.TaxiServiceGrpc;
 import unimi.dsp.taxi.TaxiServiceOuterClass;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 
 public class TaxiService extends TaxiServiceGrpc.TaxiServiceImplBase {
@@ -38,9 +40,7 @@ public class TaxiService extends TaxiServiceGrpc.TaxiServiceImplBase {
                         request.getX(), request.getY()
                 )));
 
-        synchronized (this.taxi.getNetworkTaxiConnections()) {
-            this.taxi.getNetworkTaxiConnections().put(request.getId(), taxiConnection);
-        }
+        this.taxi.addNetworkTaxiConnection(taxiConnection);
 
         responseObserver.onNext(
                 TaxiServiceOuterClass.TaxiAddResponse.newBuilder()
@@ -63,8 +63,7 @@ public class TaxiService extends TaxiServiceGrpc.TaxiServiceImplBase {
                 isThisPreviousTaxi = optNextDistrictConn.isPresent() &&
                         optNextDistrictConn.get().getRemoteTaxiId() == request.getId();
 
-                this.taxi.getNetworkTaxiConnections().get(request.getId()).close();
-                this.taxi.getNetworkTaxiConnections().remove(request.getId());
+                this.taxi.removeNetworkTaxiConnection(request.getId()).close();
             }
         }
 
@@ -94,8 +93,7 @@ public class TaxiService extends TaxiServiceGrpc.TaxiServiceImplBase {
                 isThisPreviousTaxi = optNextDistrictConn.isPresent() &&
                         optNextDistrictConn.get().getRemoteTaxiId() == request.getId();
 
-                this.taxi.getNetworkTaxiConnections().get(request.getId())
-                        .setRemoteTaxiDistrict(remoteDistrict);
+                this.taxi.changeNetworkTaxiDistrict(request.getId(), remoteDistrict);
             }
         }
 
@@ -109,26 +107,117 @@ public class TaxiService extends TaxiServiceGrpc.TaxiServiceImplBase {
     @Override
     public void forwardElectionIdOrTakeRide(TaxiServiceOuterClass.RideElectionIdRequest request,
                                  StreamObserver<Empty> responseObserver) {
-        RideRequestDto rideRequest = new RideRequestDto(request.getRideRequestId(),
-                new SmartCityPosition(request.getStartX(), request.getStartY()),
-                new SmartCityPosition(request.getEndX(), request.getEndY()));
-        RideElectionInfo.RideElectionId receivedElectionId = new RideElectionInfo.RideElectionId(
-                request.getTaxiId(), request.getDistanceFromSP(), request.getBatteryLevel());
-
-        this.taxi.getRideRequestMessagesQueue().put(new RideRequestMessage(
-                new RideElectionInfo(receivedElectionId, RideElectionInfo.RideElectionState.ELECTION),
-                rideRequest));
+        this.queueElectionMessage(request);
 
         responseObserver.onNext(Empty.newBuilder().build());
         responseObserver.onCompleted();
     }
 
+    @Override
+    public void forwardElectionToken(TaxiServiceOuterClass.RideElectionTokenRequest request,
+                                     StreamObserver<Empty> responseObserver) {
+        this.queueElectionToken(request);
+
+        responseObserver.onNext(Empty.getDefaultInstance());
+        responseObserver.onCompleted();
+    }
+
     @Override
     public void markElectionConfirmed(TaxiServiceOuterClass.RideElectionConfirmRequest request,
                                       StreamObserver<Empty> responseObserver) {
         responseObserver.onNext(Empty.getDefaultInstance());
         responseObserver.onCompleted();
 
+        this.queueElectedMessage(request);
+    }
+
+    // the messages of a stream arrive in order and each one is acknowledged after being queued,
+    // as the unary calls do
+    @Override
+    public StreamObserver<TaxiServiceOuterClass.ElectionStreamMessage> electionStream(
+            StreamObserver<TaxiServiceOuterClass.ElectionStreamAck> responseObserver) {
+        return new StreamObserver<TaxiServiceOuterClass.ElectionStreamMessage>() {
+            @Override
+            public void onNext(TaxiServiceOuterClass.ElectionStreamMessage message) {
+                if (message.hasElection())
+                    queueElectionMessage(message.getElection());
+                else if (message.hasElected())
+                    queueElectedMessage(message.getElected());
+                else if (message.hasToken())
+                    queueElectionToken(message.getToken());
+                else if (message.hasBroadcast() && message.getBroadcast().hasElected())
+                    relayElectedBroadcast(message.getBroadcast());
+
+                responseObserver.onNext(TaxiServiceOuterClass.ElectionStreamAck.getDefaultInstance());
+            }
+
+            @Override
+            public void onError(Throwable t) {
+            }
+
+            @Override
+            public void onCompleted() {
+                responseObserver.onCompleted();
+            }
+        };
+    }
+
+    // the ELECTED broadcasts are relayed in background, as the unary ELECTED messages.
+    // the originator of a RECHARGE-FREE broadcast waits for the whole tree instead, as it waits for
+    // the unary messages
+    @Override
+    public void relayDistrictBroadcast(TaxiServiceOuterClass.DistrictBroadcastRequest request,
+                                       StreamObserver<Empty> responseObserver) {
+        if (request.hasElected()) {
+            responseObserver.onNext(Empty.getDefaultInstance());
+            responseObserver.onCompleted();
+
+            this.relayElectedBroadcast(request);
+            return;
+        }
+
+        boolean isWaitingToRecharge = request.hasRechargeFree() &&
+                this.removeRechargeAwaitingTaxi(request.getRechargeFree().getTaxiId());
+        this.taxi.relayDistrictBroadcast(request, true);
+
+        responseObserver.onNext(Empty.getDefaultInstance());
+        responseObserver.onCompleted();
+
+        if (isWaitingToRecharge)
+            this.taxi.accessTheRechargeStationIfPossible();
+    }
+
+    private void relayElectedBroadcast(TaxiServiceOuterClass.DistrictBroadcastRequest request) {
+        this.queueElectedMessage(request.getElected());
+        this.taxi.relayDistrictBroadcast(request, false);
+    }
+
+    private void queueElectionMessage(TaxiServiceOuterClass.RideElectionIdRequest request) {
+        this.taxi.getRideRequestMessagesQueue().put(this.createElectionMessage(request));
+    }
+
+    // the elections of the token are queued together, so that the taxi processes them in one pass
+    private void queueElectionToken(TaxiServiceOuterClass.RideElectionTokenRequest request) {
+        List<RideRequestMessage> messages = new ArrayList<>(request.getElectionsCount());
+        for (TaxiServiceOuterClass.RideElectionIdRequest election : request.getElectionsList())
+            messages.add(this.createElectionMessage(election));
+
+        this.taxi.getRideRequestMessagesQueue().putAll(messages);
+    }
+
+    private RideRequestMessage createElectionMessage(TaxiServiceOuterClass.RideElectionIdRequest request) {
+        RideRequestDto rideRequest = new RideRequestDto(request.getRideRequestId(),
+                new SmartCityPosition(request.getStartX(), request.getStartY()),
+                new SmartCityPosition(request.getEndX(), request.getEndY()));
+        RideElectionInfo.RideElectionId receivedElectionId = new RideElectionInfo.RideElectionId(
+                request.getTaxiId(), request.getDistanceFromSP(), request.getBatteryLevel());
+
+        return new RideRequestMessage(
+                new RideElectionInfo(receivedElectionId, RideElectionInfo.RideElectionState.ELECTION),
+                rideRequest);
+    }
+
+    private void queueElectedMessage(TaxiServiceOuterClass.RideElectionConfirmRequest request) {
         int rideRequestId = request.getRideRequestId();
         // I create a fake ride request containing the ride request only because I just need the id
         // in order to avoid re-election of already confirmed ride requests
@@ -146,6 +235,7 @@ public class TaxiService extends TaxiServiceGrpc.TaxiServiceImplBase {
         synchronized (this.taxi) {
             Taxi.TaxiStatus status = this.taxi.getStatus();
             if (status.equals(Taxi.TaxiStatus.RECHARGING)) {
+                this.taxi.deferRechargeRequest(request.getTaxiId());
                 responseObserver.onNext(TaxiServiceOuterClass.RechargeInfoResponse.newBuilder()
                         .setOk(false).build());
                 responseObserver.onCompleted();
@@ -159,6 +249,8 @@ public class TaxiService extends TaxiServiceGrpc.TaxiServiceImplBase {
                 boolean isRequestConfirmed = request.getRechargeTs() == rechargeTs ?
                         this.taxi.getId() > request.getTaxiId() :
                         rechargeTs > request.getRechargeTs();
+                if (!isRequestConfirmed)
+                    this.taxi.deferRechargeRequest(request.getTaxiId());
 
                 responseObserver.onNext(TaxiServiceOuterClass.RechargeInfoResponse.newBuilder()
                         .setOk(isRequestConfirmed).build());
@@ -177,21 +269,27 @@ public class TaxiService extends TaxiServiceGrpc.TaxiServiceImplBase {
     @Override
     public void updateRechargeRequestApproval(TaxiServiceOuterClass.RechargeApprovalRequest request,
                                               StreamObserver<Empty> responseObserver) {
+        boolean isWaitingToRecharge = this.removeRechargeAwaitingTaxi(request.getTaxiId());
+
+        responseObserver.onNext(Empty.getDefaultInstance());
+        responseObserver.onCompleted();
+
+        if (isWaitingToRecharge)
+            this.taxi.accessTheRechargeStationIfPossible();
+    }
+
+    /**
+     * @return false if this taxi is not waiting to recharge, so it was not waiting for `taxiId`
+     */
+    private boolean removeRechargeAwaitingTaxi(int taxiId) {
         synchronized (this.taxi) {
-            if (!this.taxi.getStatus().equals(Taxi.TaxiStatus.WAITING_TO_RECHARGE)) {
-                responseObserver.onNext(Empty.getDefaultInstance());
-                responseObserver.onCompleted();
-                return;
-            }
+            if (!this.taxi.getStatus().equals(Taxi.TaxiStatus.WAITING_TO_RECHARGE))
+                return false;
         }
 
         synchronized (this.taxi.getRechargeAwaitingTaxiIds()) {
-            this.taxi.getRechargeAwaitingTaxiIds().remove(request.getTaxiId());
+            this.taxi.getRechargeAwaitingTaxiIds().remove(taxiId);
         }
-
-        responseObserver.onNext(Empty.getDefaultInstance());
-        responseObserver.onCompleted();
-
-        this.taxi.accessTheRechargeStationIfPossible();
+        return true;
     }
 }
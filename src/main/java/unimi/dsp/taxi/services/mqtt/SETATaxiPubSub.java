@@ -8,7 +8,7 @@ import unimi.dsp.dto.RideRequestDto;
 import unimi.dsp.model.types.District;
 import unimi.dsp.taxi.SETATaxiPubSubBase;
 import unimi.dsp.util.ConfigurationManager;
-import unimi.dsp.util.SerializationUtil;
+import unimi.dsp.util.RideMessageCodec;
 
 import java.util.function.Consumer;
 
@@ -19,8 +19,15 @@ public class SETATaxiPubSub implements SETATaxiPubSubBase {
     private static final Logger logger = LogManager.getLogger(SETATaxiPubSub.class.getName());
 
     private final MqttAsyncClient mqttClient;
+    private final RideMessageCodec rideMessageCodec;
+
     public SETATaxiPubSub(MqttAsyncClient mqttClient) {
+        this(mqttClient, new RideMessageCodec());
+    }
+
+    public SETATaxiPubSub(MqttAsyncClient mqttClient, RideMessageCodec rideMessageCodec) {
         this.mqttClient = mqttClient;
+        this.rideMessageCodec = rideMessageCodec;
         if (!this.mqttClient.isConnected()) {
             try {
                 this.mqttClient.connect().waitForCompletion();
@@ -43,9 +50,9 @@ public class SETATaxiPubSub implements SETATaxiPubSubBase {
                 if (!topic.startsWith(RIDE_REQUEST_TOPIC_PREFIX))
                     return;
 
-                RideRequestDto rideRequest = SerializationUtil.deserialize(message.getPayload(),
-                        RideRequestDto.class);
-                eventAction.accept(rideRequest);
+                // SETA can pack many ride requests of the same district in a single message
+                for (RideRequestDto rideRequest : rideMessageCodec.decodeRideRequests(message.getPayload()))
+                    eventAction.accept(rideRequest);
             }
 
             @Override
@@ -53,8 +60,7 @@ public class SETATaxiPubSub implements SETATaxiPubSubBase {
         });
 
         try {
-            this.mqttClient.subscribe(RIDE_REQUEST_TOPIC_PREFIX + "/district" + district.toString(), 1)
-                    .waitForCompletion();
+            this.mqttClient.subscribe(getDistrictTopic(district), 1).waitForCompletion();
         } catch (MqttException e) {
             logger.error("Taxi cannot subscribe to district topic", e);
             throw new RuntimeException(e);
@@ -63,7 +69,7 @@ public class SETATaxiPubSub implements SETATaxiPubSubBase {
 
     @Override
     public void publishRideConfirmation(RideConfirmDto rideConfirm) {
-        byte[] message = SerializationUtil.serialize(rideConfirm);
+        byte[] message = this.rideMessageCodec.encodeRideConfirm(rideConfirm);
         try {
             this.mqttClient.publish(RIDE_CONFIRM_TOPIC, message, 1, false);
         } catch (MqttException e) {
@@ -75,11 +81,14 @@ public class SETATaxiPubSub implements SETATaxiPubSubBase {
     @Override
     public void unsubscribeFromDistrictTopic(District district) {
         try {
-            this.mqttClient.unsubscribe(RIDE_REQUEST_TOPIC_PREFIX + "/district" + district.toString())
-                    .waitForCompletion();
+            this.mqttClient.unsubscribe(getDistrictTopic(district)).waitForCompletion();
         } catch (MqttException e) {
             logger.error("Taxi cannot unsubscribe to district", e);
             throw new RuntimeException(e);
         }
     }
+
+    private static String getDistrictTopic(District district) {
+        return RIDE_REQUEST_TOPIC_PREFIX + "/district" + district.getId();
+    }
 }
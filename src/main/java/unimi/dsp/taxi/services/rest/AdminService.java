@@ -1,23 +1,53 @@
 package unimi.dsp.taxi.services.rest;
 
 import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.ClientHandlerException;
 import com.sun.jersey.api.client.ClientResponse;
 import com.sun.jersey.api.client.GenericType;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import unimi.dsp.dto.NewTaxiDto;
 import unimi.dsp.dto.TaxiInfoDto;
+import unimi.dsp.dto.TaxiStatisticsBatchDto;
+import unimi.dsp.dto.TaxiStatisticsBatchResultDto;
 import unimi.dsp.dto.TaxiStatisticsDto;
+import unimi.dsp.dto.TaxiStatisticsRecordDto;
 import unimi.dsp.taxi.AdminServiceBase;
+import unimi.dsp.util.ConfigurationManager;
 import unimi.dsp.util.RestUtil;
 
 import javax.ws.rs.core.Response;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
 
 public class AdminService implements AdminServiceBase {
+    private static final Logger logger = LogManager.getLogger(AdminService.class.getName());
+
     private final Client client;
     private final String serverEndpoint;
+    // null when every statistic is uploaded by its own request
+    private final StatisticsBatchingConfig batchingConfig;
+    // statistics waiting to be uploaded, guarded by itself
+    private final Deque<TaxiStatisticsRecordDto> pendingStatistics = new ArrayDeque<>();
+    private int inFlightStatisticsNum = 0;
+    // number of callers waiting for a flush, the uploader does not linger while it is positive
+    private int flushingCallersNum = 0;
+    private StatisticsUploaderThread statisticsUploaderThread;
 
     public AdminService(Client client, String serverEndpoint) {
+        this(client, serverEndpoint, null);
+    }
+
+    /**
+     * when `batchingConfig` is not null, the statistics are buffered and uploaded in batches
+     * by a background thread, which retries with backoff while the server is unreachable
+     */
+    public AdminService(Client client, String serverEndpoint, StatisticsBatchingConfig batchingConfig) {
         this.client = client;
         this.serverEndpoint = serverEndpoint;
+        this.batchingConfig = batchingConfig;
     }
 
     @Override
@@ -31,6 +61,10 @@ public class AdminService implements AdminServiceBase {
 
     @Override
     public void unregisterTaxi(int taxiId) {
+        // the statistics of the taxi must reach the server before it forgets the taxi
+        if (this.batchingConfig != null)
+            this.flushStatistics();
+
         ClientResponse response = RestUtil.sendDeleteRequest(this.client,
                 this.serverEndpoint + "/taxis/" + taxiId);
         int statusCode = response.getStatus();
@@ -40,10 +74,249 @@ public class AdminService implements AdminServiceBase {
 
     @Override
     public void loadTaxiStatistics(int taxiId, TaxiStatisticsDto taxiStatistics) {
+        if (this.batchingConfig != null) {
+            this.bufferStatistics(new TaxiStatisticsRecordDto(taxiId, taxiStatistics));
+            return;
+        }
+
         ClientResponse response = RestUtil.sendPostRequest(this.client,
                 String.format("%s/taxis/%d/statistics", this.serverEndpoint, taxiId), taxiStatistics);
         int statusCode = response.getStatus();
         if (statusCode != Response.Status.OK.getStatusCode())
             throw new IllegalStateException("The taxi could not send statistics, status code: " + statusCode);
     }
+
+    private void bufferStatistics(TaxiStatisticsRecordDto taxiStatisticsRecord) {
+        synchronized (this.pendingStatistics) {
+            this.startStatisticsUploaderIfStopped();
+            this.pendingStatistics.addLast(taxiStatisticsRecord);
+            this.discardOldestStatistics();
+            this.pendingStatistics.notifyAll();
+        }
+    }
+
+    // the uploader is started by the first statistic, and again if it has stopped
+    private void startStatisticsUploaderIfStopped() {
+        assert Thread.holdsLock(this.pendingStatistics);
+        if (this.statisticsUploaderThread != null)
+            return;
+        this.statisticsUploaderThread = new StatisticsUploaderThread();
+        this.statisticsUploaderThread.start();
+    }
+
+    // if the server is unreachable for too long, the oldest statistics are lost instead of the memory
+    private void discardOldestStatistics() {
+        int discardedNum = 0;
+        while (this.pendingStatistics.size() > this.batchingConfig.maxBufferedRecords) {
+            this.pendingStatistics.removeFirst();
+            discardedNum++;
+        }
+        if (discardedNum > 0)
+            logger.warn("Discarded the {} oldest statistics because the buffer is full", discardedNum);
+    }
+
+    /**
+     * wait until the buffered statistics are uploaded, or until the flush timeout expires
+     */
+    public void flushStatistics() {
+        long deadline = System.currentTimeMillis() + this.batchingConfig.flushTimeoutMillis;
+        synchronized (this.pendingStatistics) {
+            this.flushingCallersNum++;
+            if (!this.pendingStatistics.isEmpty())
+                this.startStatisticsUploaderIfStopped();
+            this.pendingStatistics.notifyAll();
+            try {
+                while (!this.pendingStatistics.isEmpty() || this.inFlightStatisticsNum > 0) {
+                    long remainingMillis = deadline - System.currentTimeMillis();
+                    if (remainingMillis <= 0) {
+                        logger.warn("{} statistics are not uploaded yet after the flush timeout",
+                                this.pendingStatistics.size() + this.inFlightStatisticsNum);
+                        return;
+                    }
+                    this.pendingStatistics.wait(remainingMillis);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                this.flushingCallersNum--;
+            }
+        }
+    }
+
+    public static class StatisticsBatchingConfig {
+        private static final ConfigurationManager configurationManager = ConfigurationManager.getInstance();
+
+        private int batchSize = configurationManager.getTaxiStatisticsBatchSize();
+        private int batchLingerMillis = configurationManager.getTaxiStatisticsBatchLingerMillis();
+        private int maxBufferedRecords = configurationManager.getTaxiStatisticsMaxBufferedRecords();
+        private int initialBackoffMillis = configurationManager.getTaxiStatisticsUploadInitialBackoffMillis();
+        private int maxBackoffMillis = configurationManager.getTaxiStatisticsUploadMaxBackoffMillis();
+        private int flushTimeoutMillis = configurationManager.getTaxiStatisticsFlushTimeoutMillis();
+
+        public StatisticsBatchingConfig withBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        public StatisticsBatchingConfig withBatchLingerMillis(int batchLingerMillis) {
+            this.batchLingerMillis = batchLingerMillis;
+            return this;
+        }
+
+        public StatisticsBatchingConfig withMaxBufferedRecords(int maxBufferedRecords) {
+            this.maxBufferedRecords = maxBufferedRecords;
+            return this;
+        }
+
+        public StatisticsBatchingConfig withInitialBackoffMillis(int initialBackoffMillis) {
+            this.initialBackoffMillis = initialBackoffMillis;
+            return this;
+        }
+
+        public StatisticsBatchingConfig withMaxBackoffMillis(int maxBackoffMillis) {
+            this.maxBackoffMillis = maxBackoffMillis;
+            return this;
+        }
+
+        public StatisticsBatchingConfig withFlushTimeoutMillis(int flushTimeoutMillis) {
+            this.flushTimeoutMillis = flushTimeoutMillis;
+            return this;
+        }
+    }
+
+    /**
+     * uploads the buffered statistics when a batch is full or when the oldest one has waited
+     * `batchLingerMillis`. a batch which cannot reach the server goes back to the head of the buffer
+     * and is retried with exponential backoff.
+     */
+    private class StatisticsUploaderThread extends Thread {
+        private long backoffMillis = batchingConfig.initialBackoffMillis;
+
+        public StatisticsUploaderThread() {
+            super("statistics-uploader");
+            this.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            List<TaxiStatisticsRecordDto> batch = null;
+            try {
+                while (true) {
+                    batch = this.takeBatch();
+                    boolean isUploaded = this.uploadBatch(batch);
+                    this.completeBatch(batch, !isUploaded);
+                    batch = null;
+                    if (isUploaded)
+                        this.backoffMillis = batchingConfig.initialBackoffMillis;
+                    else {
+                        Thread.sleep(this.backoffMillis);
+                        this.backoffMillis = Math.min(this.backoffMillis * 2, batchingConfig.maxBackoffMillis);
+                    }
+                }
+            } catch (InterruptedException e) {
+                logger.info("The statistics uploader is stopping");
+            } catch (RuntimeException e) {
+                logger.error("The statistics uploader stopped unexpectedly", e);
+            } finally {
+                // a batch left in flight would block every flush until its timeout, so it goes back to
+                // the buffer, and the next statistic or flush starts a new uploader
+                synchronized (pendingStatistics) {
+                    if (batch != null)
+                        this.completeBatch(batch, true);
+                    if (statisticsUploaderThread == this)
+                        statisticsUploaderThread = null;
+                }
+            }
+        }
+
+        private List<TaxiStatisticsRecordDto> takeBatch() throws InterruptedException {
+            synchronized (pendingStatistics) {
+                while (pendingStatistics.isEmpty())
+                    pendingStatistics.wait();
+
+                // I wait for a full batch, unless the oldest statistic has already lingered enough
+                long deadline = System.currentTimeMillis() + batchingConfig.batchLingerMillis;
+                long remainingMillis;
+                while (pendingStatistics.size() < batchingConfig.batchSize && flushingCallersNum == 0 &&
+                        (remainingMillis = deadline - System.currentTimeMillis()) > 0)
+                    pendingStatistics.wait(remainingMillis);
+
+                List<TaxiStatisticsRecordDto> batch = new ArrayList<>();
+                while (batch.size() < batchingConfig.batchSize && !pendingStatistics.isEmpty())
+                    batch.add(pendingStatistics.removeFirst());
+                inFlightStatisticsNum = batch.size();
+                return batch;
+            }
+        }
+
+        private void completeBatch(List<TaxiStatisticsRecordDto> batch, boolean hasFailed) {
+            synchronized (pendingStatistics) {
+                if (hasFailed) {
+                    for (int i = batch.size() - 1; i >= 0; i--)
+                        pendingStatistics.addFirst(batch.get(i));
+                    discardOldestStatistics();
+                }
+                inFlightStatisticsNum = 0;
+                pendingStatistics.notifyAll();
+            }
+        }
+
+        /**
+         * @return false if the batch must be retried
+         */
+        private boolean uploadBatch(List<TaxiStatisticsRecordDto> batch) {
+            ClientResponse response;
+            try {
+                response = RestUtil.trySendPostRequest(client, serverEndpoint + "/taxis/statistics:batch",
+                        new TaxiStatisticsBatchDto(batch));
+            } catch (ClientHandlerException e) {
+                logger.warn("The server is unreachable, {} statistics will be retried in {} ms",
+                        batch.size(), this.backoffMillis);
+                return false;
+            } catch (RuntimeException e) {
+                logger.warn("The upload of {} statistics failed, they will be retried in {} ms",
+                        batch.size(), this.backoffMillis, e);
+                return false;
+            }
+
+            // the response is closed on every path, otherwise each failed upload would keep a pooled connection
+            try {
+                int statusCode = response.getStatus();
+                if (statusCode >= Response.Status.INTERNAL_SERVER_ERROR.getStatusCode()) {
+                    logger.warn("The server failed with status code {}, {} statistics will be retried in {} ms",
+                            statusCode, batch.size(), this.backoffMillis);
+                    return false;
+                }
+                // a malformed batch would be rejected again, so it is not retried
+                if (statusCode != Response.Status.OK.getStatusCode()) {
+                    logger.error("The server rejected {} statistics, status code: {}", batch.size(), statusCode);
+                    return true;
+                }
+
+                // the server has stored the batch, so it is not retried even if its result cannot be read
+                TaxiStatisticsBatchResultDto result;
+                try {
+                    result = response.getEntity(TaxiStatisticsBatchResultDto.class);
+                } catch (RuntimeException e) {
+                    logger.warn("The result of the upload of {} statistics cannot be read", batch.size(), e);
+                    return true;
+                }
+                if (result != null && result.getNotFoundTaxiIds() != null && !result.getNotFoundTaxiIds().isEmpty())
+                    logger.warn("The statistics of the unregistered taxis {} have been discarded",
+                            result.getNotFoundTaxiIds());
+                return true;
+            } finally {
+                closeResponse(response);
+            }
+        }
+
+        // a connection that cannot be released is dropped by the client, so the upload goes on
+        private void closeResponse(ClientResponse response) {
+            try {
+                response.close();
+            } catch (ClientHandlerException e) {
+                logger.warn("The response of a statistics upload cannot be closed", e);
+            }
+        }
+    }
 }
@@ -5,8 +5,8 @@ import org.apache.logging.log4j.Logger;
 import unimi.dsp.dto.TaxiStatisticsDto;
 import unimi.dsp.dto.types.SerializableOffsetDateTime;
 import unimi.dsp.model.types.TaxiStats;
-import unimi.dsp.sensors.Buffer;
-import unimi.dsp.sensors.Measurement;
+import unimi.dsp.sensors.SensorPipeline;
+import unimi.dsp.sensors.simulators.SensorType;
 import unimi.dsp.taxi.AdminServiceBase;
 import unimi.dsp.taxi.Taxi;
 import unimi.dsp.util.DateTimeUtil;
@@ -15,43 +15,28 @@ import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 public class StatsCollectorThread extends Thread {
     private static final Logger logger = LogManager.getLogger(StatsCollectorThread.class.getName());
 
-    private final Buffer buffer;
+    private final SensorPipeline sensorPipeline;
     private final int statsLoadingDelay;
-    private final Thread pollutionDataAggregator;
-    private final List<Double> pollutionAverages = new ArrayList<>();
     private final Taxi taxi;
     private final AdminServiceBase adminService;
-    private volatile boolean isTerminated = false;
 
-    public StatsCollectorThread(Buffer buffer,
+    public StatsCollectorThread(SensorPipeline sensorPipeline,
                                 int statsLoadingDelay,
                                 Taxi taxi,
                                 AdminServiceBase adminService) {
-        this.buffer = buffer;
+        this.sensorPipeline = sensorPipeline;
         this.statsLoadingDelay = statsLoadingDelay;
         this.taxi = taxi;
         this.adminService = adminService;
-        this.pollutionDataAggregator = new Thread(() -> {
-            while (!this.isTerminated) {
-                double measurementsAvg = this.buffer.readAllAndClean()
-                        .stream().mapToDouble(Measurement::getValue).average()
-                        .orElse(0);
-
-                synchronized (this.pollutionAverages) {
-                    this.pollutionAverages.add(measurementsAvg);
-                }
-            }
-        });
     }
 
     @Override
     public void run() {
-        this.pollutionDataAggregator.start();
-
         try {
             while (!this.isInterrupted()) {
                 Thread.sleep(statsLoadingDelay);
@@ -66,11 +51,9 @@ public class StatsCollectorThread extends Thread {
 
     private void sendStatisticsToAdminServer() {
         logger.info("sending statistics to the server for taxi {}", this.taxi.getId());
-        List<Double> pollutionAvgsToSend;
-        synchronized (this.pollutionAverages) {
-            pollutionAvgsToSend = new ArrayList<>(this.pollutionAverages);
-            this.pollutionAverages.clear();
-        }
+        Map<String, List<Double>> sensorAvgLists = this.sensorPipeline.takeAverages();
+        // the pollution averages are still sent on their own, for the clients reading only them
+        List<Double> pollutionAvgsToSend = sensorAvgLists.getOrDefault(SensorType.PM10.name(), new ArrayList<>());
 
         TaxiStats taxiStats = this.taxi.readAndClearStatistics();
         TaxiStatisticsDto taxiStatistics = new TaxiStatisticsDto(
@@ -78,7 +61,7 @@ public class StatsCollectorThread extends Thread {
                         DateTimeUtil.getStringFromOffsetDateTime(OffsetDateTime.now(ZoneOffset.UTC))),
                 this.taxi.getBatteryLevel(),
                 new TaxiStatisticsDto.TaxiStatisticsValues(taxiStats.getKmsTraveled(), taxiStats.getTakenRidesNumber(),
-                        pollutionAvgsToSend));
+                        pollutionAvgsToSend, sensorAvgLists));
         this.adminService.loadTaxiStatistics(this.taxi.getId(), taxiStatistics);
     }
 
@@ -90,8 +73,5 @@ public class StatsCollectorThread extends Thread {
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
         }
-
-        this.isTerminated = true;
-        pollutionDataAggregator.interrupt();
     }
 }
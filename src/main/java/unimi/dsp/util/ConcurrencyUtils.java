@@ -2,44 +2,121 @@ package unimi.dsp.util;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.function.Consumer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
 
 public class ConcurrencyUtils {
+    private static final ConfigurationManager configurationManager = ConfigurationManager.getInstance();
+    private static final AtomicInteger fanOutThreadsCounter = new AtomicInteger();
+    // shared by all the fan-outs of the process. when every thread is busy the caller runs the call itself,
+    // so a fan-out never waits for a call queued behind the calls of another fan-out. the timeout cannot
+    // interrupt a call run by the caller, so the calls of a timed fan-out must have a deadline of their own
+    private static final ThreadPoolExecutor fanOutExecutor = new ThreadPoolExecutor(
+            0, configurationManager.getFanOutMaxThreads(), 60, TimeUnit.SECONDS,
+            new SynchronousQueue<>(),
+            r -> {
+                Thread thread = new Thread(r, "fan-out-" + fanOutThreadsCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            },
+            new ThreadPoolExecutor.CallerRunsPolicy());
+
+    /**
+     * execute n calls concurrently on the shared fan-out threads and wait for all of them,
+     * but not longer than `timeoutMillis` overall. the calls not started within the timeout, because the
+     * caller was running the previous ones, are not started at all.
+     * each call must end within `timeoutMillis` by itself (e.g. with a grpc deadline), otherwise a call
+     * run by the caller can make the fan-out last longer
+     * @param n number of calls
+     * @param call the code of each call. it accepts the index of the current call
+     * @return the outcome of each call, in the same order as the indexes
+     */
+    public static <T> List<FanOutResult<T>> fanOut(int n, IntFunction<T> call, long timeoutMillis) {
+        return fanOutUntil(n, call, System.currentTimeMillis() + timeoutMillis);
+    }
+
     /**
-     * execute n threads concurrently and call `join()` on each of them at the end
-     * @param n number of threads to start
-     * @param threadBody the code to execute for each thread. it accepts the index of the current iteration
+     * same as `fanOut`, but it waits for all the calls however long they take.
+     * used when a missing answer cannot be told apart from a negative one
      */
-    public static void runThreadsConcurrentlyAndJoin(int n, Consumer<Integer> threadBody) {
-        List<Thread> threads = new ArrayList<>();
+    public static <T> List<FanOutResult<T>> fanOut(int n, IntFunction<T> call) {
+        return fanOutUntil(n, call, Long.MAX_VALUE);
+    }
+
+    private static <T> List<FanOutResult<T>> fanOutUntil(int n, IntFunction<T> call, long deadline) {
+        List<Future<T>> futures = new ArrayList<>(n);
         for (int i = 0; i < n; i++) {
-            Thread t = new ThreadWithIndex(i, threadBody);
-            threads.add(t);
-            t.start();
+            int index = i;
+            futures.add(System.currentTimeMillis() < deadline
+                    ? fanOutExecutor.submit(() -> call.apply(index))
+                    : null);
         }
 
-        for (Thread t : threads) {
+        List<FanOutResult<T>> results = new ArrayList<>(n);
+        for (Future<T> future : futures) {
+            if (future == null) {
+                results.add(FanOutResult.timedOut());
+                continue;
+            }
             try {
-                t.join();
+                long remainingMillis = Math.max(0, deadline - System.currentTimeMillis());
+                results.add(FanOutResult.completed(future.get(remainingMillis, TimeUnit.MILLISECONDS)));
+            } catch (ExecutionException e) {
+                results.add(FanOutResult.failed(e.getCause()));
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                results.add(FanOutResult.timedOut());
             } catch (InterruptedException e) {
                 throw new RuntimeException(e);
             }
         }
+
+        return results;
     }
 
-    private static class ThreadWithIndex extends Thread {
-        private final int i;
-        private final Consumer<Integer> threadBody;
+    public static class FanOutResult<T> {
+        private final T value;
+        private final Throwable error;
+        private final boolean isTimedOut;
+
+        private FanOutResult(T value, Throwable error, boolean isTimedOut) {
+            this.value = value;
+            this.error = error;
+            this.isTimedOut = isTimedOut;
+        }
+
+        static <T> FanOutResult<T> completed(T value) {
+            return new FanOutResult<>(value, null, false);
+        }
+
+        static <T> FanOutResult<T> failed(Throwable error) {
+            return new FanOutResult<>(null, error, false);
+        }
+
+        static <T> FanOutResult<T> timedOut() {
+            return new FanOutResult<>(null, null, true);
+        }
+
+        public boolean isCompleted() {
+            return this.error == null && !this.isTimedOut;
+        }
+
+        public boolean isTimedOut() {
+            return isTimedOut;
+        }
 
-        public ThreadWithIndex(int i, Consumer<Integer> threadBody) {
-            super();
-            this.i = i;
-            this.threadBody = threadBody;
+        public T getValue() {
+            return value;
         }
 
-        @Override
-        public void run() {
-            this.threadBody.accept(this.i);
+        public Throwable getError() {
+            return error;
         }
     }
 }
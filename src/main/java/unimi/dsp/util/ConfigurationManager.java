@@ -1,5 +1,7 @@
 package unimi.dsp.util;
 
+import unimi.dsp.model.types.MqttPayloadFormat;
+
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.Properties;
@@ -34,6 +36,26 @@ public class ConfigurationManager {
         return props.getProperty("adminServerEndpoint");
     }
 
+    public String getAdminStatisticsLogDirectory() {
+        return props.getProperty("adminStatisticsLogDirectory");
+    }
+
+    public int getAdminStatisticsLogSegmentRecords() {
+        return Integer.parseInt(props.getProperty("adminStatisticsLogSegmentRecords"));
+    }
+
+    public boolean getAdminStatisticsLogSyncCommit() {
+        return Boolean.parseBoolean(props.getProperty("adminStatisticsLogSyncCommit"));
+    }
+
+    public int getAdminStatisticsRetentionHours() {
+        return Integer.parseInt(props.getProperty("adminStatisticsRetentionHours"));
+    }
+
+    public int getAdminStatisticsCompactionPeriodMinutes() {
+        return Integer.parseInt(props.getProperty("adminStatisticsCompactionPeriodMinutes"));
+    }
+
     public String getBrokerEndpoint() {
         return props.getProperty("brokerEndpoint");
     }
@@ -61,8 +83,42 @@ public class ConfigurationManager {
         return props.getProperty("rideConfirmationTopic");
     }
 
-    public int getNumDistricts() {
-        return Integer.parseInt(props.getProperty("numDistricts"));
+    public int getSETAMaxInFlightPublishesPerDistrict() {
+        return Integer.parseInt(props.getProperty("SETAMaxInFlightPublishesPerDistrict"));
+    }
+
+    public boolean getSETARideRequestBatching() {
+        return Boolean.parseBoolean(props.getProperty("SETARideRequestBatching"));
+    }
+
+    public int getSETARideRequestBatchLingerMillis() {
+        return Integer.parseInt(props.getProperty("SETARideRequestBatchLingerMillis"));
+    }
+
+    public int getSETAPublisherThreads() {
+        return Integer.parseInt(props.getProperty("SETAPublisherThreads"));
+    }
+    public int getSETAPublishRetryInitialBackoffMillis() {
+        return Integer.parseInt(props.getProperty("SETAPublishRetryInitialBackoffMillis"));
+    }
+    public int getSETAPublishRetryMaxBackoffMillis() {
+        return Integer.parseInt(props.getProperty("SETAPublishRetryMaxBackoffMillis"));
+    }
+
+    public MqttPayloadFormat getMqttPayloadFormat() {
+        return MqttPayloadFormat.valueOf(props.getProperty("mqttPayloadFormat").toUpperCase());
+    }
+
+    public int getMqttMaxInflight() {
+        return Integer.parseInt(props.getProperty("mqttMaxInflight"));
+    }
+
+    public int getDistrictGridRows() {
+        return Integer.parseInt(props.getProperty("districtGridRows"));
+    }
+
+    public int getDistrictGridColumns() {
+        return Integer.parseInt(props.getProperty("districtGridColumns"));
     }
 
     public int getRideRequestTimeout() {
@@ -72,6 +128,42 @@ public class ConfigurationManager {
     public int getRideDeliveryDelay() {
         return Integer.parseInt(props.getProperty("rideDeliveryDelay"));
     }
+    public int getElectionRpcDeadlineMillis() {
+        return Integer.parseInt(props.getProperty("electionRpcDeadlineMillis"));
+    }
+    public int getElectionRpcMaxRetries() {
+        return Integer.parseInt(props.getProperty("electionRpcMaxRetries"));
+    }
+    public int getElectionRpcRetryBackoffMillis() {
+        return Integer.parseInt(props.getProperty("electionRpcRetryBackoffMillis"));
+    }
+    public boolean getElectionStreaming() {
+        return Boolean.parseBoolean(props.getProperty("electionStreaming"));
+    }
+    public boolean getElectionBatching() {
+        return Boolean.parseBoolean(props.getProperty("electionBatching"));
+    }
+    public int getGrpcChannelIdleTimeoutMillis() {
+        return Integer.parseInt(props.getProperty("grpcChannelIdleTimeoutMillis"));
+    }
+    public boolean getDistrictBroadcastRelay() {
+        return Boolean.parseBoolean(props.getProperty("districtBroadcastRelay"));
+    }
+    public int getDistrictBroadcastRelayFanOut() {
+        return Integer.parseInt(props.getProperty("districtBroadcastRelayFanOut"));
+    }
+    public int getBroadcastTimeoutMillis() {
+        return Integer.parseInt(props.getProperty("broadcastTimeoutMillis"));
+    }
+    public int getFanOutMaxThreads() {
+        return Integer.parseInt(props.getProperty("fanOutMaxThreads"));
+    }
+    public boolean getRechargeDeferredReplies() {
+        return Boolean.parseBoolean(props.getProperty("rechargeDeferredReplies"));
+    }
+    public int getRechargeStationCapacity() {
+        return Integer.parseInt(props.getProperty("rechargeStationCapacity"));
+    }
     public int getBatteryConsumptionPerKm() {
         return Integer.parseInt(props.getProperty("batteryConsumptionPerKm"));
     }
@@ -82,12 +174,45 @@ public class ConfigurationManager {
         return Integer.parseInt(props.getProperty("rechargeDelay"));
     }
 
+    public boolean getTaxiStatisticsBatching() {
+        return Boolean.parseBoolean(props.getProperty("taxiStatisticsBatching"));
+    }
+    public int getTaxiStatisticsBatchSize() {
+        return Integer.parseInt(props.getProperty("taxiStatisticsBatchSize"));
+    }
+    public int getTaxiStatisticsBatchLingerMillis() {
+        return Integer.parseInt(props.getProperty("taxiStatisticsBatchLingerMillis"));
+    }
+    public int getTaxiStatisticsMaxBufferedRecords() {
+        return Integer.parseInt(props.getProperty("taxiStatisticsMaxBufferedRecords"));
+    }
+    public int getTaxiStatisticsUploadInitialBackoffMillis() {
+        return Integer.parseInt(props.getProperty("taxiStatisticsUploadInitialBackoffMillis"));
+    }
+    public int getTaxiStatisticsUploadMaxBackoffMillis() {
+        return Integer.parseInt(props.getProperty("taxiStatisticsUploadMaxBackoffMillis"));
+    }
+    public int getTaxiStatisticsFlushTimeoutMillis() {
+        return Integer.parseInt(props.getProperty("taxiStatisticsFlushTimeoutMillis"));
+    }
+
     public int getSlidingWindowBufferSize() {
         return Integer.parseInt(props.getProperty("slidingWindowBufferSize"));
     }
     public float getSlidingWindowOverlappingFactor() {
         return Float.parseFloat(props.getProperty("slidingWindowOverlappingFactor"));
     }
+    public int getSensorSchedulerThreads() {
+        return Integer.parseInt(props.getProperty("sensorSchedulerThreads"));
+    }
+
+    public int getMaxSensorAveragesPerUpload() {
+        return Integer.parseInt(props.getProperty("maxSensorAveragesPerUpload"));
+    }
+    public String getTaxiSensors() {
+        return props.getProperty("taxiSensors");
+    }
+
     public int getStatsLoadingDelay() {
         return Integer.parseInt(props.getProperty("statsLoadingDelay"));
     }
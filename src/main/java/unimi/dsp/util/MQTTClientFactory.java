@@ -9,10 +9,12 @@ import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
 public class MQTTClientFactory {
     private static final ConfigurationManager configManager;
     private static final String brokerUri;
+    private static final int maxInflight;
 
     static {
         configManager = ConfigurationManager.getInstance();
         brokerUri = configManager.getBrokerEndpoint();
+        maxInflight = configManager.getMqttMaxInflight();
     }
 
     public static MqttAsyncClient getClient() {
@@ -23,6 +25,9 @@ public class MQTTClientFactory {
             MqttConnectOptions connOpts = new MqttConnectOptions();
             connOpts.setCleanSession(true);
             connOpts.setAutomaticReconnect(true);
+            // the default (10) is too low for the pipelined publishing of SETA, which keeps
+            // many QoS 1 messages in flight for each district
+            connOpts.setMaxInflight(maxInflight);
             client.connect(connOpts).waitForCompletion();
 
             return client;
@@ -23,6 +23,15 @@ public class RestUtil {
         });
     }
 
+    /**
+     * same as `sendPostRequest`, but if the server is unreachable the `ClientHandlerException`
+     * is thrown to the caller, which can retry later
+     */
+    public static <T> ClientResponse trySendPostRequest(Client client, String url, T entity) {
+        WebResource webResource = client.resource(url);
+        return webResource.type(MediaType.APPLICATION_JSON).post(ClientResponse.class, entity);
+    }
+
     public static ClientResponse sendDeleteRequest(Client client, String url) {
         return wrapWithExceptionHandler(() -> {
             WebResource webResource = client.resource(url);
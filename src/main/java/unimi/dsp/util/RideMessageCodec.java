@@ -0,0 +1,144 @@
+package unimi.dsp.util;
+
+import com.google.gson.JsonObject;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.Parser;
+import unimi.dsp.dto.RideConfirmDto;
+import unimi.dsp.dto.RideMessages;
+import unimi.dsp.dto.RideRequestBatchDto;
+import unimi.dsp.dto.RideRequestDto;
+import unimi.dsp.model.types.MqttPayloadFormat;
+import unimi.dsp.model.types.SmartCityCell;
+import unimi.dsp.model.types.SmartCityPosition;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Encodes the MQTT payloads exchanged between SETA and the taxis in the configured format.
+ * Binary payloads start with a content-type marker, which can never be the first byte of a JSON
+ * object, so decoding detects the format by itself and a SETA and a taxi with different
+ * configurations still understand each other.
+ */
+public class RideMessageCodec {
+    private static final byte PROTOBUF_MARKER = 0x01;
+    private static final String RIDE_REQUEST_BATCH_FIELD = "rideRequests";
+
+    private final MqttPayloadFormat payloadFormat;
+
+    public RideMessageCodec() {
+        this(ConfigurationManager.getInstance().getMqttPayloadFormat());
+    }
+
+    public RideMessageCodec(MqttPayloadFormat payloadFormat) {
+        this.payloadFormat = payloadFormat;
+    }
+
+    public MqttPayloadFormat getPayloadFormat() {
+        return payloadFormat;
+    }
+
+    public byte[] encodeRideRequest(RideRequestDto rideRequest) {
+        if (this.payloadFormat == MqttPayloadFormat.JSON)
+            return SerializationUtil.serialize(rideRequest);
+
+        return encodeProtobuf(RideMessages.RideRequestBatchMessage.newBuilder()
+                .addRideRequests(toRideRequestMessage(rideRequest))
+                .build());
+    }
+
+    public byte[] encodeRideRequestBatch(List<RideRequestDto> rideRequests) {
+        if (this.payloadFormat == MqttPayloadFormat.JSON)
+            return SerializationUtil.serialize(new RideRequestBatchDto(rideRequests));
+
+        RideMessages.RideRequestBatchMessage.Builder batchBuilder = RideMessages.RideRequestBatchMessage.newBuilder();
+        for (RideRequestDto rideRequest : rideRequests)
+            batchBuilder.addRideRequests(toRideRequestMessage(rideRequest));
+        return encodeProtobuf(batchBuilder.build());
+    }
+
+    public byte[] encodeRideConfirm(RideConfirmDto rideConfirm) {
+        if (this.payloadFormat == MqttPayloadFormat.JSON)
+            return SerializationUtil.serialize(rideConfirm);
+
+        return encodeProtobuf(RideMessages.RideConfirmMessage.newBuilder()
+                .setRideId(rideConfirm.getRideId())
+                .build());
+    }
+
+    /**
+     * @return the ride requests contained in the payload, which can be a single ride request or a batch
+     */
+    public List<RideRequestDto> decodeRideRequests(byte[] payload) {
+        if (isProtobuf(payload)) {
+            RideMessages.RideRequestBatchMessage batch = parseProtobuf(
+                    payload, RideMessages.RideRequestBatchMessage.parser());
+            List<RideRequestDto> rideRequests = new ArrayList<>(batch.getRideRequestsCount());
+            for (RideMessages.RideRequestMessage rideRequestMessage : batch.getRideRequestsList())
+                rideRequests.add(fromRideRequestMessage(rideRequestMessage));
+            return rideRequests;
+        }
+
+        JsonObject jsonPayload = SerializationUtil.deserialize(payload, JsonObject.class);
+        if (jsonPayload.has(RIDE_REQUEST_BATCH_FIELD))
+            return SerializationUtil.deserialize(jsonPayload, RideRequestBatchDto.class).getRideRequests();
+
+        return Collections.singletonList(SerializationUtil.deserialize(jsonPayload, RideRequestDto.class));
+    }
+
+    public RideConfirmDto decodeRideConfirm(byte[] payload) {
+        if (isProtobuf(payload))
+            return new RideConfirmDto(parseProtobuf(payload, RideMessages.RideConfirmMessage.parser()).getRideId());
+
+        return SerializationUtil.deserialize(payload, RideConfirmDto.class);
+    }
+
+    private static boolean isProtobuf(byte[] payload) {
+        return payload.length > 0 && payload[0] == PROTOBUF_MARKER;
+    }
+
+    private static byte[] encodeProtobuf(MessageLite message) {
+        // the message is written right after the marker, without copying it from an intermediate array
+        byte[] payload = new byte[message.getSerializedSize() + 1];
+        payload[0] = PROTOBUF_MARKER;
+        CodedOutputStream output = CodedOutputStream.newInstance(payload, 1, payload.length - 1);
+        try {
+            message.writeTo(output);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        output.checkNoSpaceLeft();
+        return payload;
+    }
+
+    private static <T> T parseProtobuf(byte[] payload, Parser<T> parser) {
+        try {
+            return parser.parseFrom(payload, 1, payload.length - 1);
+        } catch (InvalidProtocolBufferException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static RideMessages.RideRequestMessage toRideRequestMessage(RideRequestDto rideRequest) {
+        int startCell = rideRequest.getStartCell();
+        int endCell = rideRequest.getEndCell();
+        return RideMessages.RideRequestMessage.newBuilder()
+                .setId(rideRequest.getId())
+                .setTimestamp(rideRequest.getTimestamp())
+                .setXStart(SmartCityCell.getX(startCell))
+                .setYStart(SmartCityCell.getY(startCell))
+                .setXEnd(SmartCityCell.getX(endCell))
+                .setYEnd(SmartCityCell.getY(endCell))
+                .build();
+    }
+
+    private static RideRequestDto fromRideRequestMessage(RideMessages.RideRequestMessage rideRequestMessage) {
+        return new RideRequestDto(rideRequestMessage.getId(), rideRequestMessage.getTimestamp(),
+                new SmartCityPosition(rideRequestMessage.getXStart(), rideRequestMessage.getYStart()),
+                new SmartCityPosition(rideRequestMessage.getXEnd(), rideRequestMessage.getYEnd()));
+    }
+}
@@ -1,17 +1,25 @@
 package unimi.dsp.util;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonElement;
 
 import java.nio.charset.StandardCharsets;
 
 public class SerializationUtil {
+    // Gson is thread safe, so I do not rebuild its reflection caches for each message
+    private static final Gson gson = new Gson();
+
     public static byte[] serialize(Object obj) {
-        String jsonRideRequest = new Gson().toJson(obj);
+        String jsonRideRequest = gson.toJson(obj);
         return jsonRideRequest.getBytes(StandardCharsets.UTF_8);
     }
 
     public static <T> T deserialize(byte[] objBytes, Class<T> objCls) {
         String content = new String(objBytes, StandardCharsets.UTF_8);
-        return new Gson().fromJson(content, objCls);
+        return gson.fromJson(content, objCls);
+    }
+
+    public static <T> T deserialize(JsonElement jsonElement, Class<T> objCls) {
+        return gson.fromJson(jsonElement, objCls);
     }
 }
@@ -0,0 +1,114 @@
+package unimi.dsp.SETA;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import unimi.dsp.dto.RideRequestDto;
+import unimi.dsp.fakeFactories.RidePositionGeneratorFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RideRequestTimeoutWheelTest {
+    private final List<List<RideRequestTimeoutWheel.RideRequestTimeout>> expiredBatches = new ArrayList<>();
+    private RideRequestTimeoutWheel wheel;
+
+    @AfterEach
+    public void testCleanup() {
+        wheel.close();
+    }
+
+    @Test
+    public void givenAScheduledRide_WhenTimeoutExpires_ThenTheExpirationActionReceivesIt()
+            throws InterruptedException {
+        wheel = createAndStartWheel(10, 8);
+        RideRequestDto rideRequest = RidePositionGeneratorFactory.getRideRequest(1, 0, 0, 1, 1);
+
+        wheel.schedule(1, rideRequest, 50);
+        Thread.sleep(150);
+
+        List<RideRequestTimeoutWheel.RideRequestTimeout> expiredTimeouts = getExpiredTimeouts();
+        assertEquals(1, expiredTimeouts.size());
+        assertEquals(1, expiredTimeouts.get(0).getDistrict());
+        assertEquals(rideRequest, expiredTimeouts.get(0).getRideRequest());
+        assertEquals(0, wheel.getPendingTimeoutsCount());
+    }
+
+    @Test
+    public void givenAScheduledRide_WhenItIsCancelled_ThenItNeverExpires() throws InterruptedException {
+        wheel = createAndStartWheel(10, 8);
+        wheel.schedule(1, RidePositionGeneratorFactory.getRideRequest(1, 0, 0, 1, 1), 50);
+
+        assertTrue(wheel.cancel(1));
+        Thread.sleep(150);
+
+        assertThat(getExpiredTimeouts()).isEmpty();
+        assertFalse(wheel.cancel(1));
+    }
+
+    @Test
+    public void givenManyRides_WhenTheyExpireInTheSameTick_ThenTheyAreReturnedInASingleBatch()
+            throws InterruptedException {
+        wheel = createAndStartWheel(100, 8);
+        for (int i = 0; i < 5; i++)
+            wheel.schedule(1, RidePositionGeneratorFactory.getRideRequest(i, 0, 0, 1, 1), 150);
+
+        Thread.sleep(400);
+
+        synchronized (expiredBatches) {
+            assertEquals(1, expiredBatches.size());
+            assertEquals(5, expiredBatches.get(0).size());
+        }
+    }
+
+    @Test
+    public void givenATimeoutLongerThanTheWheel_WhenTheWheelCompletesARound_ThenItIsNotExpiredYet()
+            throws InterruptedException {
+        // a round lasts 40 ms
+        wheel = createAndStartWheel(10, 4);
+        wheel.schedule(1, RidePositionGeneratorFactory.getRideRequest(1, 0, 0, 1, 1), 200);
+
+        Thread.sleep(100);
+        assertThat(getExpiredTimeouts()).isEmpty();
+
+        Thread.sleep(250);
+        assertThat(getExpiredTimeouts()).hasSize(1);
+    }
+
+    @Test
+    public void givenAScheduledRide_WhenItIsScheduledAgain_ThenOnlyTheLastTimeoutIsKept()
+            throws InterruptedException {
+        wheel = createAndStartWheel(10, 8);
+        RideRequestDto rideRequest = RidePositionGeneratorFactory.getRideRequest(1, 0, 0, 1, 1);
+
+        wheel.schedule(1, rideRequest, 50);
+        wheel.schedule(1, rideRequest, 2000);
+        Thread.sleep(150);
+
+        assertThat(getExpiredTimeouts()).isEmpty();
+        assertEquals(1, wheel.getPendingTimeoutsCount());
+    }
+
+    private RideRequestTimeoutWheel createAndStartWheel(long tickMillis, int wheelSize) {
+        RideRequestTimeoutWheel timeoutWheel = new RideRequestTimeoutWheel(tickMillis, wheelSize,
+                expiredTimeouts -> {
+                    synchronized (expiredBatches) {
+                        expiredBatches.add(expiredTimeouts);
+                    }
+                });
+        timeoutWheel.start();
+        return timeoutWheel;
+    }
+
+    private List<RideRequestTimeoutWheel.RideRequestTimeout> getExpiredTimeouts() {
+        List<RideRequestTimeoutWheel.RideRequestTimeout> expiredTimeouts = new ArrayList<>();
+        synchronized (expiredBatches) {
+            expiredBatches.forEach(expiredTimeouts::addAll);
+        }
+        return expiredTimeouts;
+    }
+}
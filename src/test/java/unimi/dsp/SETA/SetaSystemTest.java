@@ -6,6 +6,7 @@ import org.junit.jupiter.api.Test;
 import org.opentest4j.AssertionFailedError;
 import unimi.dsp.SETA.services.SETAServerPubSub;
 import unimi.dsp.dto.RideConfirmDto;
+import unimi.dsp.dto.RideRequestBatchDto;
 import unimi.dsp.dto.RideRequestDto;
 import unimi.dsp.fakeFactories.RidePositionGeneratorFactory;
 import unimi.dsp.model.types.SmartCityPosition;
@@ -173,6 +174,122 @@ public class SetaSystemTest {
         assertThat(rideRequestsArrived.stream().mapToInt(RideRequestDto::getId)).contains(0, 1);
     }
 
+    @Test
+    public void givenManyRideRequestsInATick_WhenBatchingIsEnabled_ThenTheyArePublishedInASingleMessage() {
+        List<RideRequestDto> rideRequestsArrived = new ArrayList<>();
+        runWithinClient(client -> {
+            try (SetaSystem ss = new SetaSystem(
+                    RidePositionGeneratorFactory.getGenerator(
+                            RidePositionGeneratorFactory.getRideRequest(0, 0, 0, 0, 1),
+                            RidePositionGeneratorFactory.getRideRequest(1, 1, 2, 3, 4),
+                            RidePositionGeneratorFactory.getRideRequest(2, 2, 1, 4, 3)),
+                    new SetaSystem.SETAConfig().withRequestLimit(3)
+                            .withGenFrequencyMillis(10)
+                            .withNumGeneratedRequest(3)
+                            .withRideRequestTimeout(2000)
+                            .withRideRequestBatching(true)
+                            .withRideRequestBatchLingerMillis(50), setaServerPubSub)){
+                client.setCallback(getCallbackForMessageArrived((topic, message, counter) -> {
+                    RideRequestBatchDto rideRequestBatch = SerializationUtil.deserialize(
+                            message.getPayload(), RideRequestBatchDto.class);
+                    rideRequestsArrived.addAll(rideRequestBatch.getRideRequests());
+                }));
+                IMqttToken token = client.subscribe(RIDE_REQUEST_TOPIC_PREFIX + "/district1", 2);
+                token.waitForCompletion();
+
+                ss.run();
+
+                Thread.sleep(1000);
+            } catch (MqttException | InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        assertCallbacksSuccessful(1);
+        assertThat(rideRequestsArrived.stream().mapToInt(RideRequestDto::getId)).containsExactlyInAnyOrder(0, 1, 2);
+    }
+
+    @Test
+    public void givenFailingPublishes_WhenTheyAreRetried_ThenTheDelayGrowsUntilAPublishSucceeds()
+            throws InterruptedException, MqttException {
+        FailingPubSub failingPubSub = new FailingPubSub(3);
+        try (SetaSystem ss = new SetaSystem(
+                RidePositionGeneratorFactory.getGenerator(0, 0, 1, 1),
+                new SetaSystem.SETAConfig().withRequestLimit(1)
+                        .withGenFrequencyMillis(1)
+                        .withNumGeneratedRequest(1)
+                        .withRideRequestTimeout(10000)
+                        .withPublishRetryInitialBackoffMillis(100)
+                        .withPublishRetryMaxBackoffMillis(400), failingPubSub)) {
+            ss.run();
+            Thread.sleep(1200);
+            List<Long> publishMillis = failingPubSub.getPublishMillis();
+            assertThat(publishMillis).hasSize(4);
+            assertThat(publishMillis.get(1) - publishMillis.get(0)).isGreaterThanOrEqualTo(100);
+            assertThat(publishMillis.get(2) - publishMillis.get(1)).isGreaterThanOrEqualTo(200);
+            assertThat(publishMillis.get(3) - publishMillis.get(2)).isGreaterThanOrEqualTo(400);
+
+            // the successful publish has reset the delay
+            failingPubSub.failuresLeft = 1;
+            ss.addToNewRideRequests(Collections.singletonList(new RideRequestDto(1,
+                    new SmartCityPosition(0, 0), new SmartCityPosition(1, 1))));
+            Thread.sleep(500);
+            publishMillis = failingPubSub.getPublishMillis();
+            assertThat(publishMillis).hasSize(6);
+            assertThat(publishMillis.get(5) - publishMillis.get(4)).isBetween(100L, 300L);
+        }
+    }
+
+    private static class FailingPubSub implements SETAServerPubSubBase {
+        private final List<Long> publishMillis = new ArrayList<>();
+        private volatile int failuresLeft;
+        private volatile Consumer<RideRequestDto> failureAction = rideRequest -> {};
+        private volatile Consumer<RideRequestDto> successAction = rideRequest -> {};
+
+        private FailingPubSub(int failuresNum) {
+            this.failuresLeft = failuresNum;
+        }
+
+        private synchronized List<Long> getPublishMillis() {
+            return new ArrayList<>(this.publishMillis);
+        }
+
+        @Override
+        public void publishRideRequest(RideRequestDto rideRequest) {
+            synchronized (this) {
+                this.publishMillis.add(System.currentTimeMillis());
+            }
+            if (this.failuresLeft > 0) {
+                this.failuresLeft--;
+                this.failureAction.accept(rideRequest);
+            } else
+                this.successAction.accept(rideRequest);
+        }
+
+        @Override
+        public void publishRideRequestBatch(List<RideRequestDto> rideRequests) {
+            rideRequests.forEach(this::publishRideRequest);
+        }
+
+        @Override
+        public void subscribeToRideRequestPublishFailures(Consumer<RideRequestDto> failureAction) {
+            this.failureAction = failureAction;
+        }
+
+        @Override
+        public void subscribeToRideRequestPublishSuccesses(Consumer<RideRequestDto> successAction) {
+            this.successAction = successAction;
+        }
+
+        @Override
+        public void subscribeToRideConfirmationTopic(Consumer<RideConfirmDto> confirmAction) {
+        }
+
+        @Override
+        public void unsubscribeFromRideConfirmationTopic() {
+        }
+    }
+
     private void assertCallbacksSuccessful(int messagesNum) {
         try {
             assertEquals(
@@ -2,26 +2,43 @@ package unimi.dsp.adminServer.services.impl;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InOrder;
 import unimi.dsp.adminServer.exceptions.IdAlreadyRegisteredException;
 import unimi.dsp.adminServer.exceptions.IdNotFoundException;
 import unimi.dsp.adminServer.exceptions.ReportTypeNotFoundException;
 import unimi.dsp.adminServer.services.TaxiPositionGenerator;
 import unimi.dsp.adminServer.services.TaxiService;
+import unimi.dsp.adminServer.storage.TaxiStatisticsLog;
 import unimi.dsp.dto.NewTaxiDto;
 import unimi.dsp.dto.TaxiInfoDto;
 import unimi.dsp.dto.TaxiStatisticsAvgReportDto;
+import unimi.dsp.dto.TaxiStatisticsBatchResultDto;
 import unimi.dsp.dto.TaxiStatisticsDto;
+import unimi.dsp.dto.TaxiStatisticsRecordDto;
 import unimi.dsp.fakeFactories.FakeDtoFactory;
 import unimi.dsp.model.types.SmartCityPosition;
 import unimi.dsp.model.types.TaxiStatisticsReportType;
 
+import java.nio.file.Path;
 import java.time.Duration;
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -219,6 +236,181 @@ public class TaxiServiceImplTest {
         assertEquals(1.5, report.getAvgPollutionLevel());
     }
 
+    @Test
+    public void givenManyStatistics_WhenGetAvgReportOfLastN_ThenOnlyTheMostRecentAreAveraged()
+            throws IdAlreadyRegisteredException, IdNotFoundException, ReportTypeNotFoundException {
+        service.registerTaxi(FakeDtoFactory.createTaxiInfoDto(1));
+        for (int seed = 1; seed <= 20; seed++)
+            loadTaxiStatistics(1, seed, OffsetDateTime.now(ZoneOffset.UTC));
+
+        TaxiStatisticsAvgReportDto report = (TaxiStatisticsAvgReportDto) service
+                .getTaxiStatisticsReport(1, 2, TaxiStatisticsReportType.AVERAGE);
+
+        assertEquals(19.5, report.getAvgBatteryLevel());
+        assertEquals(19.5, report.getAvgKmsTraveled());
+    }
+
+    @Test
+    public void givenStatisticsLoadedOutOfOrder_WhenGetAvgReportOfAllTaxis_ThenTheRangeBoundsAreIncluded()
+            throws IdAlreadyRegisteredException, IdNotFoundException, ReportTypeNotFoundException {
+        service.registerTaxi(FakeDtoFactory.createTaxiInfoDto(1));
+        OffsetDateTime start = OffsetDateTime.of(2022, 1, 1, 10, 0, 0, 5_000_000, ZoneOffset.UTC);
+        loadTaxiStatistics(1, 4, start.plusMinutes(3));
+        loadTaxiStatistics(1, 2, start);
+        loadTaxiStatistics(1, 8, start.plusMinutes(2));
+        loadTaxiStatistics(1, 100, start.minusMinutes(1));
+
+        TaxiStatisticsAvgReportDto report = (TaxiStatisticsAvgReportDto) service
+                .getTaxisStatisticsReport(start, start.plusMinutes(3), TaxiStatisticsReportType.AVERAGE);
+
+        assertEquals(14.0 / 3, report.getAvgBatteryLevel());
+        assertEquals(14.0 / 3, report.getAvgKmsTraveled());
+    }
+
+    @Test
+    public void givenManyTaxis_WhenTheyRegisterConcurrently_ThenEachPairOfTaxisKnowsEachOther()
+            throws InterruptedException {
+        int taxisNum = 50;
+        NewTaxiDto[] newTaxis = new NewTaxiDto[taxisNum];
+        Thread[] threads = new Thread[taxisNum];
+        for (int i = 0; i < taxisNum; i++) {
+            int id = i;
+            threads[i] = new Thread(() -> {
+                try {
+                    newTaxis[id] = service.registerTaxi(FakeDtoFactory.createTaxiInfoDto(id));
+                } catch (IdAlreadyRegisteredException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+
+        // the taxi registered later must receive the one registered before
+        int totalPeers = Arrays.stream(newTaxis).mapToInt(newTaxi -> newTaxi.getTaxiInfos().size()).sum();
+        assertEquals(taxisNum * (taxisNum - 1) / 2, totalPeers);
+        assertEquals(taxisNum, service.getAllTaxis().size());
+    }
+
+    @Test
+    public void givenABatchWithAnUnknownTaxi_WhenLoadTaxisStatistics_ThenTheOtherRecordsAreLoaded()
+            throws IdAlreadyRegisteredException, ReportTypeNotFoundException {
+        service.registerTaxi(FakeDtoFactory.createTaxiInfoDto(1));
+        service.registerTaxi(FakeDtoFactory.createTaxiInfoDto(2));
+        OffsetDateTime start = OffsetDateTime.of(2022, 1, 1, 10, 0, 0, 5_000_000, ZoneOffset.UTC);
+
+        TaxiStatisticsBatchResultDto result = service.loadTaxisStatistics(Arrays.asList(
+                new TaxiStatisticsRecordDto(1, FakeDtoFactory.createTaxiStatisticsDtoFromSeed(2, start)),
+                new TaxiStatisticsRecordDto(3, FakeDtoFactory.createTaxiStatisticsDtoFromSeed(100, start)),
+                new TaxiStatisticsRecordDto(2, FakeDtoFactory.createTaxiStatisticsDtoFromSeed(4, start))));
+        TaxiStatisticsAvgReportDto report = (TaxiStatisticsAvgReportDto) service
+                .getTaxisStatisticsReport(start, start, TaxiStatisticsReportType.AVERAGE);
+
+        assertEquals(2, result.getLoadedNum());
+        assertEquals(Collections.singletonList(3), result.getNotFoundTaxiIds());
+        assertEquals(3, report.getAvgBatteryLevel());
+    }
+
+    @Test
+    public void givenStatisticsInTheLog_WhenTheServiceRestarts_ThenTheyAreInTheReports(@TempDir Path logDirectory)
+            throws IdAlreadyRegisteredException, IdNotFoundException, ReportTypeNotFoundException {
+        OffsetDateTime start = OffsetDateTime.of(2022, 1, 1, 10, 0, 0, 5_000_000, ZoneOffset.UTC);
+        try (TaxiStatisticsLog log = new TaxiStatisticsLog(logDirectory, 16, true)) {
+            TaxiService persistentService = new TaxiServiceImpl(taxiPositionGenerator, log);
+            persistentService.registerTaxi(FakeDtoFactory.createTaxiInfoDto(1));
+            persistentService.loadTaxiStatistics(1, FakeDtoFactory.createTaxiStatisticsDtoFromSeed(2, start));
+            persistentService.loadTaxiStatistics(1,
+                    FakeDtoFactory.createTaxiStatisticsDtoFromSeed(4, start.plusMinutes(1)));
+        }
+
+        try (TaxiStatisticsLog log = new TaxiStatisticsLog(logDirectory, 16, true)) {
+            TaxiService restartedService = new TaxiServiceImpl(taxiPositionGenerator, log);
+            TaxiStatisticsAvgReportDto allTaxisReport = (TaxiStatisticsAvgReportDto) restartedService
+                    .getTaxisStatisticsReport(start, start.plusMinutes(1), TaxiStatisticsReportType.AVERAGE);
+            restartedService.registerTaxi(FakeDtoFactory.createTaxiInfoDto(1));
+            TaxiStatisticsAvgReportDto taxiReport = (TaxiStatisticsAvgReportDto) restartedService
+                    .getTaxiStatisticsReport(1, 1, TaxiStatisticsReportType.AVERAGE);
+
+            assertEquals(3, allTaxisReport.getAvgBatteryLevel());
+            assertEquals(3, allTaxisReport.getAvgPollutionLevel());
+            assertEquals(4, taxiReport.getAvgKmsTraveled());
+        }
+    }
+
+    @Test
+    public void givenARemovedTaxi_WhenItsIdIsRegisteredAgain_ThenOnlyTheNewStatisticsAreInTheReports(
+            @TempDir Path logDirectory)
+            throws IdAlreadyRegisteredException, IdNotFoundException, ReportTypeNotFoundException {
+        OffsetDateTime start = OffsetDateTime.of(2022, 1, 1, 10, 0, 0, 5_000_000, ZoneOffset.UTC);
+        try (TaxiStatisticsLog log = new TaxiStatisticsLog(logDirectory, 16, true)) {
+            TaxiService persistentService = new TaxiServiceImpl(taxiPositionGenerator, log);
+            persistentService.registerTaxi(FakeDtoFactory.createTaxiInfoDto(1));
+            persistentService.loadTaxiStatistics(1, FakeDtoFactory.createTaxiStatisticsDtoFromSeed(2, start));
+            persistentService.removeTaxi(1);
+            persistentService.registerTaxi(FakeDtoFactory.createTaxiInfoDto(1));
+            persistentService.loadTaxiStatistics(1,
+                    FakeDtoFactory.createTaxiStatisticsDtoFromSeed(4, start.plusMinutes(1)));
+            TaxiStatisticsAvgReportDto taxiReport = (TaxiStatisticsAvgReportDto) persistentService
+                    .getTaxiStatisticsReport(1, 2, TaxiStatisticsReportType.AVERAGE);
+
+            assertEquals(4, taxiReport.getAvgKmsTraveled());
+        }
+
+        try (TaxiStatisticsLog log = new TaxiStatisticsLog(logDirectory, 16, true)) {
+            TaxiService restartedService = new TaxiServiceImpl(taxiPositionGenerator, log);
+            TaxiStatisticsAvgReportDto allTaxisReport = (TaxiStatisticsAvgReportDto) restartedService
+                    .getTaxisStatisticsReport(start, start.plusMinutes(1), TaxiStatisticsReportType.AVERAGE);
+
+            assertEquals(4, allTaxisReport.getAvgBatteryLevel());
+        }
+    }
+
+    @Test
+    public void givenAStatisticBeingLogged_WhenItsTaxiIsRemoved_ThenTheTombstoneIsLoggedAfterIt()
+            throws IdAlreadyRegisteredException, InterruptedException {
+        TaxiStatisticsLog log = mock(TaxiStatisticsLog.class);
+        CountDownLatch appendStarted = new CountDownLatch(1);
+        CountDownLatch appendReleased = new CountDownLatch(1);
+        when(log.appendWithoutCommit(eq(1), anyLong(), anyDouble(), anyInt(), anyInt(), anyDouble()))
+                .thenAnswer(invocation -> {
+                    appendStarted.countDown();
+                    appendReleased.await(5, TimeUnit.SECONDS);
+                    return 1L;
+                });
+        TaxiService persistentService = new TaxiServiceImpl(taxiPositionGenerator, log);
+        persistentService.registerTaxi(FakeDtoFactory.createTaxiInfoDto(1));
+        Thread loadThread = new Thread(() -> {
+            try {
+                persistentService.loadTaxiStatistics(1, FakeDtoFactory.createTaxiStatisticsDtoFromSeed(2));
+            } catch (IdNotFoundException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        CountDownLatch removed = new CountDownLatch(1);
+        Thread removeThread = new Thread(() -> {
+            try {
+                persistentService.removeTaxi(1);
+                removed.countDown();
+            } catch (IdNotFoundException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        loadThread.start();
+        assertTrue(appendStarted.await(5, TimeUnit.SECONDS));
+        removeThread.start();
+        // the removal waits for the statistic found registered to be logged
+        assertFalse(removed.await(100, TimeUnit.MILLISECONDS));
+        appendReleased.countDown();
+        loadThread.join();
+        removeThread.join();
+
+        InOrder logOrder = inOrder(log);
+        logOrder.verify(log).appendWithoutCommit(eq(1), anyLong(), anyDouble(), anyInt(), anyInt(), anyDouble());
+        logOrder.verify(log).appendTombstone(eq(1), anyLong());
+    }
+
     private TaxiStatisticsDto loadTaxiStatistics(int taxiId, int seed, OffsetDateTime ts)
             throws IdNotFoundException {
         TaxiStatisticsDto taxiStatisticsDto = FakeDtoFactory.createTaxiStatisticsDtoFromSeed(seed, ts);
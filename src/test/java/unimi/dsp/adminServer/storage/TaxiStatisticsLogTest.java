@@ -0,0 +1,167 @@
+package unimi.dsp.adminServer.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TaxiStatisticsLogTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    public void givenAppendedStatistics_WhenTheLogIsReopened_ThenTheyAreReplayedInOrder() {
+        try (TaxiStatisticsLog log = new TaxiStatisticsLog(directory, 4, true)) {
+            for (int i = 0; i < 10; i++)
+                log.append(i % 3, 1000 + i, i, i * 2, i * 3, i / 2.0);
+        }
+
+        List<String> records = new ArrayList<>();
+        try (TaxiStatisticsLog log = new TaxiStatisticsLog(directory, 4, true)) {
+            log.replay((taxiId, timestamp, kmsTraveled, batteryLevel, numRides, pollutionAvg) ->
+                    records.add(taxiId + " " + timestamp + " " + kmsTraveled + " " + batteryLevel + " " +
+                            numRides + " " + pollutionAvg));
+            assertEquals(3, log.getSegmentsNum());
+        }
+
+        assertEquals(10, records.size());
+        assertEquals("0 1000 0.0 0 0 0.0", records.get(0));
+        assertEquals("0 1009 9.0 18 27 4.5", records.get(9));
+    }
+
+    @Test
+    public void givenAReopenedLog_WhenNewStatisticsAreAppended_ThenTheyFollowTheReplayedOnes() {
+        try (TaxiStatisticsLog log = new TaxiStatisticsLog(directory, 4, false)) {
+            log.append(1, 1000, 1, 1, 1, 1);
+            log.append(1, 2000, 2, 2, 2, 2);
+        }
+        try (TaxiStatisticsLog log = new TaxiStatisticsLog(directory, 4, false)) {
+            log.append(1, 3000, 3, 3, 3, 3);
+        }
+
+        List<Long> timestamps = new ArrayList<>();
+        try (TaxiStatisticsLog log = new TaxiStatisticsLog(directory, 4, false)) {
+            log.replay((taxiId, timestamp, kmsTraveled, batteryLevel, numRides, pollutionAvg) ->
+                    timestamps.add(timestamp));
+        }
+
+        assertEquals(3, timestamps.size());
+        assertEquals(3000, timestamps.get(2));
+    }
+
+    @Test
+    public void givenALogReopenedWithAnotherSegmentSize_WhenStatisticsAreAppended_ThenEachSegmentKeepsItsSize() {
+        try (TaxiStatisticsLog log = new TaxiStatisticsLog(directory, 4, true)) {
+            for (int i = 0; i < 3; i++)
+                log.append(1, 1000 * (i + 1), i, i, i, i);
+        }
+        // the active segment is filled up to the size it was created with, the new one has the new size
+        try (TaxiStatisticsLog log = new TaxiStatisticsLog(directory, 8, true)) {
+            for (int i = 3; i < 6; i++)
+                log.append(1, 1000 * (i + 1), i, i, i, i);
+            assertEquals(2, log.getSegmentsNum());
+        }
+        try (TaxiStatisticsLog log = new TaxiStatisticsLog(directory, 2, true)) {
+            for (int i = 6; i < 9; i++)
+                log.append(1, 1000 * (i + 1), i, i, i, i);
+            assertEquals(2, log.getSegmentsNum());
+        }
+
+        List<Long> timestamps = new ArrayList<>();
+        try (TaxiStatisticsLog log = new TaxiStatisticsLog(directory, 2, true)) {
+            log.replay((taxiId, timestamp, kmsTraveled, batteryLevel, numRides, pollutionAvg) ->
+                    timestamps.add(timestamp));
+        }
+        assertEquals(9, timestamps.size());
+        assertEquals(9000, timestamps.get(8));
+    }
+
+    @Test
+    public void givenATombstone_WhenTheLogIsReopened_ThenItIsReplayedBetweenTheStatistics() {
+        try (TaxiStatisticsLog log = new TaxiStatisticsLog(directory, 4, true)) {
+            log.append(1, 1000, 1, 1, 1, 1);
+            log.appendTombstone(1, 2000);
+            log.append(1, 3000, 3, 3, 3, 3);
+        }
+
+        List<String> records = new ArrayList<>();
+        try (TaxiStatisticsLog log = new TaxiStatisticsLog(directory, 4, true)) {
+            log.replay(new TaxiStatisticsLog.RecordVisitor() {
+                @Override
+                public void visit(int taxiId, long timestamp, double kmsTraveled, int batteryLevel,
+                                  int numRides, double pollutionAvg) {
+                    records.add("statistic " + taxiId + " " + timestamp);
+                }
+
+                @Override
+                public void visitTombstone(int taxiId, long timestamp) {
+                    records.add("tombstone " + taxiId + " " + timestamp);
+                }
+            });
+        }
+
+        assertEquals(Arrays.asList("statistic 1 1000", "tombstone 1 2000", "statistic 1 3000"), records);
+    }
+
+    @Test
+    public void givenATornRecord_WhenTheLogIsReopened_ThenTheReplayStopsBeforeIt() throws IOException {
+        try (TaxiStatisticsLog log = new TaxiStatisticsLog(directory, 4, true)) {
+            log.append(1, 1000, 1, 1, 1, 1);
+            log.append(1, 2000, 2, 2, 2, 2);
+        }
+        // corrupt the kms of the second record, as if the crash happened while it was written
+        Path segment = listSegments().get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] { 0x7f }), 16 + TaxiStatisticsLog.RECORD_SIZE + 20);
+        }
+
+        List<Long> timestamps = new ArrayList<>();
+        try (TaxiStatisticsLog log = new TaxiStatisticsLog(directory, 4, true)) {
+            log.replay((taxiId, timestamp, kmsTraveled, batteryLevel, numRides, pollutionAvg) ->
+                    timestamps.add(timestamp));
+        }
+
+        assertEquals(1, timestamps.size());
+        assertEquals(1000, timestamps.get(0));
+    }
+
+    @Test
+    public void givenExpiredStatistics_WhenDeleteBefore_ThenOnlyTheSegmentsWithExpiredStatisticsAreDeleted()
+            throws IOException {
+        try (TaxiStatisticsLog log = new TaxiStatisticsLog(directory, 2, true)) {
+            for (int i = 0; i < 7; i++)
+                log.append(1, 1000 * (i + 1), i, i, i, i);
+
+            log.deleteBefore(3500);
+
+            assertEquals(3, log.getSegmentsNum());
+        }
+
+        assertEquals(3, listSegments().size());
+        List<Long> timestamps = new ArrayList<>();
+        try (TaxiStatisticsLog log = new TaxiStatisticsLog(directory, 2, true)) {
+            log.replay((taxiId, timestamp, kmsTraveled, batteryLevel, numRides, pollutionAvg) ->
+                    timestamps.add(timestamp));
+        }
+        assertEquals(3000, timestamps.get(0));
+        assertEquals(5, timestamps.size());
+    }
+
+    private List<Path> listSegments() throws IOException {
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths.sorted().collect(Collectors.toList());
+        }
+    }
+}
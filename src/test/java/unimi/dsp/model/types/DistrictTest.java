@@ -0,0 +1,40 @@
+package unimi.dsp.model.types;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// the tests use the 2 x 2 grid of config.properties
+public class DistrictTest {
+    @Test
+    public void givenTheDefaultGrid_WhenTheDistrictsAreListed_ThenTheyAreTheFourQuarters() {
+        assertArrayEquals(new District[] {
+                District.TOP_LEFT, District.TOP_RIGHT, District.BOTTOM_LEFT, District.BOTTOM_RIGHT
+        }, District.values());
+        assertEquals(4, District.getDistrictsNum());
+        assertEquals(3, District.BOTTOM_LEFT.getId());
+        assertSame(District.BOTTOM_RIGHT, District.fromId(4));
+        assertThrows(IllegalArgumentException.class, () -> District.fromId(5));
+    }
+
+    @Test
+    public void givenPositionsOnTheBorders_WhenTheirDistrictIsSearched_ThenItIsTheQuarterContainingThem() {
+        assertSame(District.TOP_LEFT, District.fromPosition(new SmartCityPosition(4, 4)));
+        assertSame(District.TOP_RIGHT, District.fromPosition(new SmartCityPosition(5, 4)));
+        assertSame(District.BOTTOM_LEFT, District.fromPosition(new SmartCityPosition(4, 5)));
+        assertSame(District.BOTTOM_RIGHT, District.fromPosition(new SmartCityPosition(9, 9)));
+        assertSame(District.TOP_RIGHT, District.fromCell(SmartCityCell.of(5, 4)));
+        assertSame(District.BOTTOM_LEFT, District.fromCell(SmartCityCell.of(4, 5)));
+    }
+
+    @Test
+    public void givenTheDefaultGrid_WhenTheRechargeStationsAreSearched_ThenTheyAreInTheCornersOfTheCity() {
+        assertEquals(new SmartCityPosition(0, 0), District.TOP_LEFT.getRechargeStationPosition());
+        assertEquals(new SmartCityPosition(9, 0), District.TOP_RIGHT.getRechargeStationPosition());
+        assertEquals(new SmartCityPosition(0, 9), District.BOTTOM_LEFT.getRechargeStationPosition());
+        assertEquals(new SmartCityPosition(9, 9), District.BOTTOM_RIGHT.getRechargeStationPosition());
+    }
+}
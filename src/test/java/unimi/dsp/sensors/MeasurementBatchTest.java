@@ -0,0 +1,82 @@
+package unimi.dsp.sensors;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MeasurementBatchTest {
+    private final SensorRegistry sensorRegistry = new SensorRegistry();
+    private final int pm10Sensor = sensorRegistry.intern("batch-pm10-1", "PM10");
+    private final int no2Sensor = sensorRegistry.intern("batch-no2-1", "NO2");
+
+    @Test
+    public void givenARegisteredSensor_WhenItIsInternedAgain_ThenItKeepsItsIndex() {
+        assertEquals(pm10Sensor, sensorRegistry.intern("batch-pm10-1", "PM10"));
+        assertEquals("batch-no2-1", sensorRegistry.getId(no2Sensor));
+        assertEquals("NO2", sensorRegistry.getType(no2Sensor));
+        assertEquals(2, sensorRegistry.size());
+        assertThrows(IllegalArgumentException.class, () -> sensorRegistry.intern("batch-pm10-1", "NO2"));
+    }
+
+    @Test
+    public void givenTwoRegistries_WhenTheSameSensorIsInterned_ThenEachGivesItsOwnIndex() {
+        SensorRegistry otherSensorRegistry = new SensorRegistry();
+
+        assertEquals(0, otherSensorRegistry.intern("batch-no2-1", "NO2"));
+        assertEquals(1, no2Sensor);
+        assertEquals(1, otherSensorRegistry.size());
+    }
+
+    @Test
+    public void givenABatch_WhenMeasurementsAreAdded_ThenTheyCanBeReadAsMeasurements() {
+        MeasurementBatch batch = new MeasurementBatch(sensorRegistry, 2);
+        batch.add(pm10Sensor, 12.5, 1000);
+        batch.add(new Measurement("batch-no2-1", "NO2", 30, 2000));
+
+        assertTrue(batch.isFull());
+        assertThrows(IllegalStateException.class, () -> batch.add(pm10Sensor, 13, 3000));
+        assertEquals("PM10", batch.getType(0));
+        assertEquals(no2Sensor, batch.getSensorIndex(1));
+        Measurement measurement = batch.getMeasurement(1);
+        assertEquals("batch-no2-1", measurement.getId());
+        assertEquals("NO2", measurement.getType());
+        assertEquals(30, measurement.getValue());
+        assertEquals(2000, measurement.getTimestamp());
+
+        batch.clear();
+        assertEquals(0, batch.size());
+        assertThrows(IndexOutOfBoundsException.class, () -> batch.getValue(0));
+    }
+
+    @Test
+    public void givenABatch_WhenItIsAddedToABuffer_ThenTheBufferHasItsMeasurements() {
+        MeasurementBatch batch = new MeasurementBatch(sensorRegistry, 4);
+        for (int i = 0; i < 4; i++)
+            batch.add(pm10Sensor, i, i);
+        Buffer buffer = new RingWindowBuffer(4, 0.5f);
+
+        buffer.addMeasurements(batch);
+
+        List<Measurement> measurements = buffer.readAllAndClean();
+        assertEquals(Arrays.asList(0.0, 1.0, 2.0, 3.0),
+                measurements.stream().map(Measurement::getValue).collect(Collectors.toList()));
+        assertEquals("batch-pm10-1", measurements.get(0).getId());
+        assertEquals("PM10", measurements.get(0).getType());
+    }
+
+    @Test
+    public void givenMeasurementsFarInTime_WhenTheyAreCompared_ThenTheyAreOrderedByTimestamp() {
+        Measurement oldest = new Measurement("batch-pm10-1", "PM10", 0, Long.MIN_VALUE);
+        Measurement newest = new Measurement("batch-pm10-1", "PM10", 0, Long.MAX_VALUE);
+
+        assertTrue(oldest.compareTo(newest) < 0);
+        assertTrue(newest.compareTo(oldest) > 0);
+        assertEquals(0, newest.compareTo(newest));
+    }
+}
@@ -0,0 +1,82 @@
+package unimi.dsp.sensors;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RingWindowBufferTest {
+    private final Buffer buffer = new RingWindowBuffer(4, 0.5f);
+
+    @Test
+    public void givenAFullWindow_WhenItIsRead_ThenTheNextWindowOverlapsItByTheFactor() {
+        for (int i = 0; i < 6; i++)
+            buffer.addMeasurement(new Measurement("pm10", "PM10", i, i));
+
+        MeasurementWindow window = buffer.readWindow();
+        assertEquals(4, window.size());
+        assertEquals(0, window.getValue(0));
+        assertEquals(3, window.getTimestamp(3));
+
+        window = buffer.readWindow();
+        assertEquals(2, window.getValue(0));
+        assertEquals(5, window.getValue(3));
+    }
+
+    @Test
+    public void givenTheOldApi_WhenTheWindowIsReadAndCleaned_ThenTheMeasurementsAreCopied() {
+        for (int i = 0; i < 4; i++)
+            buffer.addMeasurement(new Measurement("pm10", "PM10", i, i));
+
+        List<Measurement> measurements = buffer.readAllAndClean();
+
+        assertEquals(4, measurements.size());
+        assertEquals("pm10", measurements.get(3).getId());
+        assertEquals(3, measurements.get(3).getValue());
+    }
+
+    @Test
+    public void givenAFullRing_WhenTheProducerAddsAMeasurement_ThenItWaitsForTheConsumer()
+            throws InterruptedException {
+        // the ring holds a window plus the measurements that replace its slide
+        for (int i = 0; i < 6; i++)
+            buffer.addMeasurement(new Measurement("pm10", "PM10", i, i));
+        Thread producer = new Thread(() -> buffer.addMeasurement(new Measurement("pm10", "PM10", 6, 6)));
+        producer.start();
+        producer.join(200);
+        assertTrue(producer.isAlive());
+
+        buffer.readWindow();
+        buffer.readWindow();
+        producer.join(1000);
+
+        assertFalse(producer.isAlive());
+        buffer.addMeasurement(new Measurement("pm10", "PM10", 7, 7));
+        MeasurementWindow window = buffer.readWindow();
+        assertEquals(4, window.getValue(0));
+        assertEquals(6, window.getValue(2));
+    }
+
+    @Test
+    public void givenAWindowListener_WhenTheWindowIsComplete_ThenItCanBeReadWithoutWaiting() {
+        RingWindowBuffer ringBuffer = new RingWindowBuffer(4, 0.5f);
+        AtomicInteger completedWindowsNum = new AtomicInteger();
+        ringBuffer.setWindowListener(completedWindowsNum::incrementAndGet);
+
+        for (int i = 0; i < 3; i++)
+            ringBuffer.addMeasurement(new Measurement("pm10", "PM10", i, i));
+        assertEquals(0, completedWindowsNum.get());
+        assertNull(ringBuffer.tryReadWindow());
+
+        ringBuffer.addMeasurement(new Measurement("pm10", "PM10", 3, 3));
+        assertEquals(1, completedWindowsNum.get());
+        assertEquals(3, ringBuffer.tryReadWindow().getValue(3));
+        assertNull(ringBuffer.tryReadWindow());
+        assertFalse(ringBuffer.isWindowComplete());
+    }
+}
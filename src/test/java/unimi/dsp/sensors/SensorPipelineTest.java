@@ -0,0 +1,168 @@
+package unimi.dsp.sensors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import unimi.dsp.sensors.simulators.SensorType;
+import unimi.dsp.sensors.simulators.Simulator;
+
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class SensorPipelineTest {
+    private final ScheduledExecutorService scheduler = new ScheduledThreadPoolExecutor(1);
+    private final SensorPipeline pipeline = new SensorPipeline(4, 0.5f, 3, scheduler);
+
+    @AfterEach
+    public void testCleanup() {
+        pipeline.close();
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void givenMeasurementsOfSeveralTypes_WhenTheyAreAdded_ThenTheyAreAggregatedByType() {
+        for (int i = 0; i < 6; i++) {
+            pipeline.addMeasurement(new Measurement("pm10-1", "PM10", i, i));
+            pipeline.addMeasurement(new Measurement("no2-1", "NO2", 10 * i, i));
+        }
+
+        Map<String, List<Double>> averages = pipeline.takeAverages();
+
+        assertEquals(Arrays.asList(1.5, 3.5), averages.get("PM10"));
+        assertEquals(Arrays.asList(15.0, 35.0), averages.get("NO2"));
+        assertEquals(Collections.emptyList(), pipeline.takeAverages().get("PM10"));
+    }
+
+    @Test
+    public void givenABatchOfSeveralTypes_WhenItIsAdded_ThenItIsAggregatedByType() {
+        int pm10Sensor = pipeline.getSensorRegistry().intern("pipeline-pm10-1", "PM10");
+        int no2Sensor = pipeline.getSensorRegistry().intern("pipeline-no2-1", "NO2");
+        MeasurementBatch batch = new MeasurementBatch(pipeline.getSensorRegistry(), 8);
+        for (int i = 0; i < 4; i++) {
+            batch.add(pm10Sensor, i, i);
+            batch.add(no2Sensor, 10 * i, i);
+        }
+
+        pipeline.addMeasurements(batch);
+
+        Map<String, List<Double>> averages = pipeline.takeAverages();
+        assertEquals(Collections.singletonList(1.5), averages.get("PM10"));
+        assertEquals(Collections.singletonList(15.0), averages.get("NO2"));
+    }
+
+    @Test
+    public void givenABatchOfAnotherRegistry_WhenItIsAdded_ThenItIsRejected() {
+        SensorRegistry otherSensorRegistry = new SensorRegistry();
+        MeasurementBatch batch = new MeasurementBatch(otherSensorRegistry, 1);
+        batch.add(otherSensorRegistry.intern("pipeline-pm10-1", "PM10"), 1, 1);
+
+        assertThrows(IllegalArgumentException.class, () -> pipeline.addMeasurements(batch));
+    }
+
+    @Test
+    public void givenMoreWindowsThanTheMax_WhenTheAveragesAreTaken_ThenOnlyTheFirstOnesAreKept() {
+        for (int i = 0; i < 12; i++)
+            pipeline.addMeasurement(new Measurement("pm10-1", "PM10", i, i));
+
+        assertEquals(Arrays.asList(1.5, 3.5, 5.5), pipeline.takeAverages().get("PM10"));
+
+        for (int i = 12; i < 14; i++)
+            pipeline.addMeasurement(new Measurement("pm10-1", "PM10", i, i));
+        assertEquals(Collections.singletonList(11.5), pipeline.takeAverages().get("PM10"));
+    }
+
+    @Test
+    public void givenSensorsWithDifferentRates_WhenThePipelineRuns_ThenEachIsSampledOnTheScheduler()
+            throws InterruptedException {
+        ConstantSensor fastSensor = new ConstantSensor("SPEED", 5, 20);
+        ConstantSensor slowSensor = new ConstantSensor("TEMPERATURE", 50, 18);
+        pipeline.addSensor(fastSensor);
+        pipeline.addSensor(slowSensor);
+        assertThat(pipeline.takeAverages()).containsOnlyKeys("SPEED", "TEMPERATURE");
+
+        pipeline.start();
+        Thread.sleep(300);
+        pipeline.close();
+        int fastSamplesNum = fastSensor.samplesNum.get();
+        Thread.sleep(50);
+
+        assertThat(fastSensor.samplesNum.get()).isEqualTo(fastSamplesNum);
+        assertThat(fastSamplesNum).isGreaterThan(3 * slowSensor.samplesNum.get());
+        Map<String, List<Double>> averages = pipeline.takeAverages();
+        assertThat(averages.get("SPEED")).isNotEmpty().containsOnly(20.0);
+        assertThat(averages.get("TEMPERATURE")).containsOnly(18.0);
+    }
+
+    @Test
+    public void givenASimulator_WhenItCompletesWindows_ThenTheyAreAggregatedOnTheScheduler()
+            throws InterruptedException {
+        Simulator simulator = pipeline.addSimulator(buffer -> new Simulator("pm10-test", "PM10", buffer) {
+            @Override
+            public void run() {
+                for (int i = 0; i < 8; i++)
+                    this.addMeasurement(i);
+            }
+        });
+
+        pipeline.start();
+        simulator.join(1000);
+        Thread.sleep(100);
+
+        assertEquals(Arrays.asList(1.5, 3.5, 5.5), pipeline.takeAverages().get("PM10"));
+    }
+
+    @Test
+    public void givenASensorsList_WhenItIsParsed_ThenEveryTypeHasItsSamplingPeriod() {
+        Map<SensorType, Long> samplingPeriods = SensorType.parseSamplingPeriods("PM10:300, NO2:1000");
+
+        assertThat(samplingPeriods).containsExactly(
+                new AbstractMap.SimpleEntry<>(SensorType.PM10, 300L),
+                new AbstractMap.SimpleEntry<>(SensorType.NO2, 1000L));
+        assertThrows(IllegalArgumentException.class, () -> SensorType.parseSamplingPeriods("PM10"));
+        assertThrows(IllegalArgumentException.class, () -> SensorType.parseSamplingPeriods("CO2:100"));
+        assertThrows(IllegalArgumentException.class, () -> SensorType.parseSamplingPeriods("PM10:0"));
+    }
+
+    private static class ConstantSensor implements SampledSensor {
+        private final String type;
+        private final long samplingPeriodMillis;
+        private final double value;
+        private final AtomicInteger samplesNum = new AtomicInteger();
+
+        private ConstantSensor(String type, long samplingPeriodMillis, double value) {
+            this.type = type;
+            this.samplingPeriodMillis = samplingPeriodMillis;
+            this.value = value;
+        }
+
+        @Override
+        public String getId() {
+            return type.toLowerCase() + "-test";
+        }
+
+        @Override
+        public String getType() {
+            return type;
+        }
+
+        @Override
+        public long getSamplingPeriodMillis() {
+            return samplingPeriodMillis;
+        }
+
+        @Override
+        public double sample() {
+            samplesNum.incrementAndGet();
+            return value;
+        }
+    }
+}
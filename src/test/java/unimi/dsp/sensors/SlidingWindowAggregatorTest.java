@@ -0,0 +1,69 @@
+package unimi.dsp.sensors;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SlidingWindowAggregatorTest {
+    private final SlidingWindowAggregator aggregator = new SlidingWindowAggregator(4, 0.5f)
+            .withMinMax().withPercentiles(0, 10, 10);
+
+    @Test
+    public void givenOverlappingWindows_WhenMeasurementsAreAdded_ThenAWindowIsCompletedEverySlide() {
+        double[] values = { 5, 1, 3, 7, 2, 4 };
+        for (int i = 0; i < 3; i++)
+            assertFalse(aggregator.add(values[i]));
+        assertTrue(aggregator.add(values[3]));
+        assertEquals(4, aggregator.getAverage());
+        assertEquals(1, aggregator.getMin());
+        assertEquals(7, aggregator.getMax());
+
+        assertFalse(aggregator.add(values[4]));
+        assertTrue(aggregator.add(values[5]));
+        assertEquals(4, aggregator.getAverage());
+        assertEquals(2, aggregator.getMin());
+        assertEquals(7, aggregator.getMax());
+        assertEquals(3.5, aggregator.getPercentile(0.5));
+    }
+
+    @Test
+    public void givenTheWindowsOfABuffer_WhenTheyAreAdded_ThenOnlyTheNewMeasurementsAreAggregated() {
+        Buffer buffer = new RingWindowBuffer(4, 0.5f);
+        for (int i = 0; i < 6; i++)
+            buffer.addMeasurement(new Measurement("pm10", "PM10", i, i));
+
+        assertTrue(aggregator.addWindow(buffer.readWindow()));
+        assertEquals(1.5, aggregator.getAverage());
+        assertTrue(aggregator.addWindow(buffer.readWindow()));
+        assertEquals(3.5, aggregator.getAverage());
+        buffer.addMeasurement(new Measurement("pm10", "PM10", 6, 6));
+        buffer.addMeasurement(new Measurement("pm10", "PM10", 7, 7));
+        assertTrue(aggregator.addWindow(buffer.readWindow()));
+        assertEquals(5.5, aggregator.getAverage());
+        assertEquals(4, aggregator.getMin());
+    }
+
+    @Test
+    public void givenABatchOfSeveralSensors_WhenItIsAdded_ThenOnlyTheMeasurementsOfTheSensorAreAggregated() {
+        SensorRegistry sensorRegistry = new SensorRegistry();
+        int pm10Sensor = sensorRegistry.intern("pm10", "PM10");
+        int no2Sensor = sensorRegistry.intern("no2", "NO2");
+        MeasurementBatch batch = new MeasurementBatch(sensorRegistry, 12);
+        for (int i = 0; i < 6; i++) {
+            batch.add(pm10Sensor, i, i);
+            batch.add(no2Sensor, 100, i);
+        }
+        List<Double> averages = new ArrayList<>();
+
+        assertEquals(2, aggregator.add(batch, pm10Sensor, () -> averages.add(aggregator.getAverage())));
+        assertEquals(Arrays.asList(1.5, 3.5), averages);
+        assertEquals(2, aggregator.getMin());
+        assertEquals(5, aggregator.getMax());
+    }
+}
@@ -0,0 +1,75 @@
+package unimi.dsp.taxi;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import unimi.dsp.adminServer.services.TaxiPositionGenerator;
+import unimi.dsp.dto.TaxiInfoDto;
+import unimi.dsp.fakeFactories.FakeTaxiFactory;
+import unimi.dsp.model.types.SmartCityPosition;
+import unimi.dsp.stubs.AdminServiceStub;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class DistrictRingTest {
+    private final Taxi taxi = FakeTaxiFactory.getTaxi(5, new AdminServiceStub(new TaxiPositionGenerator() {
+        @Override
+        public SmartCityPosition getStartingPosition() {
+            return new SmartCityPosition(0, 0);
+        }
+    }));
+    private final List<NetworkTaxiConnection> connections = new ArrayList<>();
+
+    @AfterEach
+    public void testCleanup() {
+        connections.forEach(NetworkTaxiConnection::close);
+        taxi.close();
+    }
+
+    @Test
+    public void givenTaxisAddedInAnyOrder_WhenTheRingIsBuilt_ThenTheyAreSortedById() {
+        DistrictRing ring = DistrictRing.EMPTY.with(connectTo(7)).with(connectTo(2)).with(connectTo(9));
+
+        assertArrayEquals(new int[] { 2, 7, 9 }, ring.getTaxiIds());
+        assertEquals(0, DistrictRing.EMPTY.size());
+    }
+
+    @Test
+    public void givenARing_WhenTheNextTaxiIsSearched_ThenItIsTheFollowingIdWrappingAround() {
+        NetworkTaxiConnection taxi2 = connectTo(2);
+        NetworkTaxiConnection taxi7 = connectTo(7);
+        DistrictRing ring = DistrictRing.EMPTY.with(taxi7).with(taxi2);
+
+        assertSame(taxi7, ring.getNext(5));
+        assertSame(taxi7, ring.getNext(2));
+        assertSame(taxi2, ring.getNext(7));
+        assertSame(taxi2, ring.getNext(8));
+        assertNull(DistrictRing.EMPTY.getNext(5));
+        assertArrayEquals(new int[] { 7, 2 }, ring.getTaxiIdsAfter(5));
+        assertArrayEquals(new int[] { 2, 7 }, ring.getTaxiIdsAfter(7));
+    }
+
+    @Test
+    public void givenARing_WhenATaxiIsRemoved_ThenTheOriginalRingIsUnchanged() {
+        DistrictRing ring = DistrictRing.EMPTY.with(connectTo(2)).with(connectTo(7)).with(connectTo(9));
+
+        DistrictRing newRing = ring.without(7);
+
+        assertArrayEquals(new int[] { 2, 9 }, newRing.getTaxiIds());
+        assertArrayEquals(new int[] { 2, 7, 9 }, ring.getTaxiIds());
+        assertSame(ring, ring.without(4));
+        assertSame(DistrictRing.EMPTY, newRing.without(2).without(9));
+    }
+
+    private NetworkTaxiConnection connectTo(int taxiId) {
+        NetworkTaxiConnection connection = new NetworkTaxiConnection(taxi,
+                new TaxiInfoDto(taxiId, "localhost", 6000 + taxiId));
+        connections.add(connection);
+        return connection;
+    }
+}
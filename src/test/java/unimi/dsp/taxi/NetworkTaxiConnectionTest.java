@@ -0,0 +1,85 @@
+package unimi.dsp.taxi;
+
+import org.junit.jupiter.api.Test;
+import unimi.dsp.adminServer.services.TaxiPositionGenerator;
+import unimi.dsp.dto.RideRequestDto;
+import unimi.dsp.dto.TaxiInfoDto;
+import unimi.dsp.fakeFactories.FakeTaxiFactory;
+import unimi.dsp.model.types.SmartCityPosition;
+import unimi.dsp.model.types.election.RideElectionInfo;
+import unimi.dsp.model.types.election.RideRequestMessage;
+import unimi.dsp.stubs.AdminServiceStub;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class NetworkTaxiConnectionTest {
+    private final AdminServiceBase adminService = new AdminServiceStub(new TaxiPositionGenerator() {
+        @Override
+        public SmartCityPosition getStartingPosition() {
+            return new SmartCityPosition(0, 0);
+        }
+    });
+
+    @Test
+    public void givenAnUnreachableTaxi_WhenAnElectionMessageIsSent_ThenTheCallerIsNotBlockedAndItArrivesLater() {
+        try (Taxi taxi = FakeTaxiFactory.getTaxi(1, adminService);
+             Taxi nextTaxi = FakeTaxiFactory.getTaxi(2, adminService)) {
+            NetworkTaxiConnection connection = new NetworkTaxiConnection(taxi,
+                    new TaxiInfoDto(nextTaxi.getId(), nextTaxi.getHost(), nextTaxi.getPort()));
+            RideRequestDto rideRequest = new RideRequestDto(7,
+                    new SmartCityPosition(1, 1), new SmartCityPosition(2, 2));
+
+            long sendStartMillis = System.currentTimeMillis();
+            connection.sendForwardElectionIdOrTakeRide(rideRequest,
+                    new RideElectionInfo.RideElectionId(taxi.getId(), 1.5, 90));
+            long sendMillis = System.currentTimeMillis() - sendStartMillis;
+            nextTaxi.startGRPCServer();
+            nextTaxi.setStatus(Taxi.TaxiStatus.GRPC_STARTED);
+
+            RideRequestMessage message = assertTimeoutPreemptively(Duration.ofSeconds(10),
+                    () -> nextTaxi.getRideRequestMessagesQueue().take());
+            connection.close();
+
+            assertTrue(sendMillis < 500);
+            assertEquals(7, message.getRideRequest().getId());
+            assertEquals(taxi.getId(), message.getRideElectionInfo().getRideElectionId().getTaxiId());
+        }
+    }
+
+    @Test
+    public void givenAnOpenElectionStream_WhenElectionAndElectedMessagesAreSent_ThenTheyArriveInOrder() {
+        try (Taxi taxi = FakeTaxiFactory.getTaxi(1, adminService);
+             Taxi nextTaxi = FakeTaxiFactory.getTaxi(2, adminService)) {
+            nextTaxi.startGRPCServer();
+            nextTaxi.setStatus(Taxi.TaxiStatus.GRPC_STARTED);
+            NetworkTaxiConnection connection = new NetworkTaxiConnection(taxi,
+                    new TaxiInfoDto(nextTaxi.getId(), nextTaxi.getHost(), nextTaxi.getPort()));
+            connection.openElectionStream();
+
+            for (int i = 0; i < 10; i++)
+                connection.sendForwardElectionIdOrTakeRide(new RideRequestDto(i,
+                                new SmartCityPosition(1, 1), new SmartCityPosition(2, 2)),
+                        new RideElectionInfo.RideElectionId(taxi.getId(), 1.5, 90));
+            connection.sendMarkElectionConfirmed(9, taxi.getId());
+
+            for (int i = 0; i < 10; i++) {
+                RideRequestMessage message = assertTimeoutPreemptively(Duration.ofSeconds(10),
+                        () -> nextTaxi.getRideRequestMessagesQueue().take());
+                assertEquals(i, message.getRideRequest().getId());
+                assertEquals(RideElectionInfo.RideElectionState.ELECTION,
+                        message.getRideElectionInfo().getRideElectionState());
+            }
+            RideRequestMessage message = assertTimeoutPreemptively(Duration.ofSeconds(10),
+                    () -> nextTaxi.getRideRequestMessagesQueue().take());
+            connection.close();
+
+            assertEquals(9, message.getRideRequest().getId());
+            assertEquals(RideElectionInfo.RideElectionState.ELECTED,
+                    message.getRideElectionInfo().getRideElectionState());
+        }
+    }
+}
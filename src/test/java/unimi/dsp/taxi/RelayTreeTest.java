@@ -0,0 +1,40 @@
+package unimi.dsp.taxi;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class RelayTreeTest {
+    @Test
+    public void givenATree_WhenTheChildrenAreVisited_ThenEveryTaxiButTheOriginatorHasOneParent() {
+        for (int fanOut = 1; fanOut <= 4; fanOut++) {
+            for (int size = 1; size <= 50; size++) {
+                int[] parentsNum = new int[size];
+                for (int rank = 0; rank < size; rank++) {
+                    int firstChildRank = RelayTree.getFirstChildRank(rank, fanOut);
+                    for (int i = 0; i < RelayTree.getChildrenNum(rank, size, fanOut); i++)
+                        parentsNum[firstChildRank + i]++;
+                }
+
+                assertEquals(0, parentsNum[0]);
+                for (int rank = 1; rank < size; rank++)
+                    assertEquals(1, parentsNum[rank]);
+            }
+        }
+    }
+
+    @Test
+    public void givenABinaryTree_WhenTheLastTaxiIsReached_ThenTheDepthIsLogarithmic() {
+        int size = 100;
+        int rank = size - 1;
+        int depth = 0;
+        while (rank > 0) {
+            rank = (rank - 1) / 2;
+            depth++;
+        }
+
+        assertEquals(6, depth);
+        assertEquals(2, RelayTree.getChildrenNum(0, size, 2));
+        assertEquals(0, RelayTree.getChildrenNum(50, size, 2));
+    }
+}
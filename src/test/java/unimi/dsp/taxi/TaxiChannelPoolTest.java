@@ -0,0 +1,46 @@
+package unimi.dsp.taxi;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class TaxiChannelPoolTest {
+    private final TaxiChannelPool channelPool = new TaxiChannelPool(50);
+
+    @AfterEach
+    public void testCleanup() {
+        channelPool.close();
+    }
+
+    @Test
+    public void givenNoCalls_WhenThePoolIsCreated_ThenNoChannelIsOpened() {
+        assertEquals(0, channelPool.getChannelsNum());
+    }
+
+    @Test
+    public void givenTwoLeasesOfTheSameTaxi_WhenTheyAreTaken_ThenTheyShareTheChannel() {
+        try (TaxiChannelPool.Lease lease = channelPool.lease("localhost", 6001);
+             TaxiChannelPool.Lease lease2 = channelPool.lease("localhost", 6001);
+             TaxiChannelPool.Lease lease3 = channelPool.lease("localhost", 6002)) {
+            assertSame(lease.getBlockingStub(), lease2.getBlockingStub());
+            assertNotSame(lease.getBlockingStub(), lease3.getBlockingStub());
+            assertEquals(2, channelPool.getChannelsNum());
+        }
+    }
+
+    @Test
+    public void givenALeasedChannel_WhenItStaysIdle_ThenItIsClosedOnlyAfterTheLeaseIsClosed()
+            throws InterruptedException {
+        TaxiChannelPool.Lease lease = channelPool.lease("localhost", 6001);
+        Thread.sleep(200);
+        assertEquals(1, channelPool.getChannelsNum());
+
+        lease.close();
+        lease.close();
+        Thread.sleep(200);
+        assertEquals(0, channelPool.getChannelsNum());
+    }
+}
@@ -133,6 +133,62 @@ public class TaxiRechargeTest {
         }
     }
 
+    @Test
+    public void givenTaxisRelayingTheBroadcasts_WhenTheRechargingTaxiExitsFromStation_ThenTheWaitingTaxiTakesIt()
+            throws InterruptedException {
+        positionGeneratorMock.generate(4, 0);
+        // with a fan out of 1 the tree is the ring, so taxi 3 is informed by taxi 2 only
+        Taxi.TaxiConfig configs = new Taxi.TaxiConfig().withRechargeDelay(1000).withRechargeDeferredReplies(false)
+                .withDistrictBroadcastRelay(true).withDistrictBroadcastRelayFanOut(1);
+        try (Taxi taxi = FakeTaxiFactory.getTaxi(1, configs, adminService);
+             Taxi taxi2 = FakeTaxiFactory.getTaxi(2, configs, adminService);
+             Taxi taxi3 = FakeTaxiFactory.getTaxi(3, configs, adminService);
+             Taxi taxi4 = FakeTaxiFactory.getTaxi(4, configs, adminService)) {
+            taxi.enterInSETANetwork();
+            taxi2.enterInSETANetwork();
+            taxi3.enterInSETANetwork();
+            taxi4.enterInSETANetwork();
+
+            taxi.askForTheRechargeStation();
+            Thread.sleep(200);
+            assertThat(taxi.getStatus()).isEqualTo(Taxi.TaxiStatus.RECHARGING);
+
+            taxi3.askForTheRechargeStation();
+            Thread.sleep(200);
+            assertThat(taxi3.getStatus()).isEqualTo(Taxi.TaxiStatus.WAITING_TO_RECHARGE);
+
+            Thread.sleep(1000);
+            assertThat(taxi3.getStatus()).isEqualTo(Taxi.TaxiStatus.RECHARGING);
+        }
+    }
+
+    @Test
+    public void givenAStationWith2Places_When3TaxisAskForIt_ThenTwoRechargeTogetherAndTheThirdWaits()
+            throws InterruptedException {
+        positionGeneratorMock.generate(4, 0);
+        Taxi.TaxiConfig configs = new Taxi.TaxiConfig().withRechargeDelay(1000).withRechargeStationCapacity(2);
+        try (Taxi taxi = FakeTaxiFactory.getTaxi(1, configs, adminService);
+             Taxi taxi2 = FakeTaxiFactory.getTaxi(2, configs, adminService);
+             Taxi taxi3 = FakeTaxiFactory.getTaxi(3, configs, adminService)) {
+            taxi.enterInSETANetwork();
+            taxi2.enterInSETANetwork();
+            taxi3.enterInSETANetwork();
+
+            taxi.askForTheRechargeStation();
+            taxi2.askForTheRechargeStation();
+            Thread.sleep(200);
+            assertThat(taxi.getStatus()).isEqualTo(Taxi.TaxiStatus.RECHARGING);
+            assertThat(taxi2.getStatus()).isEqualTo(Taxi.TaxiStatus.RECHARGING);
+
+            taxi3.askForTheRechargeStation();
+            Thread.sleep(200);
+            assertThat(taxi3.getStatus()).isEqualTo(Taxi.TaxiStatus.WAITING_TO_RECHARGE);
+
+            Thread.sleep(1000);
+            assertThat(taxi3.getStatus()).isEqualTo(Taxi.TaxiStatus.RECHARGING);
+        }
+    }
+
     @Test
     public void givenManyRechargingTaxis_WhenOneTriesToExit_ThenItIsRemovedImmediately() throws InterruptedException {
         positionGeneratorMock.generate(4, 0);
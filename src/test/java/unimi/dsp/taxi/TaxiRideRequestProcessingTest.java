@@ -16,6 +16,7 @@ import unimi.dsp.testUtils.mocks.PositionGeneratorMock;
 import unimi.dsp.util.MQTTClientFactory;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -256,6 +257,57 @@ public class TaxiRideRequestProcessingTest {
         }
     }
 
+    @Test
+    public void given2TaxisInSameDistrict_WhenABatchOf2RidesIsPublished_ThenTaxisTakeOneRideEach()
+            throws InterruptedException {
+        positionGeneratorMock.generate(1, 1).generate(4, 4);
+        try (Taxi taxi = FakeTaxiFactory.getTaxi(1, 0, adminService);
+             Taxi taxi2 = FakeTaxiFactory.getTaxi(2, 0, adminService)) {
+            taxi.enterInSETANetwork();
+            taxi2.enterInSETANetwork();
+
+            this.setaServerPubSub.subscribeToRideConfirmationTopic(rideConfirm -> {
+                confirmedRides.add(rideConfirm.getRideId());
+            });
+            this.setaServerPubSub.publishRideRequestBatch(Arrays.asList(
+                    new RideRequestDto(0, new SmartCityPosition(2, 2), new SmartCityPosition(9, 0)),
+                    new RideRequestDto(1, new SmartCityPosition(3, 3), new SmartCityPosition(9, 0))));
+
+            Thread.sleep(500);
+            assertThat(this.confirmedRides).contains(0, 1);
+            assertThat(taxi.getTakenRides()).hasSize(1);
+            assertThat(taxi2.getTakenRides()).hasSize(1);
+        }
+    }
+
+    @Test
+    public void given3TaxisWithElectionBatching_WhenABatchOf3RidesIsPublished_ThenTaxisTakeOneRideEach()
+            throws InterruptedException {
+        positionGeneratorMock.generate(1, 1).generate(4, 4).generate(0, 4);
+        Taxi.TaxiConfig taxiConfig = new Taxi.TaxiConfig().withRideDeliveryDelay(0).withElectionBatching(true);
+        try (Taxi taxi = FakeTaxiFactory.getTaxi(1, taxiConfig, adminService);
+             Taxi taxi2 = FakeTaxiFactory.getTaxi(2, taxiConfig, adminService);
+             Taxi taxi3 = FakeTaxiFactory.getTaxi(3, taxiConfig, adminService)) {
+            taxi.enterInSETANetwork();
+            taxi2.enterInSETANetwork();
+            taxi3.enterInSETANetwork();
+
+            this.setaServerPubSub.subscribeToRideConfirmationTopic(rideConfirm -> {
+                confirmedRides.add(rideConfirm.getRideId());
+            });
+            this.setaServerPubSub.publishRideRequestBatch(Arrays.asList(
+                    new RideRequestDto(0, new SmartCityPosition(2, 2), new SmartCityPosition(9, 0)),
+                    new RideRequestDto(1, new SmartCityPosition(3, 3), new SmartCityPosition(9, 0)),
+                    new RideRequestDto(2, new SmartCityPosition(1, 4), new SmartCityPosition(9, 0))));
+
+            Thread.sleep(1000);
+            assertThat(this.confirmedRides).contains(0, 1, 2);
+            assertThat(taxi.getTakenRides()).hasSize(1);
+            assertThat(taxi2.getTakenRides()).hasSize(1);
+            assertThat(taxi3.getTakenRides()).hasSize(1);
+        }
+    }
+
 //    private void mockAdminServiceGeneration(int taxiId, int startX, int startY) {
 //        when(adminService.registerTaxi(argThat(new TaxiInfoDtoIsEqualGivenIdMatcher(taxiId))))
 //                .thenAnswer(a -> {
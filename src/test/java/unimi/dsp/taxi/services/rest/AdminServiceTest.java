@@ -0,0 +1,167 @@
+package unimi.dsp.taxi.services.rest;
+
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.WebResource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import unimi.dsp.dto.TaxiStatisticsBatchDto;
+import unimi.dsp.dto.TaxiStatisticsBatchResultDto;
+import unimi.dsp.dto.TaxiStatisticsRecordDto;
+import unimi.dsp.fakeFactories.FakeDtoFactory;
+
+import javax.ws.rs.core.MediaType;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class AdminServiceTest {
+    private static final String SERVER_ENDPOINT = "http://localhost:1337";
+    private static final String BATCH_URL = SERVER_ENDPOINT + "/taxis/statistics:batch";
+
+    private final Client client = mock(Client.class);
+    private final WebResource batchResource = mock(WebResource.class);
+    private final WebResource.Builder batchRequest = mock(WebResource.Builder.class);
+    private final WebResource deleteResource = mock(WebResource.class);
+    private final ClientResponse okResponse = mock(ClientResponse.class);
+
+    @BeforeEach
+    public void initializeTest() {
+        when(client.resource(BATCH_URL)).thenReturn(batchResource);
+        when(batchResource.type(MediaType.APPLICATION_JSON)).thenReturn(batchRequest);
+        when(client.resource(SERVER_ENDPOINT + "/taxis/1")).thenReturn(deleteResource);
+        when(deleteResource.delete(ClientResponse.class)).thenReturn(okResponse);
+        when(okResponse.getStatus()).thenReturn(200);
+        when(okResponse.getEntity(TaxiStatisticsBatchResultDto.class))
+                .thenReturn(new TaxiStatisticsBatchResultDto(1, Collections.emptyList()));
+    }
+
+    @Test
+    public void givenBatching_WhenABatchIsFull_ThenItsStatisticsAreUploadedTogether() {
+        when(batchRequest.post(eq(ClientResponse.class), any())).thenReturn(okResponse);
+        AdminService adminService = new AdminService(client, SERVER_ENDPOINT,
+                new AdminService.StatisticsBatchingConfig().withBatchSize(3).withBatchLingerMillis(60000));
+
+        for (int i = 0; i < 3; i++)
+            adminService.loadTaxiStatistics(1, FakeDtoFactory.createTaxiStatisticsDtoFromSeed(i));
+        adminService.flushStatistics();
+
+        ArgumentCaptor<TaxiStatisticsBatchDto> batchCaptor = ArgumentCaptor.forClass(TaxiStatisticsBatchDto.class);
+        verify(batchRequest, timeout(1000)).post(eq(ClientResponse.class), batchCaptor.capture());
+        assertEquals(3, batchCaptor.getValue().getRecords().size());
+    }
+
+    @Test
+    public void givenAnUnreachableServer_WhenStatisticsAreLoaded_ThenTheyAreRetriedInOrderWithoutExiting() {
+        when(batchRequest.post(eq(ClientResponse.class), any()))
+                .thenThrow(new ClientHandlerException("connection refused"))
+                .thenThrow(new ClientHandlerException("connection refused"))
+                .thenReturn(okResponse);
+        AdminService adminService = new AdminService(client, SERVER_ENDPOINT,
+                new AdminService.StatisticsBatchingConfig().withBatchSize(10).withBatchLingerMillis(0)
+                        .withInitialBackoffMillis(10).withMaxBackoffMillis(20));
+
+        adminService.loadTaxiStatistics(1, FakeDtoFactory.createTaxiStatisticsDtoFromSeed(1));
+        adminService.loadTaxiStatistics(1, FakeDtoFactory.createTaxiStatisticsDtoFromSeed(2));
+        adminService.flushStatistics();
+
+        ArgumentCaptor<TaxiStatisticsBatchDto> batchCaptor = ArgumentCaptor.forClass(TaxiStatisticsBatchDto.class);
+        verify(batchRequest, atLeast(3)).post(eq(ClientResponse.class), batchCaptor.capture());
+        List<Integer> uploadedBatteryLevels = batchCaptor.getAllValues().stream()
+                .skip(2)
+                .flatMap(batch -> batch.getRecords().stream())
+                .map(r -> r.getStatistics().getBatteryLevel())
+                .collect(Collectors.toList());
+        assertEquals(2, uploadedBatteryLevels.size());
+        assertEquals(1, uploadedBatteryLevels.get(0));
+        assertEquals(2, uploadedBatteryLevels.get(1));
+    }
+
+    @Test
+    public void givenBufferedStatistics_WhenTheTaxiUnregisters_ThenTheyAreUploadedBefore() {
+        when(batchRequest.post(eq(ClientResponse.class), any())).thenReturn(okResponse);
+        AdminService adminService = new AdminService(client, SERVER_ENDPOINT,
+                new AdminService.StatisticsBatchingConfig().withBatchSize(10).withBatchLingerMillis(60000));
+
+        adminService.loadTaxiStatistics(1, FakeDtoFactory.createTaxiStatisticsDtoFromSeed(1));
+        adminService.unregisterTaxi(1);
+
+        InOrder inOrder = inOrder(batchRequest, deleteResource);
+        inOrder.verify(batchRequest).post(eq(ClientResponse.class), any(TaxiStatisticsBatchDto.class));
+        inOrder.verify(deleteResource).delete(ClientResponse.class);
+    }
+
+    @Test
+    public void givenAFullBuffer_WhenMoreStatisticsAreLoaded_ThenTheOldestAreDiscarded() {
+        when(batchRequest.post(eq(ClientResponse.class), any()))
+                .thenThrow(new ClientHandlerException("connection refused"));
+        AdminService adminService = new AdminService(client, SERVER_ENDPOINT,
+                new AdminService.StatisticsBatchingConfig().withBatchSize(10).withBatchLingerMillis(60000)
+                        .withMaxBufferedRecords(2).withFlushTimeoutMillis(100));
+
+        for (int i = 0; i < 5; i++)
+            adminService.loadTaxiStatistics(1, FakeDtoFactory.createTaxiStatisticsDtoFromSeed(i));
+        adminService.flushStatistics();
+
+        ArgumentCaptor<TaxiStatisticsBatchDto> batchCaptor = ArgumentCaptor.forClass(TaxiStatisticsBatchDto.class);
+        verify(batchRequest, atLeastOnce()).post(eq(ClientResponse.class), batchCaptor.capture());
+        List<TaxiStatisticsRecordDto> lastRecords = batchCaptor.getValue().getRecords();
+        assertEquals(2, lastRecords.size());
+        assertEquals(3, lastRecords.get(0).getStatistics().getBatteryLevel());
+        assertEquals(4, lastRecords.get(1).getStatistics().getBatteryLevel());
+    }
+
+    @Test
+    public void givenUploadsThatFailOrAreRejected_WhenStatisticsAreFlushed_ThenEveryResponseIsClosed() {
+        ClientResponse failedResponse = mock(ClientResponse.class);
+        when(failedResponse.getStatus()).thenReturn(503);
+        ClientResponse rejectedResponse = mock(ClientResponse.class);
+        when(rejectedResponse.getStatus()).thenReturn(400);
+        when(batchRequest.post(eq(ClientResponse.class), any()))
+                .thenReturn(failedResponse)
+                .thenReturn(rejectedResponse)
+                .thenReturn(okResponse);
+        AdminService adminService = new AdminService(client, SERVER_ENDPOINT,
+                new AdminService.StatisticsBatchingConfig().withBatchSize(1).withBatchLingerMillis(0)
+                        .withInitialBackoffMillis(10).withMaxBackoffMillis(20));
+
+        adminService.loadTaxiStatistics(1, FakeDtoFactory.createTaxiStatisticsDtoFromSeed(1));
+        adminService.loadTaxiStatistics(1, FakeDtoFactory.createTaxiStatisticsDtoFromSeed(2));
+        adminService.flushStatistics();
+
+        verify(batchRequest, times(3)).post(eq(ClientResponse.class), any());
+        verify(failedResponse).close();
+        verify(rejectedResponse).close();
+        verify(okResponse).close();
+    }
+
+    @Test
+    public void givenUploadsThatThrow_WhenStatisticsAreFlushed_ThenTheUploaderKeepsRunning() {
+        when(batchRequest.post(eq(ClientResponse.class), any()))
+                .thenThrow(new IllegalStateException("client closed"))
+                .thenReturn(okResponse);
+        when(okResponse.getEntity(TaxiStatisticsBatchResultDto.class))
+                .thenThrow(new ClientHandlerException("unreadable body"));
+        AdminService adminService = new AdminService(client, SERVER_ENDPOINT,
+                new AdminService.StatisticsBatchingConfig().withBatchSize(10).withBatchLingerMillis(0)
+                        .withInitialBackoffMillis(10).withMaxBackoffMillis(20).withFlushTimeoutMillis(1000));
+
+        adminService.loadTaxiStatistics(1, FakeDtoFactory.createTaxiStatisticsDtoFromSeed(1));
+        adminService.flushStatistics();
+        adminService.loadTaxiStatistics(1, FakeDtoFactory.createTaxiStatisticsDtoFromSeed(2));
+        adminService.flushStatistics();
+
+        ArgumentCaptor<TaxiStatisticsBatchDto> batchCaptor = ArgumentCaptor.forClass(TaxiStatisticsBatchDto.class);
+        verify(batchRequest, times(3)).post(eq(ClientResponse.class), batchCaptor.capture());
+        assertEquals(1, batchCaptor.getAllValues().get(1).getRecords().get(0).getStatistics().getBatteryLevel());
+        assertEquals(2, batchCaptor.getAllValues().get(2).getRecords().get(0).getStatistics().getBatteryLevel());
+    }
+}
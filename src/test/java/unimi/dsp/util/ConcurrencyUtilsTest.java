@@ -0,0 +1,82 @@
+package unimi.dsp.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ConcurrencyUtilsTest {
+    @Test
+    public void givenCallsWithResultsAndFailures_WhenFannedOut_ThenEachOutcomeIsAtItsIndex() {
+        List<ConcurrencyUtils.FanOutResult<Integer>> results = ConcurrencyUtils.fanOut(3, (i) -> {
+            if (i == 1)
+                throw new IllegalStateException("unreachable taxi");
+            return i * 10;
+        }, 1000);
+
+        assertEquals(3, results.size());
+        assertTrue(results.get(0).isCompleted());
+        assertEquals(0, results.get(0).getValue());
+        assertFalse(results.get(1).isCompleted());
+        assertEquals("unreachable taxi", results.get(1).getError().getMessage());
+        assertEquals(20, results.get(2).getValue());
+    }
+
+    @Test
+    public void givenACallSlowerThanTheTimeout_WhenFannedOut_ThenItIsTimedOutAndTheOthersComplete() {
+        List<ConcurrencyUtils.FanOutResult<Integer>> results = assertTimeoutPreemptively(Duration.ofSeconds(2),
+                () -> ConcurrencyUtils.fanOut(2, (i) -> {
+                    if (i == 0) {
+                        try {
+                            Thread.sleep(5000);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    return i;
+                }, 200));
+
+        assertTrue(results.get(0).isTimedOut());
+        assertTrue(results.get(1).isCompleted());
+    }
+
+    @Test
+    public void givenNoTimeout_WhenFannedOut_ThenTheSlowCallsAreWaitedFor() {
+        List<ConcurrencyUtils.FanOutResult<Integer>> results = ConcurrencyUtils.fanOut(2, (i) -> {
+            try {
+                Thread.sleep(300 * i);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return i;
+        });
+
+        assertTrue(results.get(0).isCompleted());
+        assertTrue(results.get(1).isCompleted());
+        assertEquals(1, results.get(1).getValue());
+    }
+
+    @Test
+    public void givenMoreNestedFanOutsThanThreads_WhenFannedOut_ThenAllTheCallsComplete() {
+        int callsNum = ConfigurationManager.getInstance().getFanOutMaxThreads() * 2;
+
+        // every outer call waits for an inner fan-out, which would never start if it were queued
+        List<ConcurrencyUtils.FanOutResult<Integer>> results = assertTimeoutPreemptively(Duration.ofSeconds(10),
+                () -> ConcurrencyUtils.fanOut(callsNum, (i) -> ConcurrencyUtils.fanOut(2, (j) -> {
+                    try {
+                        Thread.sleep(10);
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                    return j;
+                }, 5000).size(), 8000));
+
+        assertEquals(callsNum, results.size());
+        assertTrue(results.stream().allMatch(result -> result.isCompleted() && result.getValue() == 2));
+    }
+}
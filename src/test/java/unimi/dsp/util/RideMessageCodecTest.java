@@ -0,0 +1,72 @@
+package unimi.dsp.util;
+
+import org.junit.jupiter.api.Test;
+import unimi.dsp.dto.RideConfirmDto;
+import unimi.dsp.dto.RideRequestDto;
+import unimi.dsp.model.types.MqttPayloadFormat;
+import unimi.dsp.model.types.SmartCityPosition;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class RideMessageCodecTest {
+    private final RideMessageCodec jsonCodec = new RideMessageCodec(MqttPayloadFormat.JSON);
+    private final RideMessageCodec protobufCodec = new RideMessageCodec(MqttPayloadFormat.PROTOBUF);
+
+    @Test
+    public void givenARideRequest_WhenEncodedInProtobuf_ThenItIsDecodedWithAllItsFields() {
+        RideRequestDto rideRequest = new RideRequestDto(7, 123456789L,
+                new SmartCityPosition(1, 2), new SmartCityPosition(8, 9));
+
+        List<RideRequestDto> decodedRideRequests = protobufCodec.decodeRideRequests(
+                protobufCodec.encodeRideRequest(rideRequest));
+
+        assertThat(decodedRideRequests).hasSize(1);
+        assertRideRequestEquals(rideRequest, decodedRideRequests.get(0));
+    }
+
+    @Test
+    public void givenABatch_WhenEncodedInProtobuf_ThenAllTheRidesAreDecodedInOrder() {
+        List<RideRequestDto> rideRequests = Arrays.asList(
+                new RideRequestDto(0, new SmartCityPosition(0, 0), new SmartCityPosition(1, 1)),
+                new RideRequestDto(1, new SmartCityPosition(2, 2), new SmartCityPosition(3, 3)));
+
+        List<RideRequestDto> decodedRideRequests = protobufCodec.decodeRideRequests(
+                protobufCodec.encodeRideRequestBatch(rideRequests));
+
+        assertEquals(2, decodedRideRequests.size());
+        assertRideRequestEquals(rideRequests.get(0), decodedRideRequests.get(0));
+        assertRideRequestEquals(rideRequests.get(1), decodedRideRequests.get(1));
+    }
+
+    @Test
+    public void givenPayloadsInBothFormats_WhenDecodedByAnyCodec_ThenTheFormatIsDetected() {
+        RideRequestDto rideRequest = new RideRequestDto(3, new SmartCityPosition(4, 5), new SmartCityPosition(6, 7));
+        RideConfirmDto rideConfirm = new RideConfirmDto(3);
+
+        assertRideRequestEquals(rideRequest,
+                protobufCodec.decodeRideRequests(jsonCodec.encodeRideRequest(rideRequest)).get(0));
+        assertRideRequestEquals(rideRequest,
+                jsonCodec.decodeRideRequests(protobufCodec.encodeRideRequest(rideRequest)).get(0));
+        assertEquals(rideConfirm, protobufCodec.decodeRideConfirm(jsonCodec.encodeRideConfirm(rideConfirm)));
+        assertEquals(rideConfirm, jsonCodec.decodeRideConfirm(protobufCodec.encodeRideConfirm(rideConfirm)));
+    }
+
+    @Test
+    public void givenARideRequest_WhenEncodedInProtobuf_ThenThePayloadIsSmallerThanJson() {
+        RideRequestDto rideRequest = new RideRequestDto(1000, new SmartCityPosition(4, 5), new SmartCityPosition(6, 7));
+
+        assertThat(protobufCodec.encodeRideRequest(rideRequest).length)
+                .isLessThan(jsonCodec.encodeRideRequest(rideRequest).length / 2);
+    }
+
+    private static void assertRideRequestEquals(RideRequestDto expected, RideRequestDto actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getTimestamp(), actual.getTimestamp());
+        assertEquals(expected.getStart(), actual.getStart());
+        assertEquals(expected.getEnd(), actual.getEnd());
+    }
+}